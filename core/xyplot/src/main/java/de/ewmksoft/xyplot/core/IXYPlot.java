@@ -357,6 +357,14 @@ public interface IXYPlot {
 	 */
 	abstract void setLegendVisible(boolean value);
 
+	/**
+	 * Show the mean and standard deviation of the visible values of each curve
+	 * in the expanded legend box.
+	 *
+	 * @param value true/false
+	 */
+	abstract void setLegendStatistics(boolean value);
+
 	/**
 	 * Set the save button to visible or invisible.
 	 *
@@ -435,4 +443,39 @@ public interface IXYPlot {
 	 * @param optimizedDraw True to optimize drawing
 	 */
 	abstract void setOptimizedLineDrawing(boolean optimizedDraw);
+
+	/**
+	 * Modes for drawing the lines of the data curves.
+	 */
+	public enum LineDrawing {
+		/**
+		 * Draw a line between each pair of values.
+		 */
+		FULL,
+		/**
+		 * Merge values on the same pixel column and draw large data sets from the
+		 * level of detail buckets. This is the default.
+		 */
+		OPTIMIZED,
+		/**
+		 * Draw the first, minimum, maximum and last value of each pixel column
+		 * only. The result is the same as with FULL, but the drawing cost depends
+		 * on the width of the plot and not on the number of values.
+		 */
+		M4,
+		/**
+		 * Draw the visible values reduced to two points per pixel column by
+		 * Largest-Triangle-Three-Buckets downsampling. This keeps the shape of
+		 * the curve with few lines and is suited for printing and export.
+		 */
+		LTTB
+	}
+
+	/**
+	 * Select how the lines of the data curves are drawn. Default is
+	 * {@link LineDrawing#OPTIMIZED}.
+	 * 
+	 * @param lineDrawing Line drawing mode
+	 */
+	abstract void setLineDrawing(LineDrawing lineDrawing);
 }
\ No newline at end of file
@@ -62,6 +62,8 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import de.ewmksoft.xyplot.core.IXYGraphLib.MouseEvent;
 import de.ewmksoft.xyplot.core.IXYGraphLib.RGB;
@@ -75,6 +77,11 @@ import de.ewmksoft.xyplot.core.IXYGraphLibInt.Pt;
  * The XYPlot displays two dimensional data in a XY coordinate system. Multiple
  * plots can be displayed simultaneous. The plot contains mouse sensitive fields
  * to allow zooming and defining a cursor position
+ * <p>
+ * Locking: The state of the plot is protected by a lock per plot, the data by a
+ * lock per data handler. The plot lock is always taken first. While holding the
+ * plot lock, at most one data handler lock is held at a time. A data handler
+ * never calls into the plot while holding its own lock.
  */
 public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	public static final int CMD_MOVE_LEFT = 1;
@@ -116,6 +123,7 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 
 	public static final boolean SUPPORT_PARTIAL_DRAW = false;
 
+	private final Lock plotLock = new ReentrantLock();
 	private IXYGraphLibInt graphLibInt;
 	private ZoomStack zoomStack = new ZoomStack();
 	private volatile boolean needsRedraw;
@@ -148,6 +156,7 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	private boolean buttonsChanged;
 	private boolean showLegend;
 	private boolean expandLegend;
+	private boolean legendStatistics;
 	private double userxmin;
 	private double userxmax;
 	private double xShiftValue;
@@ -177,10 +186,23 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	private boolean showSaveButton = false;
 	private boolean showButtonsAndLegend = true;
 	private boolean smoothScroll = true;
-	private boolean optimizedLineDrawing = true;
+	private LineDrawing lineDrawing = LineDrawing.OPTIMIZED;
 	private int zoomBoxLacyUpdateDelay = ZOOMBOX_LAZY_UPDATE_DELAY;
 	private HashMap<Integer, XYPlotData.MinMax> dataMinMax;
 	private HashMap<String, XYPlotData.MinMax> unitMinMax;
+	// Data, style and scale version of each data handler at the last paint
+	private final HashMap<XYPlotData, long[]> paintedVersions = new HashMap<XYPlotData, long[]>();
+	// Data changed since the last paint, by number of the data handler
+	private boolean[] dataChanged = new boolean[0];
+	// Reused for reading single values while painting
+	private final XYPlotData.DataValue paintValue = new XYPlotData.DataValue();
+	private final int[] drawVertices = new int[4];
+	private final int[] lodVertices = new int[4];
+	private int drawVertexPos;
+	private int drawVertexNum;
+	private int[] lttbIndices = new int[0];
+	private int lttbPos;
+	private int lttbNum;
 
 	protected XYPlot(IXYGraphLib graphLib) {
 		dataMinMax = new HashMap<Integer, XYPlotData.MinMax>();
@@ -235,7 +257,21 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 */
 
 	public static XYPlotData createDataHandler(int max, RGB color) {
-		XYPlotData result = new XYPlotData(null, max);
+		return createDataHandler(max, color, XYPlotData.Storage.HEAP);
+	}
+
+	/**
+	 * Create a new data set with a given storage to be displayed in the XY plot.
+	 * Use {@link XYPlotData.Storage#OFF_HEAP} for data sets with millions of
+	 * values.
+	 *
+	 * @param max     Maximum number of XY values to be stored in the set
+	 * @param color   Color of the data to be displayed in the plot
+	 * @param storage Storage for the values
+	 * @return Data Handler Object
+	 */
+	public static XYPlotData createDataHandler(int max, RGB color, XYPlotData.Storage storage) {
+		XYPlotData result = new XYPlotData(null, max, storage);
 		result.setColor(color);
 		result.setAutoScale(true);
 		return result;
@@ -269,15 +305,18 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 * @see de.ewmksoft.xyplot.IXYPlot#addDataHandler(de.ewmksoft.xyplot.XYPlotData)
 	 */
 	public boolean addDataHandler(XYPlotData dh) {
-		XYPlotData.lock();
+		plotLock.lock();
 		boolean result = false;
 		dh.setOwner(this);
 		result = dataList.add(dh);
 		int no = dataList.size() - 1;
+		if (dataChanged.length < dataList.size()) {
+			dataChanged = new boolean[dataList.size()];
+		}
 		graphLibInt.createColor(no, dh.getColor());
 		scaleChanged = true;
 		needsRedraw = true;
-		XYPlotData.unlock();
+		plotLock.unlock();
 		return result;
 	}
 
@@ -288,20 +327,20 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 * IXYPlotData )
 	 */
 	public boolean removeDataHandler(XYPlotData dh) {
-		XYPlotData.lock();
+		plotLock.lock();
 		boolean result = dataList.remove(dh);
 		if (currentPlotNo >= dataList.size()) {
 			currentPlotNo = 0;
 		}
-		XYPlotData.unlock();
+		plotLock.unlock();
 		return result;
 	}
 
 	public void removeDataHandlers() {
-		XYPlotData.lock();
+		plotLock.lock();
 		dataList.clear();
 		currentPlotNo = 0;
-		XYPlotData.unlock();
+		plotLock.unlock();
 	}
 
 	/**
@@ -358,22 +397,33 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 		if (resetState) {
 			this.needsRedraw = false;
 		}
-		long msTime = System.currentTimeMillis();
-		if (!isPaused() && !result && msTime - lastNewValueCheck > updateDelay) {
+		plotLock.lock();
+		try {
+			long msTime = System.currentTimeMillis();
+			if (!isPaused() && !result && msTime - lastNewValueCheck > updateDelay) {
+				for (XYPlotData data : dataList) {
+					// Hidden handlers are checked again when they are shown, this
+					// changes their style version
+					if (!data.isVisible()) {
+						continue;
+					}
+					long[] painted = paintedVersions.get(data);
+					if (painted == null || painted[0] != data.getDataVersion() || data.hasPending()) {
+						result = true;
+						break;
+					}
+				}
+				lastNewValueCheck = msTime;
+			}
 			for (XYPlotData data : dataList) {
-				if (data.hasNewValues()) {
+				long[] painted = paintedVersions.get(data);
+				if (painted == null || painted[1] != data.getStyleVersion() || painted[2] != data.getScaleVersion()) {
 					result = true;
 					break;
 				}
 			}
-			lastNewValueCheck = msTime;
-		}
-		for (XYPlotData data : dataList) {
-			if (data.hasOtherChanges()) {
-				scaleChanged = true;
-				result = true;
-				break;
-			}
+		} finally {
+			plotLock.unlock();
 		}
 		return result;
 	}
@@ -478,7 +528,26 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 * @see de.ewmksoft.xyplot.IXYPlot#setOptimizedLineDrawing(boolean)
 	 */
 	public void setOptimizedLineDrawing(boolean optimizedDraw) {
-		this.optimizedLineDrawing = optimizedDraw;
+		setLineDrawing(optimizedDraw ? LineDrawing.OPTIMIZED : LineDrawing.FULL);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see de.ewmksoft.xyplot.IXYPlot#setLineDrawing(LineDrawing)
+	 */
+	public void setLineDrawing(LineDrawing lineDrawing) {
+		plotLock.lock();
+		boolean changed = (lineDrawing != this.lineDrawing);
+		if (changed) {
+			scaleChanged = true;
+			this.lineDrawing = lineDrawing;
+			needsRedraw = true;
+		}
+		plotLock.unlock();
+		if (changed) {
+			setOutdated();
+		}
 	}
 
 	/**
@@ -786,12 +855,12 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 					result = false;
 				}
 
-				XYPlotData.lock();
+				plotLock.lock();
 				scaleChanged |= calculateScale(xData, AxisType.XAXIS, min, max);
 				if (scaleChanged) {
 					needsRedraw = true;
 				}
-				XYPlotData.unlock();
+				plotLock.unlock();
 			}
 		}
 		return result;
@@ -816,7 +885,7 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 		if (isPaused() && dataList.size() > currentPlotNo) {
 			XYPlotData xyPlotData = dataList.get(currentPlotNo);
 			if (xyPlotData != null) {
-				XYPlotData.lock();
+				plotLock.lock();
 				double xPosL = screenToScaleX(position);
 				double f = Math.max(0.01d, factor);
 				f = Math.min(1.99d, f);
@@ -830,7 +899,7 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 				zoomStack.clear();
 				result = zoomScreen(xyPlotData, xMin, xMax);
 				needsRedraw = true;
-				XYPlotData.unlock();
+				plotLock.unlock();
 			}
 		}
 		return result;
@@ -951,9 +1020,9 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 * @param ymax Maximum y value to be displayed
 	 */
 	public void setYRange(XYPlotData data, double ymin, double ymax) {
-		XYPlotData.lock();
+		plotLock.lock();
 		scaleChanged |= calculateScale(data.getScaleData(), AxisType.YAXIS, ymin, ymax);
-		XYPlotData.unlock();
+		plotLock.unlock();
 	}
 
 	/*
@@ -962,7 +1031,7 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 * @see de.ewmksoft.xyplot.IXYPlot#setXRange(double, double)
 	 */
 	public void setXRange(double xmin, double xmax) {
-		XYPlotData.lock();
+		plotLock.lock();
 		userxmin = xmin;
 		userxmax = xmax;
 		if (!isPaused()) {
@@ -972,7 +1041,7 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 				needsRedraw = true;
 			}
 		}
-		XYPlotData.unlock();
+		plotLock.unlock();
 	}
 
 	/*
@@ -981,7 +1050,7 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 * @see de.ewmksoft.xyplot.IXYPlot#initXRange(double, double)
 	 */
 	public void initXRange(double xmin, double xmax) {
-		XYPlotData.lock();
+		plotLock.lock();
 		userxmin = xmin;
 		userxmax = xmax;
 		boolean save = smoothScroll;
@@ -991,7 +1060,7 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 		scaleChanged = true;
 		setOutdated();
 		needsRedraw = true;
-		XYPlotData.unlock();
+		plotLock.unlock();
 	}
 
 	/*
@@ -1019,12 +1088,42 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 		if (dataList.isEmpty()) {
 			return;
 		}
-		XYPlotData.lock();
+		plotLock.lock();
 		graphLibInt.setNormalFont();
 		int no = -1;
 		dataMinMax.clear();
 		unitMinMax.clear();
 		String globalZoomedUnit = "";
+		// Values of the ingestion queue and derived values are drawn right now,
+		// so their version is taken as painted. Hidden handlers are not brought
+		// up to date, they are refreshed when they are shown again.
+		paintedVersions.keySet().retainAll(dataList);
+		for (XYPlotData data : dataList) {
+			no++;
+			if (data.isVisible()) {
+				data.refresh();
+			}
+			long[] painted = paintedVersions.get(data);
+			if (painted == null) {
+				painted = new long[] { -1, -1, -1 };
+				paintedVersions.put(data, painted);
+			}
+			long dataVersion = data.getDataVersion();
+			long styleVersion = data.getStyleVersion();
+			long scaleVersion = data.getScaleVersion();
+			dataChanged[no] = painted[0] != dataVersion;
+			if (painted[1] != styleVersion) {
+				graphLibInt.createColor(no, data.getColor());
+				scaleChanged = true;
+			}
+			if (painted[2] != scaleVersion) {
+				scaleChanged = true;
+			}
+			painted[0] = dataVersion;
+			painted[1] = styleVersion;
+			painted[2] = scaleVersion;
+		}
+		no = -1;
 		for (XYPlotData data : dataList) {
 			no++;
 			String unit = data.getUnit();
@@ -1080,12 +1179,28 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 		for (int i = 0; i < dataList.size(); ++i) {
 			no = (no + 1) % dataList.size();
 			XYPlotData data = dataList.get(no);
-			// Draw data, but only the missing points
-			int start = data.getLastDrawPointNum();
-			if (start > 0)
-				start--;
-			int stop = data.length();
-			drawXYData(no, data, start, stop);
+			if (!data.isVisible() || (!scaleChanged && !dataChanged[no])) {
+				// Nothing new to draw
+				continue;
+			}
+			// Draw data, but only the missing points. The values are read from
+			// a view, so producers are not blocked while drawing.
+			XYPlotDataView view;
+			int start;
+			data.lock();
+			try {
+				start = data.getLastDrawPointNum();
+				view = data.getView();
+			} finally {
+				data.unlock();
+			}
+			try {
+				if (start > 0)
+					start--;
+				drawXYData(no, view, start, view.length());
+			} finally {
+				view.close();
+			}
 		}
 		if (showButtonsAndLegend) {
 			if (scaleChanged || buttonsChanged) {
@@ -1109,7 +1224,7 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 		}
 		scaleChanged = false;
 		buttonsChanged = false;
-		XYPlotData.unlock();
+		plotLock.unlock();
 	}
 
 	/**
@@ -1126,11 +1241,19 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 		if (xData == null || sd == null)
 			return;
 		int cursorPos = data.getCursorPos();
-		if (cursorPos >= 0 && cursorPos < data.length()) {
+		XYPlotData.DataValue dv = null;
+		XYPlotDataView view = data.getView();
+		try {
+			if (cursorPos >= 0 && cursorPos < view.length()) {
+				dv = new XYPlotData.DataValue(view.x(cursorPos), view.y(cursorPos), view.border(cursorPos));
+			}
+		} finally {
+			view.close();
+		}
+		if (dv != null) {
 			graphLibInt.setBgColor(BgColor.CURSORBG);
 			graphLibInt.setFgColor(FgColor.CURSOR);
 			graphLibInt.setSolidLines(1);
-			XYPlotData.DataValue dv = data.getValue(cursorPos);
 
 			Pt p1 = scaleToScreen(currentPlotNo, dv.x(), dv.y());
 			if (mouseDownPosition != null && mouseCurrentPosition != null) {
@@ -1221,14 +1344,14 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 * @param value New value for legend expand state
 	 */
 	public void setLegendExpanded(boolean value) {
-		XYPlotData.lock();
+		plotLock.lock();
 		boolean changed = (value != expandLegend);
 		if (changed) {
 			scaleChanged = true;
 			expandLegend = value;
 			needsRedraw = true;
 		}
-		XYPlotData.unlock();
+		plotLock.unlock();
 		if (changed && showLegend) {
 			setOutdated();
 		}
@@ -1243,6 +1366,25 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 		return expandLegend;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see de.ewmksoft.xyplot.core.IXYPlot#setLegendStatistics(boolean)
+	 */
+	public void setLegendStatistics(boolean value) {
+		plotLock.lock();
+		boolean changed = (value != legendStatistics);
+		if (changed) {
+			scaleChanged = true;
+			legendStatistics = value;
+			needsRedraw = true;
+		}
+		plotLock.unlock();
+		if (changed && showLegend) {
+			setOutdated();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -1258,14 +1400,14 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 * @see de.ewmksoft.xyplot.core.IXYPlot#setSaveButtonVisible(boolean)
 	 */
 	public void setSaveButtonVisible(boolean value) {
-		XYPlotData.lock();
+		plotLock.lock();
 		boolean changed = (value != showSaveButton);
 		if (changed) {
 			scaleChanged = true;
 			showSaveButton = value;
 			needsRedraw = true;
 		}
-		XYPlotData.unlock();
+		plotLock.unlock();
 	}
 
 	/*
@@ -1274,14 +1416,14 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 * @see de.ewmksoft.xyplot.core.IXYPlot#setRunPauseButtonVisible(boolean)
 	 */
 	public void setStartButtonVisible(boolean value) {
-		XYPlotData.lock();
+		plotLock.lock();
 		boolean changed = (value != showStartButton);
 		if (changed) {
 			scaleChanged = true;
 			showStartButton = value;
 			needsRedraw = true;
 		}
-		XYPlotData.unlock();
+		plotLock.unlock();
 	}
 
 	/*
@@ -1290,14 +1432,14 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 * @see de.ewmksoft.xyplot.core.IXYPlot#setDeleteButtonVisible(boolean)
 	 */
 	public void setClearButtonVisible(boolean value) {
-		XYPlotData.lock();
+		plotLock.lock();
 		boolean changed = (value != showClearButton);
 		if (changed) {
 			scaleChanged = true;
 			showClearButton = value;
 			needsRedraw = true;
 		}
-		XYPlotData.unlock();
+		plotLock.unlock();
 	}
 
 	/**
@@ -1306,7 +1448,7 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 * @param value New value for visible state
 	 */
 	public void setLegendVisible(boolean value) {
-		XYPlotData.lock();
+		plotLock.lock();
 		boolean changed = (value != showLegend);
 		if (changed) {
 			scaleChanged = true;
@@ -1314,7 +1456,7 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 			expandLegend = false;
 			needsRedraw = true;
 		}
-		XYPlotData.unlock();
+		plotLock.unlock();
 		if (changed) {
 			setOutdated();
 		}
@@ -1351,18 +1493,32 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	}
 
 	/**
-	 * Paint the curve
+	 * Paint the curve. With optimized line drawing, complete buckets of the
+	 * level of detail pyramid are drawn by their first, minimum, maximum and
+	 * last value only. In M4 mode, the same is done for each pixel column. In
+	 * LTTB mode, the visible values are downsampled first.
 	 *
 	 * @param no    Number of the curve
-	 * @param data  Plot data
+	 * @param view  View of the plot data
 	 * @param start Start index
 	 * @param stop  Stop index
 	 * @return Number of visible points
 	 */
-	private int drawXYData(int no, XYPlotData data, int start, int stop) {
+	private int drawXYData(int no, XYPlotDataView view, int start, int stop) {
+		XYPlotData data = view.getData();
 		XYPlotData.ScaleData sd = data.getScaleData();
+		stop = Math.min(stop, view.length());
 		if (xData == null || sd == null || start > stop)
 			return 0;
+		// Skip the values outside of the visible range, but keep their direct
+		// neighbours for the clipped lines at the borders
+		start = Math.max(start, view.findIndexFloor(xData.vmin));
+		int last = view.findIndexCeiling(xData.vmax);
+		if (last >= 0) {
+			stop = Math.min(stop, last + 1);
+		}
+		if (start > stop)
+			return 0;
 
 		// Draw data
 		int lineWidth = 2;
@@ -1371,21 +1527,27 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 		graphLibInt.setSolidLines(lineWidth);
 		graphLibInt.setFgPlotColor(no);
 		int pointNum = 0;
-		if (data.length() > 1) {
+		if (view.length() > 1) {
 			Pt p1 = null;
 			int visible = data.getVisiblePointNum();
 			int[] points = new int[(stop - start + 1) * 2];
 			int min = Integer.MAX_VALUE;
 			int max = Integer.MIN_VALUE;
-			for (int i = start; i < stop; ++i) {
-				XYPlotData.DataValue dv = data.getValue(i);
-				if (i == start && dv.border())
+			int level = lineDrawing != LineDrawing.FULL ? view.selectLodLevel(start, stop, xData.vfactor) : -1;
+			drawVertexPos = 0;
+			drawVertexNum = 0;
+			if (lineDrawing == LineDrawing.LTTB) {
+				selectLttb(view, start, stop);
+			}
+			for (int i = nextDrawIndex(view, level, start - 1, stop); i < stop; i = nextDrawIndex(view, level, i, stop)) {
+				boolean border = view.border(i);
+				if (i == start && border)
 					continue;
 				boolean drawIt = (p1 == null);
 				int visibleAdd = 0;
-				Pt p2 = scaleToScreen(no, dv.x(), dv.y());
+				Pt p2 = scaleToScreen(no, view.x(i), view.y(i));
 				if (p1 != null && clipDataLine(p1, p2)) {
-					if (optimizedLineDrawing && p1.x == p2.x) {
+					if (lineDrawing == LineDrawing.OPTIMIZED && p1.x == p2.x) {
 						min = Math.min(min, p1.y);
 						max = Math.max(max, p1.y);
 						min = Math.min(min, p2.y);
@@ -1419,11 +1581,11 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 					}
 					drawIt = true;
 				}
-				if (dv.border() || !drawIt) {
+				if (border || !drawIt) {
 					graphLibInt.drawPolyline(points, pointNum);
 					visible += visibleAdd;
 					pointNum = 0;
-					if (dv.border()) {
+					if (border) {
 						p2 = null;
 					}
 				}
@@ -1436,6 +1598,157 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 		return pointNum / 2;
 	}
 
+	/**
+	 * Get the index of the next value to draw. If the next value starts a
+	 * complete bucket on the selected level of detail, only the values
+	 * representing the bucket are visited. In M4 mode, only the values
+	 * representing the pixel column of the next value are visited.
+	 *
+	 * @param view  View of the plot data
+	 * @param level Level of detail or -1 to visit all values
+	 * @param i     Index of the last visited value
+	 * @param stop  Stop index
+	 * @return Index of the next value
+	 */
+	private int nextDrawIndex(XYPlotDataView view, int level, int i, int stop) {
+		if (lineDrawing == LineDrawing.LTTB) {
+			return lttbPos < lttbNum ? lttbIndices[lttbPos++] : stop;
+		}
+		if (drawVertexPos < drawVertexNum) {
+			return drawVertices[drawVertexPos++];
+		}
+		i++;
+		drawVertexPos = 0;
+		drawVertexNum = 0;
+		if (i < 0 || i >= stop) {
+			return i;
+		}
+		if (lineDrawing == LineDrawing.M4) {
+			collectColumn(view, level, i, stop);
+			drawVertexPos = 1;
+		} else if (level >= 0) {
+			drawVertexNum = columnBucket(view, level, i, stop, drawVertices);
+			drawVertexPos = drawVertexNum > 0 ? 1 : 0;
+		}
+		return i;
+	}
+
+	/**
+	 * Select the values to draw in LTTB mode. The values are reduced to two
+	 * values per pixel column.
+	 *
+	 * @param view  View of the plot data
+	 * @param start Start index
+	 * @param stop  Stop index
+	 */
+	private void selectLttb(XYPlotDataView view, int start, int stop) {
+		int threshold = 2 * (stopPointX.x - startPointX.x + 1);
+		int size = XYPlotLttb.maxSize(view, start, stop, threshold);
+		if (lttbIndices.length < size) {
+			lttbIndices = new int[size];
+		}
+		lttbNum = (size > 0) ? XYPlotLttb.select(view, start, stop, threshold, lttbIndices) : 0;
+		lttbPos = 0;
+	}
+
+	/**
+	 * Get the values representing the largest complete bucket of the level of
+	 * detail pyramid which starts with a given value and lies within one pixel
+	 * column. Drawing these values gives the same result as drawing all values of
+	 * the bucket. Buckets of archived values are taken even if they reach into
+	 * the next column, as the other values of the bucket may have to be read
+	 * from disk.
+	 *
+	 * @param view   View of the plot data
+	 * @param level  Highest level to check
+	 * @param i      Index of the first value of the bucket
+	 * @param stop   Stop index
+	 * @param result Array receiving the indices
+	 * @return Number of indices or 0 if there is no such bucket
+	 */
+	private int columnBucket(XYPlotDataView view, int level, int i, int stop, int[] result) {
+		int column = screenX(view.x(i));
+		for (int l = level; l >= 0; --l) {
+			int n = view.getLodVertices(l, i, stop, result);
+			if (n == 0) {
+				continue;
+			}
+			if (view.isArchived(i) || screenX(view.x(result[n - 1])) == column) {
+				return n;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Collect the indices of the first, minimum, maximum and last value of the
+	 * pixel column starting with a given value. A column ends before the next
+	 * column or after a value with a break. Complete buckets of the level of
+	 * detail pyramid which lie within the column are taken as a whole.
+	 *
+	 * @param view  View of the plot data
+	 * @param level Level of detail or -1 to scan all values
+	 * @param i     Index of the first value of the column
+	 * @param stop  Stop index
+	 */
+	private void collectColumn(XYPlotDataView view, int level, int i, int stop) {
+		int column = screenX(view.x(i));
+		int last = i;
+		int min = i;
+		int max = i;
+		double minY = view.y(i);
+		double maxY = minY;
+		boolean border = view.border(i);
+		int j = i;
+		while (!border && j < stop) {
+			int n = level >= 0 ? columnBucket(view, level, j, stop, lodVertices) : 0;
+			if (n > 0 && screenX(view.x(j)) == column) {
+				for (int k = 0; k < n; ++k) {
+					double y = view.y(lodVertices[k]);
+					if (y < minY) {
+						minY = y;
+						min = lodVertices[k];
+					}
+					if (y > maxY) {
+						maxY = y;
+						max = lodVertices[k];
+					}
+				}
+				last = lodVertices[n - 1];
+				j = last + 1;
+				continue;
+			}
+			if (screenX(view.x(j)) != column) {
+				break;
+			}
+			double y = view.y(j);
+			if (y < minY) {
+				minY = y;
+				min = j;
+			}
+			if (y > maxY) {
+				maxY = y;
+				max = j;
+			}
+			border = view.border(j);
+			last = j;
+			j++;
+		}
+		int a = Math.min(min, max);
+		int b = Math.max(min, max);
+		drawVertexNum = 0;
+		drawVertices[drawVertexNum++] = i;
+		if (a != i) {
+			drawVertices[drawVertexNum++] = a;
+		}
+		if (b != a) {
+			drawVertices[drawVertexNum++] = b;
+		}
+		if (last != b) {
+			drawVertices[drawVertexNum++] = last;
+		}
+	}
+
 	private boolean checkDrawAreaHit(int x, int y) {
 		boolean result = false;
 		int xLoc = x - bounds.x;
@@ -1551,7 +1864,8 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 		if (expandLegend) {
 			Pt fontSize = graphLibInt.getAverageCharacterSize();
 			int x = bounds.width - 2 - legendWidth;
-			int itemHeight = fontSize.y * 2 + legendBoxBorder;
+			int lines = legendStatistics ? 3 : 2;
+			int itemHeight = fontSize.y * lines + legendBoxBorder;
 			int y = PADDING_TOP + buttonBarHeight + 6 + no * itemHeight;
 			int itemWidth = legendWidth - 4;
 			data.setLegendRect(new Rect(x, y, itemWidth, itemHeight));
@@ -1588,17 +1902,43 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 				if (isPaused()) {
 					pos = data.getCursorPos();
 				}
-				String label = formatValueUnit(false, data, data.getValue(pos).y());
+				String label = formatValueUnit(false, data, data.getValue(pos, paintValue).y());
 				label = trimText(label, r.width - 2 * PADDING_LEGEND);
 				graphLibInt.setBgColor(BgColor.LEGENDBG);
 				if (no == currentPlotNo) {
 					graphLibInt.setBgColor(BgColor.LEGENDSELECTBG);
 				}
-				graphLibInt.drawText(label, r.x + PADDING_LEGEND, r.y + r.height / 2);
+				int y = r.y + r.height / 2;
+				if (legendStatistics) {
+					y = r.y + legendBoxBorder / 2 + (r.height - legendBoxBorder) / 3;
+				}
+				graphLibInt.drawText(label, r.x + PADDING_LEGEND, y);
+				if (legendStatistics) {
+					paintLegendStatistics(data, r);
+				}
 			}
 		}
 	}
 
+	/**
+	 * Draw mean and standard deviation of the visible values into the third
+	 * line of a legend box.
+	 */
+	private void paintLegendStatistics(XYPlotData data, Rect r) {
+		int minIndex = data.findIndexCeiling(xData.vmin);
+		int maxIndex = data.findIndexFloor(xData.vmax);
+		XYPlotData.Statistics stats = minIndex >= 0 ? data.getMoments(minIndex, maxIndex) : null;
+		if (stats == null || stats.getCount() == 0) {
+			return;
+		}
+		XYPlotData.ScaleData sd = data.getScaleData();
+		String label = "\u00d8 " + formatValue(false, sd, stats.getMean()) + "  \u03c3 "
+				+ formatValue(false, sd, stats.getStdDev());
+		label = trimText(label, r.width - 2 * PADDING_LEGEND);
+		int y = r.y + legendBoxBorder / 2 + 2 * (r.height - legendBoxBorder) / 3;
+		graphLibInt.drawText(label, r.x + PADDING_LEGEND, y);
+	}
+
 	/**
 	 * Draw plot area background
 	 *
@@ -1617,7 +1957,7 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 			for (XYPlotData data : dataList) {
 				XYPlotData.ScaleData sd = data.getScaleData();
 				if (sd != null && data.length() > 0) {
-					XYPlotData.DataValue dv = data.getValue(0);
+					XYPlotData.DataValue dv = data.getValue(0, paintValue);
 					xMax = Math.max(xMax, dv.x());
 					Pt p = scaleToScreenY0(dv.x());
 					if (p.x > stopPointX.x) {
@@ -1651,12 +1991,18 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 			// Draw the left most part of the curve if necessary
 			int no = 0;
 			for (XYPlotData data : dataList) {
-				int num = 0;
-				for (int i = 0; i < data.length() && data.getValue(i).x() < xMax; ++i) {
-					num++;
+				XYPlotDataView view = data.getView();
+				try {
+					// Number of values with x values less than xMax
+					int num = view.findIndexCeiling(xMax);
+					if (num < 0) {
+						num = view.length();
+					}
+					if (num != 0)
+						drawXYData(no, view, 0, num + 1);
+				} finally {
+					view.close();
 				}
-				if (num != 0)
-					drawXYData(no, data, 0, num + 1);
 				no++;
 			}
 		}
@@ -2157,11 +2503,21 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 	 */
 	private Pt scaleToScreen(int no, double x, double y) {
 		XYPlotData.ScaleData sd = dataList.get(no).getScaleData();
-		int xp = (int) (((x - xData.vmin) * xData.vfactor) + startPointX.x);
+		int xp = screenX(x);
 		int yp = (int) (stopPointY.y - ((y - sd.vmin) * sd.vfactor));
 		return new Pt(xp, yp);
 	}
 
+	/**
+	 * Calculate the screen column for a given X value
+	 *
+	 * @param x X value
+	 * @return X position on the screen
+	 */
+	private int screenX(double x) {
+		return (int) (((x - xData.vmin) * xData.vfactor) + startPointX.x);
+	}
+
 	/**
 	 * Calculate the internal data required for drawing the scale
 	 *
@@ -2308,13 +2664,10 @@ public class XYPlot implements IXYGraphLibAdapter, IXYPlot, IXYPlotEvent {
 		if (calcPointNum) {
 			for (XYPlotData data : dataList) {
 				int visible = 0;
-				int nums = data.length();
-				for (int i = 0; i < nums; ++i) {
-					XYPlotData.DataValue dv = data.getValue(i);
-					double x = dv.x();
-					if (x >= sd.vmin && x <= sd.vmax) {
-						visible++;
-					}
+				int first = data.findIndexCeiling(sd.vmin);
+				int last = data.findIndexFloor(sd.vmax);
+				if (first >= 0 && last >= first) {
+					visible = last - first + 1;
 				}
 				data.setVisiblePointNum(visible);
 			}
@@ -63,9 +63,16 @@ package de.ewmksoft.xyplot.core;
  * from each other allowing a flexible handling of data.
  *
  */
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -78,15 +85,17 @@ import de.ewmksoft.xyplot.core.IXYGraphLib.RGB;
  *                 points are added, the first points are lost (ring buffer)
  */
 public class XYPlotData {
-	private static Lock accessLock = new ReentrantLock();
+	// Each data handler has its own lock, so producers of different handlers
+	// and plots painting other handlers do not block each other. The channels
+	// of a data group share one lock.
+	private final Lock accessLock;
 
 	public final static double MAX_DOUBLE_VALUE = 1E30;
 	public final static double MIN_DOUBLE_VALUE = -1E30;
 
-	private MinMax yMinMax;
 	private double fixedYMinValue;
 	private double fixedYMaxValue;
-	private XYPlot owner;
+	private volatile XYPlot owner;
 	private String axisText;
 	private String unitText;
 	private volatile ScaleData scaleData;
@@ -100,33 +109,180 @@ public class XYPlotData {
 	private IXYGraphLib.Rect legendRect;
 	private volatile boolean autoScale;
 	private RGB color;
-	private int newValues;
-	private boolean otherChanges;
+	private final AtomicLong dataVersion = new AtomicLong();
+	private final AtomicLong styleVersion = new AtomicLong();
+	private volatile boolean visible = true;
+	private final AtomicLong scaleVersion = new AtomicLong();
 	private final List<String> labels = new ArrayList<String>();
-	private ArrayList<DataValue> values;
+	private final Map<String, Integer> labelIds = new HashMap<String, Integer>();
+	private double[] labelRank = new double[0];
+	private XYPlotDataRing values;
+	private final XYPlotDataExtrema extrema;
+	private XYPlotDataIndex index;
+	// Created by the first statistics query, see statistics()
+	private XYPlotDataStatistics statistics;
+	private XYPlotDataLod lod;
+	private final double[] rangeValue = new double[2];
+	private final double[] queuedValue = new double[2];
+	private volatile XYPlotDataQueue queue;
+	// Number of values in the buffer after the queue was drained last
+	private volatile int drainedNum;
+	private XYPlotDataReorder reorder;
+	private final double[] reorderValue = new double[2];
+	private long lateNum;
+	private volatile XYPlotData lateHandler;
+	private double[] lateX;
+	private double[] lateY;
+	private int lateWaiting;
+	private volatile boolean latePending;
+	private volatile XYPlotDataArchive archive;
+	private long archiveGeneration;
+	// Serializes writing the archive segments, which is done without the lock
+	private final Lock archiveWriteLock = new ReentrantLock();
+	private volatile boolean archivePending;
+	private long valuesGeneration;
+	private double maxAge;
+	private int maxCount;
+	private long maxBytes;
+	private final XYPlotDataGroup group;
+	private final List<XYPlotDataView> views = new ArrayList<XYPlotDataView>();
 
 	public XYPlotData(XYPlot owner, int maxNum) {
+		this(owner, maxNum, Storage.HEAP);
+	}
+
+	/**
+	 * Create a data handler with a given kind of storage.
+	 * 
+	 * @param owner   Plot showing the data or null
+	 * @param maxNum  Maximum number of values
+	 * @param storage Storage for the values
+	 */
+	public XYPlotData(XYPlot owner, int maxNum, Storage storage) {
+		this(owner, maxNum, createRing(maxNum, storage), new ReentrantLock(), null);
+	}
+
+	/**
+	 * Create a channel of a data group. The ring buffer shares the x values
+	 * with the other channels of the group.
+	 * 
+	 * @param group  Group of the channel
+	 * @param values Ring buffer of the channel
+	 * @param lock   Lock of the group
+	 */
+	XYPlotData(XYPlotDataGroup group, XYPlotDataRing values, Lock lock) {
+		this(null, values.capacity(), values, lock, group);
+	}
+
+	private XYPlotData(XYPlot owner, int maxNum, XYPlotDataRing values, Lock lock, XYPlotDataGroup group) {
 		this.owner = owner;
 		this.maxNum = maxNum;
 		this.autoScale = true;
-		this.values = new ArrayList<DataValue>(maxNum);
+		this.accessLock = lock;
+		this.group = group;
+		this.values = values;
+		// The extrema deques would need two ints per value on the heap, without
+		// them the overall minimum and maximum come from the block index
+		this.extrema = (values instanceof XYPlotDataHeapRing) ? new XYPlotDataExtrema(values) : null;
+		this.index = new XYPlotDataIndex(values);
+		this.lod = new XYPlotDataLod(values);
 		this.scaleData = new ScaleData();
 		init();
 	}
 
+	private static XYPlotDataRing createRing(int maxNum, Storage storage) {
+		if (storage == Storage.OFF_HEAP) {
+			return new XYPlotDataDirectRing(maxNum);
+		} else if (storage == Storage.COMPRESSED) {
+			return new XYPlotDataCompressedRing(maxNum);
+		}
+		return new XYPlotDataHeapRing(maxNum);
+	}
+
 	/**
-	 * Clear the data.
+	 * Clear the data. For a channel of a data group all channels of the group
+	 * are cleared (see {@link XYPlotDataGroup#clear()}).
 	 * 
 	 */
 	public void clear() {
+		if (group != null) {
+			group.clear();
+		} else {
+			clearValues();
+		}
+	}
+
+	/**
+	 * Clear the data of this handler only.
+	 */
+	void clearValues() {
 		accessLock.lock();
 		try {
+			detachViews();
+			archiveGeneration++;
+			valuesGeneration++;
+			XYPlotDataQueue q = queue;
+			if (q != null) {
+				while (q.poll(null)) {
+					// Discard queued values
+				}
+			}
+			if (reorder != null) {
+				reorder.clear(Double.NEGATIVE_INFINITY);
+			}
+			lateNum = 0;
+			lateX = null;
+			lateY = null;
+			lateWaiting = 0;
+			latePending = false;
 			labels.clear();
+			labelIds.clear();
+			labelRank = new double[0];
 			values.clear();
+			if (extrema != null) {
+				extrema.clear();
+			}
+			index.clear();
+			if (statistics != null) {
+				statistics.clear();
+			}
+			lod.clear();
+			if (archive != null) {
+				archive.clear();
+			}
 			init();
+			dataVersion.incrementAndGet();
+			scaleVersion.incrementAndGet();
+		} finally {
+			accessLock.unlock();
+		}
+	}
+
+	/**
+	 * Remove all values and release the memory of the storage. For
+	 * {@link Storage#OFF_HEAP} the native memory is freed immediately where the
+	 * runtime allows it. The handler does not take any values afterwards.
+	 */
+	public void close() {
+		accessLock.lock();
+		try {
+			clearValues();
+			values.release();
 		} finally {
 			accessLock.unlock();
 		}
+		if (owner != null) {
+			owner.setOutdated();
+		}
+	}
+
+	/**
+	 * Notify the plot showing the data about new values.
+	 */
+	void notifyOwner() {
+		if (owner != null) {
+			owner.setOutdated();
+		}
 	}
 
 	/**
@@ -139,11 +295,87 @@ public class XYPlotData {
 	}
 
 	/**
-	 * Nested class for one data value.
+	 * Storage for the values of a data handler.
+	 */
+	public enum Storage {
+		/** Primitive arrays on the Java heap */
+		HEAP,
+		/**
+		 * Direct buffers outside of the Java heap, which avoids long garbage
+		 * collection pauses for buffers with millions of values. Only the
+		 * summaries of the values for drawing and range queries stay on the
+		 * heap. They grow with the values added, up to 0.6 bytes per value of
+		 * the capacity, plus 1 byte once statistics are queried (see
+		 * {@link XYPlotData#getStatistics()}). Use {@link XYPlotData#close()}
+		 * to release the memory.
+		 */
+		OFF_HEAP,
+		/**
+		 * Compressed blocks on the Java heap. Regularly sampled x values and
+		 * slowly changing y values take a fraction of the memory of
+		 * {@link #HEAP}, at the cost of decoding a block when single values are
+		 * accessed. Zoomed out views are drawn from block summaries, best with a
+		 * capacity which is a multiple of 256.
+		 */
+		COMPRESSED
+	}
+
+	/**
+	 * Behavior of the ingestion queue (see
+	 * {@link XYPlotData#setIngestionQueue(int, OverflowPolicy)}) if a value is
+	 * added while the queue is full.
+	 */
+	public enum OverflowPolicy {
+		/** Drop the oldest queued value to make room for the new one */
+		DROP_OLDEST,
+		/**
+		 * Wait until the queue has been drained, at most one second. If nothing
+		 * drains the queue, e.g. because the plot is paused or not painted and
+		 * no drain thread is running, the new value is dropped after that and
+		 * counted like with {@link #DROP}.
+		 */
+		BLOCK,
+		/** Drop the new value */
+		DROP
+	}
+
+	/**
+	 * Callback for iterating over a range of values with
+	 * {@link XYPlotData#forEach(int, int, ValueConsumer)}.
+	 */
+	public interface ValueConsumer {
+
+		/**
+		 * This method is called for each value of the range in ascending index
+		 * order. The lock of the data handler is held during the call, so the
+		 * method must not wait for other threads adding values.
+		 * 
+		 * @param index  Position in data buffer
+		 * @param x      X value
+		 * @param y      Y value
+		 * @param border True if there is a break after the value
+		 */
+		void accept(int index, double x, double y, boolean border);
+	}
+
+	/**
+	 * Nested class for one data value. Objects of this class are copies of the
+	 * values stored in the ring buffer. An object can be reused for reading
+	 * several values by {@link XYPlotData#getValue(int, DataValue)}.
 	 * 
 	 */
 	public static class DataValue {
+		/**
+		 * Create an empty value for {@link XYPlotData#getValue(int, DataValue)}.
+		 */
+		public DataValue() {
+		}
+
 		DataValue(double x, double y, boolean border) {
+			set(x, y, border);
+		}
+
+		void set(double x, double y, boolean border) {
 			this.x = x;
 			this.y = y;
 			this.border = border;
@@ -170,567 +402,2239 @@ public class XYPlotData {
 	 * Add a value to the data ring buffer. If the buffer is full, the oldest value
 	 * (lowest x value) will be dropped
 	 * 
+	 * If an ingestion queue is active (see
+	 * {@link #setIngestionQueue(int, OverflowPolicy)}), the value is only put into
+	 * the queue without taking a lock. If a reorder window is active (see
+	 * {@link #setReorderWindow(double, int)}), the value may be held back until
+	 * it has left the window.
+	 * 
 	 * @param x X-Value
 	 * @param y Y-Value
-	 * @return Current number of values in the buffer
+	 * @return Current number of values in the buffer. With an ingestion queue
+	 *         this is the number after the queue was drained last, values
+	 *         waiting in the queue are not counted.
 	 */
 	public int addValue(double x, double y) {
-		accessLock.lock();
-		try {
-			boolean shiftLastDrawPoint = false;
-			int usedNum = values.size();
-			if (usedNum == 0) {
-				yMinMax = new MinMax();
-			}
-			if (usedNum == maxNum) {
-				values.remove(0);
-				usedNum--;
-				yMinMax.minIndex--;
-				yMinMax.maxIndex--;
-				if (0 == yMinMax.minIndex || 0 == yMinMax.maxIndex) {
-					yMinMax = findMinMax(0, usedNum - 2);
-				}
-				shiftLastDrawPoint = true;
-				if (cursorPos != -1) {
-					cursorPos--;
-					if (cursorPos < 0) {
-						cursorPos = 0;
-					}
-				}
-			}
-			values.add(new DataValue(x, y, false));
-			if (y > yMinMax.max) {
-				yMinMax.max = y;
-				yMinMax.maxIndex = usedNum;
-			}
-			if (y < yMinMax.min) {
-				yMinMax.min = y;
-				yMinMax.minIndex = usedNum;
+		checkUngrouped();
+		XYPlotDataQueue q = queue;
+		if (q != null) {
+			if (q.offer(x, y) && owner != null) {
+				owner.setOutdated();
 			}
-			if (shiftLastDrawPoint) {
-				int num = getLastDrawPointNum();
-				num -= 1;
-				setLastDrawPointNum(num);
+			if (latePending) {
+				forwardLateValues();
 			}
-			newValues++;
+			writeArchive();
+			return drainedNum;
+		}
+		int size;
+		accessLock.lock();
+		try {
+			ingestValue(x, y);
+			dataVersion.incrementAndGet();
+			size = values.size();
 		} finally {
 			accessLock.unlock();
 		}
+		forwardLateValues();
+		writeArchive();
 		if (owner != null) {
 			owner.setOutdated();
 		}
-		return values.size();
+		return size;
 	}
 
 	/**
-	 * Add a switch value with text and value.
+	 * Add a block of values to the data ring buffer. This is the same as calling
+	 * {@link #addValue(double, double)} for each value, but the lock is taken only
+	 * once and the plot is notified only once. Values waiting in the ingestion
+	 * queue are moved into the buffer before.
 	 * 
-	 * @param x     X value
-	 * @param label Text of the switch state.
-	 * @return Number of different labels used so far
+	 * @param xs  Array with x values
+	 * @param ys  Array with y values
+	 * @param off Offset of the first value in both arrays
+	 * @param len Number of values to add
+	 * @return Current number of values in the buffer
 	 */
-	public int addValue(double x, String label) {
+	public int addValues(double[] xs, double[] ys, int off, int len) {
+		if (off < 0 || len < 0 || off + len > xs.length || off + len > ys.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		checkUngrouped();
+		int size;
 		accessLock.lock();
-		scaleData.isSwitch = true;
-		long y = -1;
-		try {
-			if (!labels.contains(label)) {
-				labels.add(label);
-				Collections.sort(labels, Collections.reverseOrder());
-				y = labels.indexOf(label);
-				for (DataValue dv : values) {
-					if (Math.round(dv.y) >= y) {
-						dv.y += 1.0;
-					}
+		try {
+			drain();
+			if (reorder != null) {
+				for (int i = off; i < off + len; ++i) {
+					ingestValue(xs[i], ys[i]);
 				}
-				yMinMax.min = 0;
-				yMinMax.max = labels.size() - 1;
+				dataVersion.incrementAndGet();
 			} else {
-				y = labels.indexOf(label);
+				beforeAdd(xs, ys, null, null, off, len);
+				appendValues(xs, ys, off, len);
 			}
+			size = values.size();
 		} finally {
 			accessLock.unlock();
 		}
-		if (y >= 0) {
-			addValue(x, y);
+		forwardLateValues();
+		writeArchive();
+		if (len > 0 && owner != null) {
+			owner.setOutdated();
 		}
-		return labels.size();
+		return size;
 	}
 
 	/**
-	 * Get the switch labels.
+	 * Add a block of values to the data ring buffer. The values are read from the
+	 * current positions of the buffers, the positions are advanced by the number
+	 * of values added (see {@link #addValues(double[], double[], int, int)}).
 	 * 
-	 * @return Sorted list of labels.
+	 * @param xs Buffer with x values
+	 * @param ys Buffer with y values
+	 * @return Current number of values in the buffer
 	 */
-	public List<String> getSwitchLabels() {
-		ArrayList<String> result = new ArrayList<String>(labels);
-		return result;
+	public int addValues(DoubleBuffer xs, DoubleBuffer ys) {
+		int len = Math.min(xs.remaining(), ys.remaining());
+		checkUngrouped();
+		int size;
+		accessLock.lock();
+		try {
+			drain();
+			if (reorder != null) {
+				for (int i = 0; i < len; ++i) {
+					ingestValue(xs.get(), ys.get());
+				}
+				dataVersion.incrementAndGet();
+			} else {
+				int usedNum = values.size();
+				beforeAdd(null, null, xs, ys, 0, len);
+				int dropped = values.add(xs, ys, len);
+				appendedValues(usedNum, dropped, len);
+			}
+			size = values.size();
+		} finally {
+			accessLock.unlock();
+		}
+		forwardLateValues();
+		writeArchive();
+		if (len > 0 && owner != null) {
+			owner.setOutdated();
+		}
+		return size;
 	}
 
 	/**
-	 * Exchange all values in the current ring buffer. The number of values is not
-	 * changes and also not the x values
+	 * Activate or deactivate the ingestion queue. With an active queue,
+	 * {@link #addValue(double, double)} only puts the value into a bounded lock
+	 * free queue. The queued values are moved into the ring buffer when the plot
+	 * is painted or when {@link #drainIngestionQueue()} is called, e.g. by a
+	 * separate drain thread.
+	 * <p>
+	 * The values of a queue being replaced are moved into the ring buffer after
+	 * the new queue has been set. A producer which has fetched the old queue
+	 * just before may still put a value into it after that, this value is lost.
+	 * Stop the producers while the queue is changed to avoid this.
 	 * 
-	 * @param y Array with new y values
+	 * @param capacity Size of the queue, 0 to deactivate the queue
+	 * @param policy   Behavior if the queue is full
 	 */
-	public void changeValues(double[] y) {
+	public void setIngestionQueue(int capacity, OverflowPolicy policy) {
+		checkUngrouped();
 		accessLock.lock();
 		try {
-			yMinMax = new MinMax();
-			for (int i = 0; i < Math.min(values.size(), y.length); ++i) {
-				DataValue dv = values.get(i);
-				dv.y = y[i];
-				if (dv.y > yMinMax.max) {
-					yMinMax.max = dv.y;
-				}
-				if (dv.y < yMinMax.min) {
-					yMinMax.min = dv.y;
-				}
+			XYPlotDataQueue old = queue;
+			if (capacity > 0) {
+				queue = new XYPlotDataQueue(capacity, policy);
+			} else {
+				queue = null;
 			}
-			otherChanges = true;
+			drain(old);
+			drainedNum = values.size();
 		} finally {
 			accessLock.unlock();
 		}
-		if (owner != null) {
+	}
+
+	/**
+	 * Move all values waiting in the ingestion queue into the ring buffer.
+	 * 
+	 * @return Number of values moved
+	 */
+	public int drainIngestionQueue() {
+		int num = drain();
+		forwardLateValues();
+		writeArchive();
+		if (num > 0 && owner != null) {
 			owner.setOutdated();
 		}
+		return num;
 	}
 
 	/**
-	 * Declare a break after the last added data point.
+	 * Get the number of values waiting in the ingestion queue.
 	 * 
+	 * @return Number of values, 0 if no queue is active
 	 */
-	public void setPause() {
+	public int getIngestionQueueDepth() {
+		XYPlotDataQueue q = queue;
+		return q != null ? q.depth() : 0;
+	}
+
+	/**
+	 * Get the number of values dropped because the ingestion queue was full.
+	 * 
+	 * @return Number of dropped values, 0 if no queue is active
+	 */
+	public long getIngestionQueueDrops() {
+		XYPlotDataQueue q = queue;
+		return q != null ? q.drops() : 0;
+	}
+
+	/**
+	 * Activate or deactivate the reorder window for values arriving slightly out
+	 * of order, e.g. from networked sensors. The values are held back in the
+	 * window and moved into the ring buffer in ascending order of their x
+	 * values. A value waits until it is more than maxDelay older than the newest
+	 * value added or until more than maxPending values are waiting. Values held
+	 * back are not shown yet.
+	 * <p>
+	 * A value arriving with a x value lower than the last value moved into the
+	 * ring buffer is late. It is counted (see {@link #getLateValueCount()}) and
+	 * dropped or added to the side channel set by
+	 * {@link #setLateValueHandler(XYPlotData)}.
+	 * <p>
+	 * Values waiting in the window are moved into the ring buffer before the
+	 * window is changed.
+	 * 
+	 * @param maxDelay   Width of the window in x units, 0 for no limit
+	 * @param maxPending Maximum number of values held back, 0 for no limit
+	 *                   other than the capacity of the ring buffer. If both
+	 *                   limits are 0, the window is deactivated.
+	 */
+	public void setReorderWindow(double maxDelay, int maxPending) {
+		checkUngrouped();
 		accessLock.lock();
 		try {
-			int pos = values.size();
-			if (pos > 0) {
-				DataValue dataValue = values.get(pos - 1);
-				dataValue.border = true;
+			drain();
+			flushReorder();
+			if (maxDelay > 0 || maxPending > 0) {
+				double released = values.size() > 0 ? values.x(values.size() - 1) : Double.NEGATIVE_INFINITY;
+				reorder = new XYPlotDataReorder(maxDelay, maxPending, released);
+			} else {
+				reorder = null;
 			}
 		} finally {
 			accessLock.unlock();
 		}
+		forwardLateValues();
+		writeArchive();
+		notifyOwner();
 	}
 
 	/**
-	 * Get the data point on a given index position.
+	 * Move all values waiting in the reorder window into the ring buffer, e.g.
+	 * at the end of a measurement.
 	 * 
-	 * @param index Position in data buffer
+	 * @return Number of values moved
 	 */
-	public DataValue getValue(int index) {
+	public int flushReorderWindow() {
+		int num;
 		accessLock.lock();
 		try {
-			if (index >= 0 && index < values.size()) {
-				return values.get(index);
-			}
-			return new DataValue(0, 0, false);
+			drain();
+			num = flushReorder();
 		} finally {
 			accessLock.unlock();
 		}
+		forwardLateValues();
+		writeArchive();
+		if (num > 0) {
+			notifyOwner();
+		}
+		return num;
 	}
 
 	/**
-	 * Set the legend text for this data handler.
-	 * 
-	 * @param text The legend text
+	 * Get the number of values waiting in the reorder window.
 	 * 
+	 * @return Number of values, 0 if no window is active
 	 */
-	public void setLegendText(String text) {
-		boolean changed = true;
-		if (axisText != null) {
-			changed = !axisText.equals(text);
-		}
-		axisText = new String(text);
-		if (changed && owner != null) {
-			otherChanges = true;
-			owner.setOutdated();
+	public int getReorderWindowDepth() {
+		accessLock.lock();
+		try {
+			return reorder != null ? reorder.depth() : 0;
+		} finally {
+			accessLock.unlock();
 		}
 	}
 
 	/**
-	 * Get the legend text for this data handler.
+	 * Get the number of values which arrived too late for the reorder window.
 	 * 
+	 * @return Number of late values since the last {@link #clear()}
 	 */
-	public String getLegendText() {
-		String result = "-";
-		if (axisText != null) {
-			result = axisText;
+	public long getLateValueCount() {
+		accessLock.lock();
+		try {
+			return lateNum;
+		} finally {
+			accessLock.unlock();
 		}
-		return result;
 	}
 
 	/**
-	 * Set the unit string for this data handler e.g. km or miles.
+	 * Set a side channel for values arriving too late for the reorder window
+	 * (see {@link #setReorderWindow(double, int)}). The late values are added to
+	 * the side channel in their order of arrival, after the lock of this handler
+	 * has been released. Without a side channel the late values are dropped.
 	 * 
-	 * @param text The unit text.
+	 * @param handler Data handler taking the late values or null to drop them
 	 */
-	public void setUnit(String text) {
-		boolean changed = true;
-		if (unitText != null) {
-			changed = !unitText.equals(text);
+	public void setLateValueHandler(XYPlotData handler) {
+		if (handler == this) {
+			throw new IllegalArgumentException("Late values can not be added to the same handler");
 		}
-		unitText = new String(text);
-		if (changed && owner != null) {
-			otherChanges = true;
-			owner.setOutdated();
+		accessLock.lock();
+		try {
+			lateHandler = handler;
+			if (handler == null) {
+				lateWaiting = 0;
+				latePending = false;
+			}
+		} finally {
+			accessLock.unlock();
 		}
 	}
 
 	/**
-	 * Get the unit string of the data set
-	 * 
-	 * @return Unit string
+	 * Pass a value to the reorder window if there is one, otherwise append it to
+	 * the ring buffer directly. The caller must hold the lock.
 	 */
-	public String getUnit() {
-		String result = "-";
-		if (unitText != null) {
-			result = unitText;
+	private void ingestValue(double x, double y) {
+		XYPlotDataReorder r = reorder;
+		if (r == null) {
+			appendValue(x, y);
+			return;
+		}
+		if (!r.offer(x, y)) {
+			lateNum++;
+			if (lateHandler != null) {
+				keepLateValue(x, y);
+			}
+			return;
+		}
+		while (r.poll(reorderValue, values.capacity())) {
+			appendValue(reorderValue[0], reorderValue[1]);
 		}
-		return result;
 	}
 
 	/**
-	 * Get the actual number of data points in this data handler.
+	 * Move all values of the reorder window into the ring buffer. The caller
+	 * must hold the lock.
 	 * 
+	 * @return Number of values moved
 	 */
-	public int length() {
-		return values.size();
+	private int flushReorder() {
+		int num = 0;
+		if (reorder != null) {
+			while (reorder.flush(reorderValue)) {
+				appendValue(reorderValue[0], reorderValue[1]);
+				num++;
+			}
+			if (num > 0) {
+				dataVersion.incrementAndGet();
+			}
+		}
+		return num;
 	}
 
 	/**
-	 * Get the maximum number od points this data handler can store in its ring
-	 * buffer.
-	 * 
+	 * Keep a late value for the side channel. The caller must hold the lock.
 	 */
-	public int getMaxNumber() {
-		return maxNum;
+	private void keepLateValue(double x, double y) {
+		if (lateX == null || lateWaiting == lateX.length) {
+			int size = lateX == null ? 16 : lateX.length * 2;
+			double[] nx = new double[size];
+			double[] ny = new double[size];
+			if (lateX != null) {
+				System.arraycopy(lateX, 0, nx, 0, lateWaiting);
+				System.arraycopy(lateY, 0, ny, 0, lateWaiting);
+			}
+			lateX = nx;
+			lateY = ny;
+		}
+		lateX[lateWaiting] = x;
+		lateY[lateWaiting] = y;
+		lateWaiting++;
+		latePending = true;
 	}
 
 	/**
-	 * True in case y-axis autoscaling is on.
-	 * 
+	 * Add the late values kept so far to the side channel. This must be called
+	 * without holding the lock, the side channel takes its own lock.
 	 */
-	public boolean isAutoScale() {
-		return autoScale;
+	private void forwardLateValues() {
+		if (!latePending) {
+			return;
+		}
+		XYPlotData handler;
+		double[] xs;
+		double[] ys;
+		int num;
+		accessLock.lock();
+		try {
+			handler = lateHandler;
+			xs = lateX;
+			ys = lateY;
+			num = lateWaiting;
+			lateX = null;
+			lateY = null;
+			lateWaiting = 0;
+			latePending = false;
+		} finally {
+			accessLock.unlock();
+		}
+		if (handler != null && num > 0) {
+			handler.addValues(xs, ys, 0, num);
+		}
 	}
 
 	/**
-	 * Set autoscaling.
+	 * Move the values of the ingestion queue into the ring buffer.
 	 * 
-	 * @param autoScale True/false
+	 * @return Number of values moved
 	 */
-	public void setAutoScale(boolean autoScale) {
-		this.autoScale = autoScale;
+	int drain() {
+		return drain(queue);
 	}
 
 	/**
-	 * Set manual minimum, maximum values for y axis *
+	 * Move the values of an ingestion queue into the ring buffer.
 	 * 
-	 * @param min Minimum y value
-	 * @param max Maximum y value
+	 * @param q Queue or null
+	 * @return Number of values moved
 	 */
-	public void setManualScale(double min, double max) {
-		boolean changed = (min != fixedYMinValue || max != fixedYMaxValue);
-		hasFixedYMinValue = true;
-		hasFixedYMaxValue = true;
-		fixedYMinValue = min;
-		fixedYMaxValue = max;
-		setAutoScale(false);
-		if (changed && owner != null) {
-			otherChanges = true;
-			owner.setOutdated();
+	private int drain(XYPlotDataQueue q) {
+		int num = 0;
+		if (q != null) {
+			accessLock.lock();
+			try {
+				while (q.poll(queuedValue)) {
+					ingestValue(queuedValue[0], queuedValue[1]);
+					num++;
+				}
+				if (num > 0) {
+					dataVersion.incrementAndGet();
+				}
+				drainedNum = values.size();
+			} finally {
+				accessLock.unlock();
+			}
 		}
+		return num;
 	}
 
 	/**
-	 * Make sure that this minimum value is always visible on the y axis *
-	 * 
-	 * @param value Any value
+	 * Bring the values up to date before they are painted. The caller must not
+	 * hold the lock.
 	 */
-	public void setManualScaleMin(double value) {
-		boolean changed = value != fixedYMinValue;
-		hasFixedYMinValue = true;
-		hasFixedYMaxValue = false;
-		fixedYMinValue = value;
-		if (changed && owner != null) {
-			otherChanges = true;
-			owner.setOutdated();
-		}
+	void refresh() {
+		drain();
 	}
 
 	/**
-	 * Make sure that this value is always visible on the y axis.
-	 * 
+	 * Check if there are values which are not in the ring buffer yet, but would
+	 * be moved there by {@link #refresh()}.
 	 */
-	public void clearManualScale() {
-		hasFixedYMinValue = false;
-		hasFixedYMaxValue = false;
-		if (owner != null) {
-			otherChanges = true;
-			owner.setOutdated();
-		}
+	boolean hasPending() {
+		return getIngestionQueueDepth() > 0;
 	}
 
 	/**
-	 * Set number of visible points
+	 * Update min/max, cursor and draw position after a block of values has been
+	 * appended to the ring buffer. The caller must hold the lock.
 	 * 
-	 * @param visiblePointNum
+	 * @param usedNum Number of values before the block was appended
+	 * @param dropped Number of old values dropped from the ring buffer
+	 * @param len     Number of values in the block
 	 */
-	void setVisiblePointNum(int visiblePointNum) {
-		this.visiblePointNum = visiblePointNum;
+	private void appendedValues(int usedNum, int dropped, int len) {
+		int oldNum = usedNum - dropped;
+		if (dropped > 0) {
+			if (extrema != null) {
+				extrema.drop();
+			}
+		}
+		// Archived values keep their index
+		if (dropped > 0 && !archiving()) {
+			if (cursorPos != -1) {
+				cursorPos = Math.max(cursorPos - dropped, 0);
+			}
+			int num = getLastDrawPointNum();
+			setLastDrawPointNum(num - dropped);
+		}
+		for (int i = oldNum; i < values.size(); ++i) {
+			if (extrema != null) {
+				extrema.add(i);
+			}
+			index.add(i);
+			if (statistics != null) {
+				statistics.add(i);
+			}
+			lod.add(i);
+		}
+		applyRetention();
+		dataVersion.incrementAndGet();
 	}
 
 	/**
-	 * Get number of visible points
+	 * Append a block of values to the ring buffer. Values dropped from the ring
+	 * buffer must have been archived before (see
+	 * {@link #beforeAdd(double[], double[], DoubleBuffer, DoubleBuffer, int, int)}).
+	 * The caller must hold the lock.
 	 * 
-	 * @return
+	 * @param xs  Array with x values
+	 * @param ys  Array with y values
+	 * @param off Offset of the first value in both arrays
+	 * @param len Number of values to add
 	 */
-	int getVisiblePointNum() {
+	void appendValues(double[] xs, double[] ys, int off, int len) {
+		int usedNum = values.size();
+		int dropped = values.add(xs, ys, off, len);
+		appendedValues(usedNum, dropped, len);
+	}
+
+	/**
+	 * Keep the values which are dropped from the ring buffer by appending a block
+	 * of values for the views and move them into the archive. The archive also
+	 * gets the values of the block which do not fit into the buffer at all. The
+	 * caller must hold the lock.
+	 */
+	void beforeAdd(double[] xa, double[] ya, DoubleBuffer xb, DoubleBuffer yb, int off, int len) {
+		if (values.capacity() == 0) {
+			return;
+		}
+		int old = Math.min(Math.max(0, values.size() + len - values.capacity()), values.size());
+		keepForViews(old);
+		if (statistics != null) {
+			statistics.drop(old);
+		}
+		if (!archiving()) {
+			return;
+		}
+		for (int i = 0; i < old; ++i) {
+			archiveValue(values.x(i), values.y(i), values.border(i));
+		}
+		int skip = Math.max(0, len - values.capacity());
+		for (int i = 0; i < skip; ++i) {
+			if (xa != null) {
+				archiveValue(xa[off + i], ya[off + i], false);
+			} else {
+				archiveValue(xb.get(xb.position() + i), yb.get(yb.position() + i), false);
+			}
+		}
+	}
+
+	/**
+	 * Check that the values are not added to a single channel of a data group.
+	 */
+	private void checkUngrouped() {
+		if (group != null) {
+			throw new IllegalStateException("Values of a data group channel are added by the group");
+		}
+	}
+
+	/**
+	 * Append a value to the ring buffer. The caller must hold the lock.
+	 * 
+	 * @param x X-Value
+	 * @param y Y-Value
+	 */
+	private void appendValue(double x, double y) {
+		boolean shiftLastDrawPoint = false;
+		if (values.capacity() == 0) {
+			return;
+		}
+		boolean archived = archiving();
+		if (values.isFull()) {
+			keepForViews(1);
+			if (statistics != null) {
+				statistics.drop(1);
+			}
+			if (archived) {
+				archiveValue(values.x(0), values.y(0), values.border(0));
+			}
+		}
+		if (values.add(x, y)) {
+			if (extrema != null) {
+				extrema.drop();
+			}
+			// Archived values keep their index
+			shiftLastDrawPoint = !archived;
+			if (cursorPos != -1 && !archived) {
+				cursorPos--;
+				if (cursorPos < 0) {
+					cursorPos = 0;
+				}
+			}
+		}
+		if (extrema != null) {
+			extrema.add(values.size() - 1);
+		}
+		index.add(values.size() - 1);
+		if (statistics != null) {
+			statistics.add(values.size() - 1);
+		}
+		lod.add(values.size() - 1);
+		if (shiftLastDrawPoint) {
+			int num = getLastDrawPointNum();
+			num -= 1;
+			setLastDrawPointNum(num);
+		}
+		applyRetention();
+	}
+
+	/**
+	 * Limit the values kept in the ring buffer below its capacity. After values
+	 * have been added, the oldest values exceeding one of the limits are dropped
+	 * the same way as values dropped from a full buffer, so they are moved into
+	 * the archive if there is one (see {@link #setArchive(File, long)}). The
+	 * newest value is always kept.
+	 * <p>
+	 * For a channel of a data group the limits are set by
+	 * {@link XYPlotDataGroup#setRetention(double, int, long)}.
+	 * 
+	 * @param maxAge   Maximum distance in x units between the oldest and the
+	 *                 newest value, e.g. the last 10 minutes, 0 for no limit
+	 * @param maxCount Maximum number of values, 0 for no limit
+	 * @param maxBytes Maximum memory for the values in bytes, 0 for no limit. For
+	 *                 {@link Storage#COMPRESSED} the average size of the
+	 *                 compressed values is taken.
+	 */
+	public void setRetention(double maxAge, int maxCount, long maxBytes) {
+		if (group != null) {
+			throw new IllegalStateException("The retention of a data group channel is set by the group");
+		}
+		accessLock.lock();
+		try {
+			drain();
+			retention(maxAge, maxCount, maxBytes);
+		} finally {
+			accessLock.unlock();
+		}
+		writeArchive();
+		notifyOwner();
+	}
+
+	/**
+	 * Set the retention limits and drop the values exceeding them. The caller
+	 * must hold the lock.
+	 */
+	void retention(double maxAge, int maxCount, long maxBytes) {
+		this.maxAge = Math.max(maxAge, 0);
+		this.maxCount = Math.max(maxCount, 0);
+		this.maxBytes = Math.max(maxBytes, 0);
+		if (applyRetention()) {
+			dataVersion.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Drop the oldest values exceeding the retention limits. A value is checked
+	 * against the age limit only until it is dropped, so the costs per added
+	 * value are constant on average. The caller must hold the lock.
+	 * 
+	 * @return True if values have been dropped
+	 */
+	private boolean applyRetention() {
+		int size = values.size();
+		if (size == 0 || (maxAge == 0 && maxCount == 0 && maxBytes == 0)) {
+			return false;
+		}
+		long limit = size;
+		if (maxCount > 0) {
+			limit = Math.min(limit, maxCount);
+		}
+		if (maxBytes > 0) {
+			limit = Math.min(limit, (long) (maxBytes / values.bytesPerValue()));
+		}
+		int num = (int) (size - Math.max(limit, 1));
+		if (maxAge > 0) {
+			double oldest = values.x(size - 1) - maxAge;
+			while (num < size - 1 && values.x(num) < oldest) {
+				num++;
+			}
+		}
+		if (num == 0) {
+			return false;
+		}
+		dropOldest(num);
+		return true;
+	}
+
+	/**
+	 * Drop the oldest values of the ring buffer the same way as values dropped
+	 * from a full buffer. The caller must hold the lock.
+	 * 
+	 * @param num Number of values to drop
+	 */
+	private void dropOldest(int num) {
+		keepForViews(num);
+		if (statistics != null) {
+			statistics.drop(num);
+		}
+		boolean archived = archiving();
+		if (archived) {
+			for (int i = 0; i < num; ++i) {
+				archiveValue(values.x(i), values.y(i), values.border(i));
+			}
+		}
+		values.drop(num);
+		if (extrema != null) {
+			extrema.drop();
+		}
+		// Archived values keep their index
+		if (!archived) {
+			if (cursorPos != -1) {
+				cursorPos = Math.max(cursorPos - num, 0);
+			}
+			int drawNum = getLastDrawPointNum();
+			setLastDrawPointNum(drawNum - num);
+		}
+	}
+
+	/**
+	 * Add a switch value with text and value. Each label gets a stable id in
+	 * the order of its first use, which is stored as y value. The position of
+	 * the label in the sorted list of labels is applied when the values are
+	 * read, so a new label does not touch the values added before.
+	 * 
+	 * @param x     X value
+	 * @param label Text of the switch state.
+	 * @return Number of different labels used so far
+	 */
+	public int addValue(double x, String label) {
+		checkUngrouped();
+		accessLock.lock();
+		scaleData.isSwitch = true;
+		int size;
+		try {
+			drain();
+			Integer id = labelIds.get(label);
+			if (id == null) {
+				id = labelIds.size();
+				labelIds.put(label, id);
+				int pos = Collections.binarySearch(labels, label, Collections.reverseOrder());
+				labels.add(-pos - 1, label);
+				labelRank = new double[labels.size()];
+				for (int i = 0; i < labels.size(); ++i) {
+					labelRank[labelIds.get(labels.get(i))] = i;
+				}
+			}
+			// Bypass the ingestion queue, the ids are only valid together
+			// with the labels
+			ingestValue(x, id);
+			dataVersion.incrementAndGet();
+			size = labels.size();
+		} finally {
+			accessLock.unlock();
+		}
+		forwardLateValues();
+		writeArchive();
+		if (owner != null) {
+			owner.setOutdated();
+		}
+		return size;
+	}
+
+	/**
+	 * Get the switch labels.
+	 * 
+	 * @return Sorted list of labels.
+	 */
+	public List<String> getSwitchLabels() {
+		accessLock.lock();
+		try {
+			return new ArrayList<String>(labels);
+		} finally {
+			accessLock.unlock();
+		}
+	}
+
+	/**
+	 * Map a stored y value to the y value shown. Switch values are stored with
+	 * the id of their label and shown with the position of the label in the
+	 * sorted list of labels.
+	 */
+	private double shownY(double y) {
+		int id = (int) y;
+		if (id == y && id >= 0 && id < labelRank.length) {
+			return labelRank[id];
+		}
+		return y;
+	}
+
+	/**
+	 * Exchange all values in the current ring buffer. The number of values is not
+	 * changes and also not the x values
+	 * 
+	 * @param y Array with new y values
+	 */
+	public void changeValues(double[] y) {
+		accessLock.lock();
+		try {
+			drain();
+			changeY(y, Math.min(values.size(), y.length));
+		} finally {
+			accessLock.unlock();
+		}
+		if (owner != null) {
+			owner.setOutdated();
+		}
+	}
+
+	/**
+	 * Replace all values in one step, e.g. by a new spectrum (see
+	 * {@link XYPlotDataSpectrum}). If the x values are the same as before, only
+	 * the y values are exchanged like by {@link #changeValues(double[])} and the
+	 * cursor stays where it is.
+	 * 
+	 * @param xs  Array with x values
+	 * @param ys  Array with y values
+	 * @param num Number of values
+	 */
+	void replaceValues(double[] xs, double[] ys, int num) {
+		accessLock.lock();
+		try {
+			drain();
+			boolean same = values.size() == num;
+			for (int i = 0; same && i < num; ++i) {
+				same = values.x(i) == xs[i];
+			}
+			if (same) {
+				changeY(ys, num);
+			} else {
+				clearValues();
+				beforeAdd(xs, ys, null, null, 0, num);
+				appendValues(xs, ys, 0, num);
+			}
+		} finally {
+			accessLock.unlock();
+		}
+	}
+
+	/**
+	 * Exchange the y values of the oldest values in the ring buffer. The caller
+	 * must hold the lock.
+	 */
+	private void changeY(double[] y, int num) {
+		detachViews();
+		valuesGeneration++;
+		for (int i = 0; i < num; ++i) {
+			values.setY(i, y[i]);
+		}
+		if (extrema != null) {
+			extrema.rebuild();
+		}
+		index.rebuild();
+		if (statistics != null) {
+			statistics.rebuild();
+		}
+		lod.rebuild();
+		dataVersion.incrementAndGet();
+		// Values drawn before have changed
+		scaleVersion.incrementAndGet();
+	}
+
+	/**
+	 * Declare a break after the last added data point. Values waiting in the
+	 * reorder window (see {@link #setReorderWindow(double, int)}) are moved
+	 * into the ring buffer before.
+	 * 
+	 */
+	public void setPause() {
+		accessLock.lock();
+		try {
+			drain();
+			flushReorder();
+			markBorder();
+		} finally {
+			accessLock.unlock();
+		}
+		writeArchive();
+	}
+
+	/**
+	 * Mark a break after the last value in the ring buffer. The caller must hold
+	 * the lock.
+	 */
+	void markBorder() {
+		int pos = values.size();
+		if (pos > 0) {
+			values.setBorder(pos - 1);
+			lod.setBorder(pos - 1);
+			dataVersion.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Get the data point on a given index position.
+	 * 
+	 * @param index Position in data buffer
+	 */
+	public DataValue getValue(int index) {
+		return getValue(index, new DataValue());
+	}
+
+	/**
+	 * Get the data point on a given index position into an existing object. This
+	 * avoids creating a new object for each value read.
+	 * 
+	 * @param index Position in data buffer
+	 * @param value Object receiving the value, set to 0/0 without break if the
+	 *              index is out of range
+	 * @return The given object
+	 */
+	public DataValue getValue(int index, DataValue value) {
+		loadArchive(-1, index, index);
+		accessLock.lock();
+		try {
+			if (index >= 0 && index < length()) {
+				value.set(valueX(index), valueY(index), valueBorder(index));
+			} else {
+				value.set(0, 0, false);
+			}
+			return value;
+		} finally {
+			accessLock.unlock();
+		}
+	}
+
+	/**
+	 * Iterate over a range of values. The lock is taken only once for the whole
+	 * range, so the values are consistent even if other threads add values at
+	 * the same time, and no objects are created per value. Producers are blocked
+	 * during the iteration; for long running work on many values a view (see
+	 * {@link #getView()}) is the better choice.
+	 * 
+	 * @param minIndex First index of the range
+	 * @param maxIndex Last index of the range (inclusive)
+	 * @param consumer Callback receiving the values
+	 * @return Number of values passed to the callback
+	 */
+	public int forEach(int minIndex, int maxIndex, ValueConsumer consumer) {
+		loadArchive(-1, Math.max(minIndex, 0), maxIndex);
+		accessLock.lock();
+		try {
+			minIndex = Math.max(minIndex, 0);
+			maxIndex = Math.min(maxIndex, length() - 1);
+			int a = archived();
+			for (int i = minIndex; i <= maxIndex; ++i) {
+				if (i < a) {
+					consumer.accept(i, archive.x(i), shownY(archive.y(i)), archive.border(i));
+				} else {
+					consumer.accept(i, values.x(i - a), shownY(values.y(i - a)), values.border(i - a));
+				}
+			}
+			return Math.max(maxIndex - minIndex + 1, 0);
+		} finally {
+			accessLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the x value on a given index position without creating a
+	 * {@link DataValue}. The caller must hold the lock and check the index.
+	 * 
+	 * @param index Position in data buffer
+	 */
+	double valueX(int index) {
+		int a = archived();
+		return index < a ? archive.x(index) : values.x(index - a);
+	}
+
+	/**
+	 * Get the y value on a given index position. The caller must hold the lock
+	 * and check the index.
+	 * 
+	 * @param index Position in data buffer
+	 */
+	double valueY(int index) {
+		int a = archived();
+		return shownY(index < a ? archive.y(index) : values.y(index - a));
+	}
+
+	/**
+	 * Check for a break after the value on a given index position. The caller
+	 * must hold the lock and check the index.
+	 * 
+	 * @param index Position in data buffer
+	 */
+	boolean valueBorder(int index) {
+		int a = archived();
+		return index < a ? archive.border(index) : values.border(index - a);
+	}
+
+	/**
+	 * Keep the values dropped from the ring buffer in a disk archive. Dropped
+	 * values are written to segment files in the given directory and read back
+	 * when they are accessed, e.g. when zooming or scrolling into older ranges.
+	 * The archived values come before the values of the ring buffer, so
+	 * {@link #length()} and all indices include them.
+	 * <p>
+	 * The files are deleted by {@link #clear()} and {@link #close()}. Only the
+	 * summaries of the segments stay in memory: minimum, maximum, the first,
+	 * minimum, maximum and last value of each block of 256 values and the larger
+	 * buckets of the level of detail pyramid. This is enough to draw archived
+	 * ranges which are zoomed out and to find minimum and maximum of whole
+	 * blocks. The segments read from disk are cached up to the memory budget.
+	 * <p>
+	 * Segments are written by the producers after they have released the lock,
+	 * and read before the lock is taken. A segment evicted from the cache again
+	 * before it is accessed is read while holding the lock. If writing a segment
+	 * fails, it is dropped together with the following archived values, see
+	 * {@link #getArchiveError()}.
+	 * 
+	 * @param directory    Directory for the segment files or null to delete the
+	 *                     archive
+	 * @param memoryBudget Memory in bytes for cached segments
+	 */
+	public void setArchive(File directory, long memoryBudget) {
+		accessLock.lock();
+		try {
+			if (archive != null) {
+				archive.clear();
+			}
+			archiveGeneration++;
+			archive = directory != null ? new XYPlotDataArchive(directory, memoryBudget) : null;
+		} finally {
+			accessLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the first error reading or writing the archive files. After a write
+	 * error, the segment which could not be written and all later archived
+	 * values are dropped, further values dropped from the ring buffer are not
+	 * archived. The error is reset by {@link #clear()}.
+	 * 
+	 * @return Error or null
+	 */
+	public IOException getArchiveError() {
+		accessLock.lock();
+		try {
+			return archive != null ? archive.getError() : null;
+		} finally {
+			accessLock.unlock();
+		}
+	}
+
+	/**
+	 * Move a value dropped from the ring buffer into the archive. The caller
+	 * must hold the lock.
+	 */
+	private void archiveValue(double x, double y, boolean border) {
+		if (archive.add(x, y, border)) {
+			archivePending = true;
+		}
+	}
+
+	/**
+	 * Write the sealed segments of the archive to disk. This is called by the
+	 * producers after they have released the lock, so neither the paint thread
+	 * nor other producers wait for the disk. Until then the sealed segments stay
+	 * in memory, e.g. segments filled by draining the ingestion queue while
+	 * painting are written with the next value added.
+	 */
+	void writeArchive() {
+		if (!archivePending) {
+			return;
+		}
+		archiveWriteLock.lock();
+		try {
+			while (true) {
+				XYPlotDataArchive a;
+				XYPlotDataArchive.Segment segment;
+				accessLock.lock();
+				try {
+					a = archive;
+					segment = a != null ? a.nextWrite() : null;
+					if (segment == null) {
+						archivePending = false;
+						return;
+					}
+				} finally {
+					accessLock.unlock();
+				}
+				File file = null;
+				IOException error = null;
+				try {
+					file = a.write(segment);
+				} catch (IOException e) {
+					error = e;
+				}
+				int dropped;
+				accessLock.lock();
+				try {
+					dropped = a.written(segment, file, error);
+					if (dropped > 0) {
+						// The values after the lost segment are gone as well,
+						// the following indices move down
+						archiveGeneration++;
+						if (cursorPos != -1) {
+							cursorPos = Math.max(cursorPos - dropped, 0);
+						}
+						setLastDrawPointNum(getLastDrawPointNum() - dropped);
+						dataVersion.incrementAndGet();
+					}
+				} finally {
+					accessLock.unlock();
+				}
+				if (dropped > 0) {
+					notifyOwner();
+				}
+			}
+		} finally {
+			archiveWriteLock.unlock();
+		}
+	}
+
+	/**
+	 * Read the archive segments of a range of indices from disk as far as the
+	 * memory budget of the archive allows. This is called before the lock is
+	 * taken to access archived values, so the disk is read without blocking the
+	 * producers and the paint thread.
+	 * 
+	 * @param generation Number of times the archive had been cleared when the
+	 *                   indices were taken, -1 for the current archive
+	 * @param from       First index
+	 * @param to         Last index (inclusive)
+	 */
+	void loadArchive(long generation, int from, int to) {
+		if (archive == null || from < 0) {
+			return;
+		}
+		int num = 0;
+		for (int n = from >>> XYPlotDataArchive.SEGMENT_SHIFT; n <= to >>> XYPlotDataArchive.SEGMENT_SHIFT; ++n) {
+			int index = Math.max(from, n << XYPlotDataArchive.SEGMENT_SHIFT);
+			XYPlotDataArchive a;
+			XYPlotDataArchive.Segment segment;
+			accessLock.lock();
+			try {
+				a = archive;
+				if (a == null || (generation >= 0 && generation != archiveGeneration) || index >= a.size()
+						|| num >= a.maxCached()) {
+					return;
+				}
+				segment = a.missing(index);
+			} finally {
+				accessLock.unlock();
+			}
+			if (segment != null) {
+				XYPlotDataArchive.Values v = null;
+				IOException error = null;
+				try {
+					v = a.read(segment);
+				} catch (IOException e) {
+					error = e;
+				}
+				accessLock.lock();
+				try {
+					a.loaded(segment, v, error);
+				} finally {
+					accessLock.unlock();
+				}
+				num++;
+			}
+		}
+	}
+
+	/**
+	 * Read the archive segment containing the last value with a x value less or
+	 * equal to a given value, see {@link #loadArchive(long, int, int)}.
+	 */
+	void loadArchive(double xvalue) {
+		if (archive == null) {
+			return;
+		}
+		int index;
+		accessLock.lock();
+		try {
+			if (archive == null || (values.size() > 0 && xvalue >= values.x(0))) {
+				return;
+			}
+			index = archive.floorBlockIndex(xvalue);
+		} finally {
+			accessLock.unlock();
+		}
+		loadArchive(-1, index, index);
+	}
+
+	/**
+	 * Get the number of values in the archive. The caller must hold the lock.
+	 */
+	private int archived() {
+		return archive != null ? archive.size() : 0;
+	}
+
+	/**
+	 * Check if values dropped from the ring buffer go to the archive. The caller
+	 * must hold the lock.
+	 */
+	private boolean archiving() {
+		return archive != null && archive.isWritable();
+	}
+
+	/**
+	 * Set the legend text for this data handler.
+	 * 
+	 * @param text The legend text
+	 * 
+	 */
+	public void setLegendText(String text) {
+		boolean changed = true;
+		if (axisText != null) {
+			changed = !axisText.equals(text);
+		}
+		axisText = new String(text);
+		if (changed) {
+			styleVersion.incrementAndGet();
+			if (owner != null) {
+				owner.setOutdated();
+			}
+		}
+	}
+
+	/**
+	 * Show or hide the curve of this data handler. The legend box stays. A hidden
+	 * handler is not brought up to date while painting, e.g. a derived handler
+	 * (see {@link XYPlotDataDerived}) computes its values only when it is shown
+	 * again.
+	 * 
+	 * @param visible True to draw the curve
+	 */
+	public void setVisible(boolean visible) {
+		if (this.visible != visible) {
+			this.visible = visible;
+			styleVersion.incrementAndGet();
+			if (owner != null) {
+				owner.setOutdated();
+			}
+		}
+	}
+
+	/**
+	 * Check if the curve of this data handler is drawn.
+	 */
+	public boolean isVisible() {
+		return visible;
+	}
+
+	/**
+	 * Get the legend text for this data handler.
+	 * 
+	 */
+	public String getLegendText() {
+		String result = "-";
+		if (axisText != null) {
+			result = axisText;
+		}
+		return result;
+	}
+
+	/**
+	 * Set the unit string for this data handler e.g. km or miles.
+	 * 
+	 * @param text The unit text.
+	 */
+	public void setUnit(String text) {
+		boolean changed = true;
+		if (unitText != null) {
+			changed = !unitText.equals(text);
+		}
+		unitText = new String(text);
+		if (changed) {
+			styleVersion.incrementAndGet();
+			if (owner != null) {
+				owner.setOutdated();
+			}
+		}
+	}
+
+	/**
+	 * Get the unit string of the data set
+	 * 
+	 * @return Unit string
+	 */
+	public String getUnit() {
+		String result = "-";
+		if (unitText != null) {
+			result = unitText;
+		}
+		return result;
+	}
+
+	/**
+	 * Get the actual number of data points in this data handler.
+	 * 
+	 */
+	public int length() {
+		return archived() + values.size();
+	}
+
+	/**
+	 * Get the maximum number od points this data handler can store in its ring
+	 * buffer.
+	 * 
+	 */
+	public int getMaxNumber() {
+		return maxNum;
+	}
+
+	/**
+	 * Change the maximum number of values in the ring buffer. When shrinking, the
+	 * oldest values exceeding the new size are dropped at once, the same way as
+	 * values dropped from a full buffer.
+	 * <p>
+	 * The default storage ({@link Storage#HEAP}) allocates its memory in chunks
+	 * when values are added, so a large maximum does not take memory in advance,
+	 * and a new maximum only rearranges the chunks without copying the values.
+	 * The other storages have a fixed size, for them the values are copied into
+	 * a new buffer. The block indices are rebuilt in all cases.
+	 * 
+	 * @param maxNum New maximum number of values
+	 */
+	public void setMaxNumber(int maxNum) {
+		if (group != null) {
+			throw new IllegalStateException("The size of a data group channel can not be changed");
+		}
+		accessLock.lock();
+		try {
+			drain();
+			maxNum = Math.max(maxNum, 0);
+			if (maxNum == values.capacity()) {
+				return;
+			}
+			if (values.size() > maxNum) {
+				dropOldest(values.size() - maxNum);
+			}
+			if (!values.resize(maxNum)) {
+				// The sequence numbers start again, so the views have to keep
+				// their values
+				detachViews();
+				valuesGeneration++;
+				XYPlotDataRing ring = createRing(maxNum,
+						values instanceof XYPlotDataDirectRing ? Storage.OFF_HEAP : Storage.COMPRESSED);
+				for (int i = 0; i < values.size(); ++i) {
+					ring.add(values.x(i), values.y(i));
+					if (values.border(i)) {
+						ring.setBorder(i);
+					}
+				}
+				values.release();
+				values = ring;
+			}
+			this.maxNum = maxNum;
+			index = new XYPlotDataIndex(values);
+			// Created again by the next statistics query
+			statistics = null;
+			lod = new XYPlotDataLod(values);
+			if (extrema != null) {
+				extrema.rebuild();
+			}
+			index.rebuild();
+			lod.rebuild();
+			dataVersion.incrementAndGet();
+			scaleVersion.incrementAndGet();
+		} finally {
+			accessLock.unlock();
+		}
+		writeArchive();
+		notifyOwner();
+	}
+
+	/**
+	 * True in case y-axis autoscaling is on.
+	 * 
+	 */
+	public boolean isAutoScale() {
+		return autoScale;
+	}
+
+	/**
+	 * Set autoscaling.
+	 * 
+	 * @param autoScale True/false
+	 */
+	public void setAutoScale(boolean autoScale) {
+		if (autoScale != this.autoScale) {
+			this.autoScale = autoScale;
+			scaleVersion.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Set manual minimum, maximum values for y axis *
+	 * 
+	 * @param min Minimum y value
+	 * @param max Maximum y value
+	 */
+	public void setManualScale(double min, double max) {
+		boolean changed = (min != fixedYMinValue || max != fixedYMaxValue);
+		hasFixedYMinValue = true;
+		hasFixedYMaxValue = true;
+		fixedYMinValue = min;
+		fixedYMaxValue = max;
+		setAutoScale(false);
+		if (changed) {
+			scaleVersion.incrementAndGet();
+			if (owner != null) {
+				owner.setOutdated();
+			}
+		}
+	}
+
+	/**
+	 * Make sure that this minimum value is always visible on the y axis *
+	 * 
+	 * @param value Any value
+	 */
+	public void setManualScaleMin(double value) {
+		boolean changed = value != fixedYMinValue;
+		hasFixedYMinValue = true;
+		hasFixedYMaxValue = false;
+		fixedYMinValue = value;
+		if (changed) {
+			scaleVersion.incrementAndGet();
+			if (owner != null) {
+				owner.setOutdated();
+			}
+		}
+	}
+
+	/**
+	 * Make sure that this value is always visible on the y axis.
+	 * 
+	 */
+	public void clearManualScale() {
+		hasFixedYMinValue = false;
+		hasFixedYMaxValue = false;
+		scaleVersion.incrementAndGet();
+		if (owner != null) {
+			owner.setOutdated();
+		}
+	}
+
+	/**
+	 * Set number of visible points
+	 * 
+	 * @param visiblePointNum
+	 */
+	void setVisiblePointNum(int visiblePointNum) {
+		this.visiblePointNum = visiblePointNum;
+	}
+
+	/**
+	 * Get number of visible points
+	 * 
+	 * @return
+	 */
+	int getVisiblePointNum() {
 		return visiblePointNum;
 	}
 
 	/**
-	 * @param lastDrawPoint the lastDrawPoint to set
+	 * @param lastDrawPoint the lastDrawPoint to set
+	 */
+	void setLastDrawPointNum(int lastDrawPoint) {
+		if (lastDrawPoint >= 0 && lastDrawPoint < length()) {
+			lastDrawPointNum = lastDrawPoint;
+		}
+	}
+
+	/**
+	 * @return the lastDrawPoint
+	 */
+	int getLastDrawPointNum() {
+		int result = lastDrawPointNum;
+		lastDrawPointNum = lastIndex;
+		lastIndex = length();
+		return result;
+	}
+
+	/**
+	 * Get a reference to the nested object containing the scaling data
+	 * 
+	 * @return Pointer to scale object
+	 */
+	ScaleData getScaleData() {
+		return scaleData;
+	}
+
+	/**
+	 * Get the number of digits behind the decimal point.
+	 */
+	public int getNumberOfDecimalPlaces() {
+		return scaleData.nk;
+	}
+
+	/**
+	 * Get the position (index) of the cursor within the data set
+	 * 
+	 * @return Cursor position
+	 */
+	public int getCursorPos() {
+		return cursorPos;
+	}
+
+	/**
+	 * Set the position of the cursor (index)
+	 * 
+	 * @param cursorPos New cursor position
+	 * @return true if position has changed
+	 */
+	public boolean setCursorPos(int cursorPos) {
+		boolean result = false;
+		if (cursorPos < 0)
+			cursorPos = 0;
+		if (cursorPos >= length())
+			cursorPos = length() - 1;
+		result = (this.cursorPos != cursorPos);
+		this.cursorPos = cursorPos;
+		return result;
+	}
+
+	/**
+	 * Hide cursor
+	 * 
+	 */
+	public void hideCursor() {
+		cursorPos = -1;
+	}
+
+	/**
+	 * Get the position and size of the area where the description of the data set
+	 * is located within the global legend area.
+	 * 
+	 * @return Rectangle containing the legend area
+	 */
+	public IXYGraphLib.Rect getLegendRect() {
+		return legendRect;
+	}
+
+	/**
+	 * Set the rectangle where the legend of the data set is displayed in the global
+	 * legend area of the plot
+	 * 
+	 * @param r Rectangle containing the legend
+	 */
+	public void setLegendRect(IXYGraphLib.Rect r) {
+		legendRect = r;
+	}
+
+	/**
+	 * Get the maximal value used on the x-axis.
+	 */
+	public double getXMax() {
+		double result = 0;
+		accessLock.lock();
+		try {
+			int index = length() - 1;
+			if (index >= 0) {
+				result = valueX(index);
+			}
+		} finally {
+			accessLock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Get the minimal value used on the x-axis.
+	 */
+	public double getXMin() {
+		double result = 0;
+		accessLock.lock();
+		try {
+			if (length() > 0) {
+				result = valueX(0);
+			}
+		} finally {
+			accessLock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Get the maximal value used on the y-axis.
+	 */
+	public double getYMax() {
+		accessLock.lock();
+		double result = scaleData.isSwitch ? Math.max(labels.size() - 1, 0) : totalMax();
+		if (hasFixedYMaxValue && result < fixedYMaxValue) {
+			result = fixedYMaxValue;
+		}
+		accessLock.unlock();
+		return result;
+	}
+
+	/**
+	 * Get the minimal value used on the y-axis.
+	 */
+	public double getYMin() {
+		accessLock.lock();
+		double result = scaleData.isSwitch ? 0 : totalMin();
+		if (hasFixedYMinValue && result > fixedYMinValue) {
+			result = fixedYMinValue;
+		}
+		accessLock.unlock();
+		return result;
+	}
+
+	/**
+	 * Get the overall maximum of the y values. Without the extrema deques it is
+	 * taken from the block index. The caller must hold the lock.
+	 */
+	private double valueMax() {
+		if (extrema != null) {
+			return extrema.max();
+		}
+		return valueRange() ? rangeValue[1] : 0;
+	}
+
+	/**
+	 * Get the overall minimum of the y values. Without the extrema deques it is
+	 * taken from the block index. The caller must hold the lock.
+	 */
+	private double valueMin() {
+		if (extrema != null) {
+			return extrema.min();
+		}
+		return valueRange() ? rangeValue[0] : 0;
+	}
+
+	private boolean valueRange() {
+		if (values.size() == 0) {
+			return false;
+		}
+		rangeValue[0] = Double.POSITIVE_INFINITY;
+		rangeValue[1] = Double.NEGATIVE_INFINITY;
+		index.range(0, values.size() - 1, rangeValue);
+		return true;
+	}
+
+	/**
+	 * Get the overall maximum of the y values including the archive. The caller
+	 * must hold the lock.
+	 */
+	private double totalMax() {
+		double result = valueMax();
+		if (archived() > 0) {
+			result = values.size() > 0 ? Math.max(result, archive.max()) : archive.max();
+		}
+		return result;
+	}
+
+	/**
+	 * Get the overall minimum of the y values including the archive. The caller
+	 * must hold the lock.
+	 */
+	private double totalMin() {
+		double result = valueMin();
+		if (archived() > 0) {
+			result = values.size() > 0 ? Math.min(result, archive.min()) : archive.min();
+		}
+		return result;
+	}
+
+	/**
+	 * Get the version of the values. The version is increased with each change
+	 * of the values, e.g. by adding values, setting a pause or clearing the data.
+	 * Values waiting in the ingestion queue are not counted before they are
+	 * drained. A consumer keeps the version it has seen last to find out if the
+	 * values have changed since.
+	 * 
+	 * @return Version of the values
+	 */
+	public long getDataVersion() {
+		return dataVersion.get();
+	}
+
+	/**
+	 * Get the version of the presentation. The version is increased if the
+	 * legend text, the unit or the color is changed.
+	 * 
+	 * @return Version of the presentation
+	 */
+	public long getStyleVersion() {
+		return styleVersion.get();
+	}
+
+	/**
+	 * Get the version of the scaling. The version is increased if the manual
+	 * scaling or the autoscale flag is changed, or if values already drawn have
+	 * been changed or removed (see {@link #changeValues(double[])} and
+	 * {@link #clear()}).
+	 * 
+	 * @return Version of the scaling
+	 */
+	public long getScaleVersion() {
+		return scaleVersion.get();
+	}
+
+	/**
+	 * Locate the closest data index from a given x value
+	 * 
+	 * @return Array index or -1 for index not found
+	 */
+	int locateIndexFromXValue(double xvalue) {
+		return findIndexNearest(xvalue);
+	}
+
+	/**
+	 * Find the index of the value with the x value closest to a given x value.
+	 * The search is done in O(log n) as the x values are increasing.
+	 * 
+	 * @param xvalue X value to search for
+	 * @return Index of the closest value or -1 if there are no values
+	 */
+	public int findIndexNearest(double xvalue) {
+		int result = -1;
+		loadArchive(xvalue);
+		accessLock.lock();
+		try {
+			int floor = floorIndex(xvalue);
+			int ceiling = floor + 1;
+			if (ceiling >= length()) {
+				result = floor;
+			} else if (floor < 0) {
+				result = ceiling;
+			} else if (xvalue - valueX(floor) < valueX(ceiling) - xvalue) {
+				result = floor;
+			} else {
+				result = ceiling;
+			}
+		} finally {
+			accessLock.unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Find the index of the last value with a x value less or equal to a given x
+	 * value. The search is done in O(log n) as the x values are increasing.
+	 * 
+	 * @param xvalue X value to search for
+	 * @return Index of the value or -1 if all x values are greater
+	 */
+	public int findIndexFloor(double xvalue) {
+		loadArchive(xvalue);
+		accessLock.lock();
+		try {
+			return floorIndex(xvalue);
+		} finally {
+			accessLock.unlock();
+		}
+	}
+
+	/**
+	 * Find the index of the first value with a x value greater or equal to a given
+	 * x value. The search is done in O(log n) as the x values are increasing.
+	 * 
+	 * @param xvalue X value to search for
+	 * @return Index of the value or -1 if all x values are less
+	 */
+	public int findIndexCeiling(double xvalue) {
+		loadArchive(xvalue);
+		accessLock.lock();
+		try {
+			int result = floorIndex(xvalue);
+			if (result < 0 || valueX(result) < xvalue) {
+				result++;
+			}
+			return result < length() ? result : -1;
+		} finally {
+			accessLock.unlock();
+		}
+	}
+
+	/**
+	 * Binary search for the last index with a x value less or equal to the given
+	 * value. The caller must hold the lock.
+	 * 
+	 * @param xvalue X value to search for
+	 * @return Index or -1 if all x values are greater
+	 */
+	private int floorIndex(double xvalue) {
+		int a = archived();
+		if (a > 0 && (values.size() == 0 || xvalue < values.x(0))) {
+			return archive.floorIndex(xvalue);
+		}
+		if (group == null) {
+			return a + ringFloorIndex(xvalue);
+		}
+		// The channels of a group share the x values, see
+		// XYPlotDataGroup#cachedFloorIndex
+		long generation = group.generation();
+		int result = group.cachedFloorIndex(generation, values.first(), values.size(), xvalue);
+		if (result == XYPlotDataGroup.NOT_CACHED) {
+			result = ringFloorIndex(xvalue);
+			group.cacheFloorIndex(generation, values.first(), values.size(), xvalue, result);
+		}
+		return a + result;
+	}
+
+	private int ringFloorIndex(double xvalue) {
+		int low = 0;
+		int high = values.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (values.x(mid) <= xvalue) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * Print some information about scale data
+	 */
+	public void print() {
+		XYPlotData.ScaleData sd = scaleData;
+		System.out.println("Min Scale: " + sd.smin);
+		System.out.println("Max Scale: " + sd.smax);
+		System.out.println("Range: " + (sd.smax - sd.smin));
+		System.out.println("Min Calc: " + sd.vmin);
+		System.out.println("Max Calc: " + sd.vmax);
+		System.out.println("DExpo: " + sd.dexpo);
+		System.out.println("Delta:" + sd.tdelta);
+		System.out.println("TickType:" + sd.ticktype);
+		System.out.println("Ticks:" + sd.ticks + " (" + sd.maxticks + ")");
+		System.out.println("Range:" + sd.ticks * sd.tdelta);
+		System.out.println("VK:   " + sd.vk);
+		System.out.println("NK:   " + sd.nk);
+		System.out.println("--------------------------------------------");
+	}
+
+	/**
+	 * Lock the data of this handler. A thread holding this lock must not try to
+	 * get the lock of a plot (see {@link XYPlot}) or of another data handler.
+	 */
+	void lock() {
+		accessLock.lock();
+	}
+
+	/**
+	 * Release the lock taken by {@link #lock()}.
 	 */
-	void setLastDrawPointNum(int lastDrawPoint) {
-		if (lastDrawPoint >= 0 && lastDrawPoint < values.size()) {
-			lastDrawPointNum = lastDrawPoint;
-		}
+	void unlock() {
+		accessLock.unlock();
 	}
 
 	/**
-	 * @return the lastDrawPoint
+	 * Get the generation of the ring buffer values. It changes whenever values in
+	 * the ring buffer are replaced or the sequence numbers start again, i.e.
+	 * values computed from the ring buffer have to be computed again. The caller
+	 * must hold the lock.
 	 */
-	int getLastDrawPointNum() {
-		int result = lastDrawPointNum;
-		lastDrawPointNum = lastIndex;
-		lastIndex = values.size();
-		return result;
+	long valuesGeneration() {
+		return valuesGeneration;
 	}
 
 	/**
-	 * Get a reference to the nested object containing the scaling data
-	 * 
-	 * @return Pointer to scale object
+	 * Get the sequence number of the oldest value in the ring buffer. The caller
+	 * must hold the lock.
 	 */
-	ScaleData getScaleData() {
-		return scaleData;
+	long firstSequence() {
+		return values.first();
 	}
 
 	/**
-	 * Get the number of digits behind the decimal point.
+	 * Get the number of values in the ring buffer without archived values. The
+	 * caller must hold the lock.
 	 */
-	public int getNumberOfDecimalPlaces() {
-		return scaleData.nk;
+	int ringLength() {
+		return values.size();
 	}
 
 	/**
-	 * Get the position (index) of the cursor within the data set
+	 * Check if there is a break after a value of the ring buffer. The caller must
+	 * hold the lock.
 	 * 
-	 * @return Cursor position
+	 * @param index Index of the value in the ring buffer
 	 */
-	public int getCursorPos() {
-		return cursorPos;
+	boolean ringBorder(int index) {
+		return values.border(index);
 	}
 
 	/**
-	 * Set the position of the cursor (index)
+	 * Copy values of the ring buffer into arrays. The caller must hold the lock.
 	 * 
-	 * @param cursorPos New cursor position
-	 * @return true if position has changed
+	 * @param index  Index of the first value in the ring buffer
+	 * @param num    Number of values
+	 * @param xs     Array receiving the x values
+	 * @param ys     Array receiving the y values
+	 * @param border Array receiving the break flags
 	 */
-	public boolean setCursorPos(int cursorPos) {
-		boolean result = false;
-		if (cursorPos < 0)
-			cursorPos = 0;
-		if (cursorPos >= length())
-			cursorPos = length() - 1;
-		result = (this.cursorPos != cursorPos);
-		this.cursorPos = cursorPos;
-		return result;
+	void readRing(int index, int num, double[] xs, double[] ys, boolean[] border) {
+		for (int i = 0; i < num; ++i) {
+			xs[i] = values.x(index + i);
+			ys[i] = values.y(index + i);
+			border[i] = values.border(index + i);
+		}
 	}
 
 	/**
-	 * Hide cursor
+	 * Append computed values to the ring buffer, see {@link XYPlotDataDerived}.
+	 * The caller must hold the lock.
 	 * 
+	 * @param xs     Array with x values
+	 * @param ys     Array with y values
+	 * @param border Array with a break flag per value
+	 * @param num    Number of values
 	 */
-	public void hideCursor() {
-		cursorPos = -1;
+	void appendComputed(double[] xs, double[] ys, boolean[] border, int num) {
+		int start = 0;
+		for (int i = 0; i < num; ++i) {
+			if (border[i] || i == num - 1) {
+				beforeAdd(xs, ys, null, null, start, i + 1 - start);
+				appendValues(xs, ys, start, i + 1 - start);
+				if (border[i]) {
+					markBorder();
+				}
+				start = i + 1;
+			}
+		}
 	}
 
 	/**
-	 * Get the position and size of the area where the description of the data set
-	 * is located within the global legend area.
+	 * Select the level of detail for drawing a range of values. The caller must
+	 * hold the lock.
 	 * 
-	 * @return Rectangle containing the legend area
+	 * @param start  First index of the range
+	 * @param stop   Index after the range
+	 * @param factor Pixels per x unit
+	 * @return Level with buckets of at most one pixel width or -1 if all values
+	 *         have to be drawn
 	 */
-	public IXYGraphLib.Rect getLegendRect() {
-		return legendRect;
+	int selectLodLevel(int start, int stop, double factor) {
+		int a = archived();
+		// The buckets hold the minimum and maximum label ids, which are not the
+		// minimum and maximum of the label positions shown
+		if (!labels.isEmpty()) {
+			return -1;
+		}
+		if (start < a && Math.min(stop, a) - start >= stop - a) {
+			return archive.selectLevel(start, Math.min(stop, a), factor);
+		}
+		return stop > a ? lod.selectLevel(Math.max(start - a, 0), stop - a, factor) : -1;
 	}
 
 	/**
-	 * Set the rectangle where the legend of the data set is displayed in the global
-	 * legend area of the plot
+	 * Get the indices of the values representing a bucket of the level of
+	 * detail pyramid. The caller must hold the lock.
 	 * 
-	 * @param r Rectangle containing the legend
+	 * @param level  Level returned by {@link #selectLodLevel(int, int, double)}
+	 * @param index  Index of the first value of the bucket
+	 * @param stop   Index after the range to draw
+	 * @param result Array of at least four elements receiving the indices
+	 * @return Number of indices or 0 if the value on index does not start a
+	 *         complete bucket
 	 */
-	public void setLegendRect(IXYGraphLib.Rect r) {
-		legendRect = r;
+	int getLodVertices(int level, int index, int stop, int[] result) {
+		int a = archived();
+		if (index < a) {
+			return archive.vertices(level, index, Math.min(stop, a), result);
+		}
+		if (level >= lod.levels()) {
+			return 0;
+		}
+		int n = lod.vertices(level, index - a, stop - a, result);
+		for (int i = 0; i < n; ++i) {
+			result[i] += a;
+		}
+		return n;
 	}
 
 	/**
-	 * Get the maximal value used on the x-axis.
+	 * Create a read view of the current values. The view has to be closed after
+	 * use, see {@link XYPlotDataView}.
+	 * 
+	 * @return New view
 	 */
-	public double getXMax() {
-		double result = 0;
+	public XYPlotDataView getView() {
 		accessLock.lock();
 		try {
-			int index = values.size() - 1;
-			if (index >= 0) {
-				result = values.get(index).x;
-			}
+			XYPlotDataView view = new XYPlotDataView(this, length(), archived(), values.first(), archiveGeneration,
+					group != null ? group.generation() : 0, labelRank);
+			views.add(view);
+			return view;
 		} finally {
 			accessLock.unlock();
 		}
-		return result;
 	}
 
 	/**
-	 * Get the minimal value used on the x-axis.
+	 * Stop keeping values for a view.
 	 */
-	public double getXMin() {
-		double result = 0;
+	void releaseView(XYPlotDataView view) {
 		accessLock.lock();
 		try {
-			if (values.size() > 0) {
-				result = values.get(0).x;
-			}
+			views.remove(view);
 		} finally {
 			accessLock.unlock();
 		}
-		return result;
 	}
 
 	/**
-	 * Get the maximal value used on the y-axis.
+	 * Keep the oldest values of the ring buffer for the views before they are
+	 * dropped. The caller must hold the lock.
+	 * 
+	 * @param num Number of values to be dropped
 	 */
-	public double getYMax() {
-		accessLock.lock();
-		double result = yMinMax.max;
-		if (hasFixedYMaxValue && yMinMax.max < fixedYMaxValue) {
-			result = fixedYMaxValue;
+	private void keepForViews(int num) {
+		for (int v = 0; v < views.size(); ++v) {
+			XYPlotDataView view = views.get(v);
+			// Offset of the oldest value in the ring part of the view
+			long offset = values.first() - view.ringFirst;
+			int from = (int) Math.max(view.kept() - offset, 0);
+			int to = (int) Math.min(view.ringSize() - offset, num);
+			for (int i = from; i < to; ++i) {
+				view.keep(values.x(i), values.y(i), values.border(i));
+			}
 		}
-		accessLock.unlock();
-		return result;
 	}
 
 	/**
-	 * Get the minimal value used on the y-axis.
+	 * Keep all values of the ring buffer for the views before the values are
+	 * cleared or changed. The caller must hold the lock.
 	 */
-	public double getYMin() {
-		accessLock.lock();
-		double result = yMinMax.min;
-		if (hasFixedYMinValue && yMinMax.min > fixedYMinValue) {
-			result = fixedYMinValue;
+	private void detachViews() {
+		keepForViews(values.size());
+		for (int v = 0; v < views.size(); ++v) {
+			views.get(v).detach();
 		}
-		accessLock.unlock();
-		return result;
 	}
 
 	/**
-	 * Return true if new data have been added since the last call of this method
+	 * Get the difference between the index of a value in a view and its index in
+	 * the data handler. This is valid for the values of the ring buffer part of
+	 * the view which are not kept by the view. The caller must hold the lock.
+	 */
+	private int viewShift(XYPlotDataView view) {
+		return (int) (view.archived - archived() + values.first() - view.ringFirst);
+	}
+
+	/**
+	 * Read values into the block of a view. Reading stops before an archived
+	 * value which is not in memory, unless it is the first value and force is
+	 * set. The caller must hold the lock.
 	 * 
-	 * @return
+	 * @param view  View
+	 * @param index Index of the first value in the view
+	 * @param num   Number of values
+	 * @param force Read the first value even if its archive segment has to be
+	 *              read from disk
+	 * @return Number of values read
 	 */
-	boolean hasNewValues() {
-		boolean result = false;
-		if (newValues > 0) {
-			newValues = 0;
-			result = true;
+	int readView(XYPlotDataView view, int index, int num, boolean force) {
+		int shift = viewShift(view);
+		for (int pos = 0; pos < num; ++pos) {
+			int i = index + pos;
+			if (!force && i < view.archived && archive != null && archiveGeneration == view.archiveGeneration
+					&& !archive.inMemory(i)) {
+				return pos;
+			}
+			readViewValue(view, i, pos, shift);
+			force = false;
 		}
-		return result;
+		return num;
 	}
 
 	/**
-	 * Returns true is legend or scaling has been changed sine last call of this
-	 * method
+	 * Read a value of a view into a position of its block or value cache. The
+	 * caller must hold the lock.
 	 * 
-	 * @return
+	 * @param view  View
+	 * @param i     Index of the value in the view
+	 * @param pos   Position in the block or value cache
+	 * @param shift Result of {@link #viewShift(XYPlotDataView)}
+	 */
+	private void readViewValue(XYPlotDataView view, int i, int pos, int shift) {
+		int r = i - view.archived;
+		if (r >= view.kept()) {
+			int j = i - shift - archived();
+			view.setBlockValue(pos, values.x(j), values.y(j), values.border(j));
+		} else if (r >= 0) {
+			view.readKept(r, pos);
+		} else if (archive != null && archiveGeneration == view.archiveGeneration) {
+			view.setBlockValue(pos, archive.x(i), archive.y(i), archive.border(i));
+		} else {
+			view.setBlockValue(pos, Double.NaN, Double.NaN, false);
+		}
+	}
+
+	/**
+	 * Get the x value of a view without reading it into the block. The caller
+	 * must hold the lock.
+	 */
+	private double viewX(XYPlotDataView view, int i, int shift) {
+		int r = i - view.archived;
+		if (r >= view.kept()) {
+			return values.x(i - shift - archived());
+		} else if (r >= 0) {
+			return view.keptX(r);
+		} else if (archive != null && archiveGeneration == view.archiveGeneration) {
+			return archive.x(i);
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Binary search for the last index of a view with a x value less or equal
+	 * to the given value. The search is done at once under the lock instead of
+	 * loading a block for each probe. The values at the result and the next
+	 * index are put into the value cache of the view, as they are read next by
+	 * {@link XYPlotDataView#findIndexCeiling(double)} and
+	 * {@link XYPlotDataView#findIndexNearest(double)}. The caller must hold the
+	 * lock.
+	 * 
+	 * @param view   View
+	 * @param xvalue X value to search for
+	 * @return Index or -1 if all x values are greater
 	 */
-	boolean hasOtherChanges() {
-		boolean result = otherChanges;
-		otherChanges = false;
+	int viewFloorIndex(XYPlotDataView view, double xvalue) {
+		int shift = viewShift(view);
+		int a = view.archived;
+		int length = view.length();
+		int result;
+		if (a > 0 && archive != null && archiveGeneration == view.archiveGeneration
+				&& (a == length || xvalue < viewX(view, a, shift))) {
+			// The archive finds the segment and block from the values in memory
+			result = Math.min(archive.floorIndex(xvalue), a - 1);
+		} else if (group == null) {
+			result = viewRingFloorIndex(view, xvalue, shift);
+		} else {
+			// The views of the channels of a group taken on the same rows have
+			// the same x values, see XYPlotDataGroup#cachedFloorIndex
+			result = group.cachedFloorIndex(view.groupGeneration, view.ringFirst, length - a, xvalue);
+			if (result == XYPlotDataGroup.NOT_CACHED) {
+				result = viewRingFloorIndex(view, xvalue, shift);
+				group.cacheFloorIndex(view.groupGeneration, view.ringFirst, length - a, xvalue, result - a);
+			} else {
+				result += a;
+			}
+		}
+		int n = 0;
+		for (int i = Math.max(result, 0); i <= result + 1 && i < length; ++i) {
+			readViewValue(view, i, view.cachePos(n++, i), shift);
+		}
 		return result;
 	}
 
 	/**
-	 * Locate the closest data index from a given x value
+	 * Binary search for the last index of the ring buffer part of a view with a
+	 * x value less or equal to the given value. The caller must hold the lock.
 	 * 
-	 * @return Array index or -1 for index not found
+	 * @return Index in the view, view.archived - 1 if all x values are greater
 	 */
-	int locateIndexFromXValue(double xvalue) {
-		int xpos = -1;
-		accessLock.lock();
-		try {
-			int maxIndex = values.size() - 1;
-			if (maxIndex >= 0) {
-				DataValue dvmax = values.get(maxIndex);
-				DataValue dv0 = values.get(0);
-				double last_diff = dvmax.x - dv0.x;
-				if (xvalue > dvmax.x) {
-					xpos = maxIndex;
-				} else if (xvalue < dv0.x) {
-					xpos = 0;
-				} else {
-					// find closest point in data array
-					for (int i = 0; i <= maxIndex; ++i) {
-						double diff = Math.abs(values.get(i).x - xvalue);
-						if (diff > last_diff) {
-							break;
-						}
-						xpos = i;
-						last_diff = diff;
-					}
-				}
+	private int viewRingFloorIndex(XYPlotDataView view, double xvalue, int shift) {
+		int low = view.archived;
+		int high = view.length() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (viewX(view, mid, shift) <= xvalue) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
 			}
-		} finally {
-			accessLock.unlock();
 		}
-		return xpos;
+		return high;
 	}
 
 	/**
-	 * Print some information about scale data
+	 * Put the values on the indices of a level of detail bucket into the value
+	 * cache of a view, as they are read right after the indices. The caller must
+	 * hold the lock.
 	 */
-	public void print() {
-		XYPlotData.ScaleData sd = scaleData;
-		System.out.println("Min Scale: " + sd.smin);
-		System.out.println("Max Scale: " + sd.smax);
-		System.out.println("Range: " + (sd.smax - sd.smin));
-		System.out.println("Min Calc: " + sd.vmin);
-		System.out.println("Max Calc: " + sd.vmax);
-		System.out.println("DExpo: " + sd.dexpo);
-		System.out.println("Delta:" + sd.tdelta);
-		System.out.println("TickType:" + sd.ticktype);
-		System.out.println("Ticks:" + sd.ticks + " (" + sd.maxticks + ")");
-		System.out.println("Range:" + sd.ticks * sd.tdelta);
-		System.out.println("VK:   " + sd.vk);
-		System.out.println("NK:   " + sd.nk);
-		System.out.println("--------------------------------------------");
+	private void cacheViewValues(XYPlotDataView view, int[] indices, int n) {
+		int shift = viewShift(view);
+		for (int k = 0; k < n; ++k) {
+			readViewValue(view, indices[k], view.cachePos(k, indices[k]), shift);
+		}
 	}
 
-	static void lock() {
-		accessLock.lock();
+	/**
+	 * Read the archive segment of a value of a view from disk, see
+	 * {@link #loadArchive(long, int, int)}.
+	 */
+	void loadArchive(XYPlotDataView view, int index) {
+		if (index < view.archived) {
+			loadArchive(view.archiveGeneration, index, index);
+		}
 	}
 
-	static void unlock() {
-		accessLock.unlock();
+	/**
+	 * Select the level of detail for drawing a range of values of a view. The
+	 * caller must hold the lock.
+	 * 
+	 * @return Level or -1 if all values have to be drawn
+	 */
+	int viewLodLevel(XYPlotDataView view, int start, int stop, double factor) {
+		if (!labels.isEmpty()) {
+			return -1;
+		}
+		if (start < view.archived && archive != null && archiveGeneration == view.archiveGeneration
+				&& Math.min(stop, view.archived) - start >= stop - view.archived) {
+			return archive.selectLevel(start, Math.min(stop, view.archived), factor);
+		}
+		start = Math.max(start, view.archived + view.kept());
+		if (view.isDetached() || start >= stop) {
+			return -1;
+		}
+		int shift = viewShift(view);
+		return selectLodLevel(start - shift, stop - shift, factor);
+	}
+
+	/**
+	 * Get the indices of the values representing a bucket of the level of
+	 * detail pyramid for a view. The values on the indices are put into the
+	 * value cache of the view. The caller must hold the lock.
+	 * 
+	 * @return Number of indices or 0 if the value on index does not start a
+	 *         complete bucket
+	 */
+	int viewLodVertices(XYPlotDataView view, int level, int index, int stop, int[] result) {
+		int n;
+		if (index < view.archived) {
+			if (archive == null || archiveGeneration != view.archiveGeneration) {
+				return 0;
+			}
+			n = archive.vertices(level, index, Math.min(stop, view.archived), result);
+		} else {
+			if (view.isDetached() || index < view.archived + view.kept()) {
+				return 0;
+			}
+			int shift = viewShift(view);
+			n = getLodVertices(level, index - shift, stop - shift, result);
+			for (int i = 0; i < n; ++i) {
+				result[i] += shift;
+			}
+		}
+		cacheViewValues(view, result, n);
+		return n;
 	}
 
 	public MinMax getYRange(int minIndex, int maxIndex) {
 		MinMax result = null;
 		if (minIndex >= 0 && maxIndex >= 0) {
+			// Only the values at both ends of the range are scanned
+			loadArchive(-1, minIndex, minIndex);
+			loadArchive(-1, maxIndex, maxIndex);
 			accessLock.lock();
 			try {
 				result = findMinMax(minIndex, maxIndex);
@@ -748,6 +2652,123 @@ public class XYPlotData {
 		return result;
 	}
 
+	/**
+	 * Get count, mean, standard deviation, RMS, minimum and maximum of the y
+	 * values in the ring buffer. The values are maintained while values are
+	 * added, so the call does not scan the values. Percentiles are not included,
+	 * see {@link #getStatistics(int, int)}. Archived values (see
+	 * {@link #setArchive(File, long)}) are not included either.
+	 * <p>
+	 * Values which are never queried should not slow down adding values, so the
+	 * statistics are only maintained from the first call of this method,
+	 * {@link #getStatistics(int, int)} or {@link #getMoments(int, int)} on,
+	 * e.g. when the legend statistics are shown. The first call scans all
+	 * values of the ring buffer.
+	 * 
+	 * @return Statistics or null for switch values
+	 */
+	public Statistics getStatistics() {
+		accessLock.lock();
+		try {
+			if (!labels.isEmpty()) {
+				return null;
+			}
+			Statistics result = new Statistics();
+			statistics().total(result);
+			if (values.size() > 0) {
+				result.min = valueMin();
+				result.max = valueMax();
+			}
+			return result;
+		} finally {
+			accessLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the statistics of the y values in a range of indices, including
+	 * approximated percentiles. The values of the ring buffer are taken from the
+	 * block index, so only the values at both ends of the range are scanned.
+	 * Archived values in the range are read from the archive. For the statistics
+	 * of the visible values, the range can be found by
+	 * {@link #findIndexCeiling(double)} and {@link #findIndexFloor(double)}.
+	 * The samples for the percentiles are collected and sorted by this call, if
+	 * no percentiles are needed {@link #getMoments(int, int)} is cheaper. The
+	 * first statistics query scans all values, see {@link #getStatistics()}.
+	 * 
+	 * @param minIndex First index of the range
+	 * @param maxIndex Last index of the range (inclusive)
+	 * @return Statistics or null for switch values
+	 */
+	public Statistics getStatistics(int minIndex, int maxIndex) {
+		Statistics result = getStatistics(minIndex, maxIndex, true);
+		if (result != null) {
+			result.sort();
+		}
+		return result;
+	}
+
+	/**
+	 * Get count, mean, standard deviation, RMS, minimum and maximum of the y
+	 * values in a range of indices, without percentiles. For the values of the
+	 * ring buffer only the segment tree of the block moments is queried and the
+	 * values at both ends of the range are scanned, no quantile samples are
+	 * collected. Archived values in the range are read from the archive. The
+	 * first statistics query scans all values, see {@link #getStatistics()}.
+	 * 
+	 * @param minIndex First index of the range
+	 * @param maxIndex Last index of the range (inclusive)
+	 * @return Statistics or null for switch values
+	 */
+	public Statistics getMoments(int minIndex, int maxIndex) {
+		return getStatistics(minIndex, maxIndex, false);
+	}
+
+	/**
+	 * Get the statistics of the ring buffer, creating them from the values in
+	 * the buffer by the first call. The caller must hold the lock.
+	 */
+	private XYPlotDataStatistics statistics() {
+		if (statistics == null) {
+			statistics = new XYPlotDataStatistics(values);
+			statistics.rebuild();
+		}
+		return statistics;
+	}
+
+	private Statistics getStatistics(int minIndex, int maxIndex, boolean percentiles) {
+		loadArchive(-1, Math.max(minIndex, 0), maxIndex);
+		accessLock.lock();
+		try {
+			if (!labels.isEmpty()) {
+				return null;
+			}
+			Statistics result = new Statistics();
+			minIndex = Math.max(minIndex, 0);
+			maxIndex = Math.min(maxIndex, length() - 1);
+			if (minIndex > maxIndex) {
+				return result;
+			}
+			int a = archived();
+			for (int i = minIndex; i <= Math.min(maxIndex, a - 1); ++i) {
+				double y = archive.y(i);
+				result.add(y);
+				if (percentiles) {
+					result.addSample(y, 1);
+				}
+			}
+			if (maxIndex >= a) {
+				statistics().range(Math.max(minIndex, a) - a, maxIndex - a, result, percentiles);
+			}
+			MinMax minMax = findMinMax(minIndex, maxIndex);
+			result.min = minMax.min;
+			result.max = minMax.max;
+			return result;
+		} finally {
+			accessLock.unlock();
+		}
+	}
+
 	/**
 	 * Set the color for this data handler.
 	 * 
@@ -755,6 +2776,7 @@ public class XYPlotData {
 	 */
 	public void setColor(RGB color) {
 		this.color = color;
+		styleVersion.incrementAndGet();
 	}
 
 	/**
@@ -767,7 +2789,9 @@ public class XYPlotData {
 	}
 
 	/**
-	 * Function to find minimum and maximum y values.
+	 * Function to find minimum and maximum y values. The values are taken from
+	 * the block index, so only the values in the partially covered blocks at
+	 * both ends of the range are scanned. The caller must hold the lock.
 	 * 
 	 * @param minIndex
 	 * @param maxIndex
@@ -779,39 +2803,40 @@ public class XYPlotData {
 			minIndex = maxIndex;
 			maxIndex = tmp;
 		}
-		if (maxIndex < 0 || minIndex >= values.size()) {
+		if (maxIndex < 0 || minIndex >= length()) {
 			return result;
 		}
 
 		if (minIndex < 0) {
 			minIndex = 0;
 		}
-		if (maxIndex >= values.size()) {
-			maxIndex = values.size() - 1;
+		if (maxIndex >= length()) {
+			maxIndex = length() - 1;
 		}
-		for (int i = minIndex; i >= 0 && i <= maxIndex; ++i) {
-			DataValue dv = values.get(i);
-			double vy = dv.y;
-			if (vy > result.max) {
-				result.max = vy;
-				result.maxIndex = i;
-			}
-			if (vy < result.min) {
-				result.min = vy;
-				result.minIndex = i;
-			}
+		if (!labels.isEmpty()) {
+			// The index holds label ids, the range covers all labels instead
+			result.min = 0;
+			result.max = labels.size() - 1;
+			return result;
+		}
+		rangeValue[0] = result.min;
+		rangeValue[1] = result.max;
+		int a = archived();
+		if (minIndex < a) {
+			archive.range(minIndex, Math.min(maxIndex, a - 1), rangeValue);
+		}
+		if (maxIndex >= a) {
+			index.range(Math.max(minIndex, a) - a, maxIndex - a, rangeValue);
 		}
+		result.min = rangeValue[0];
+		result.max = rangeValue[1];
 		return result;
 	}
 
 	private void init() {
 		cursorPos = -1;
 		visiblePointNum = 0;
-		yMinMax = new MinMax();
-		yMinMax.min = 0;
-		yMinMax.max = 0;
 		lastIndex = 0;
-		newValues = 0;
 		lastDrawPointNum = 0;
 		scaleData.smin = 0;
 		scaleData.smax = 0;
@@ -847,6 +2872,193 @@ public class XYPlotData {
 									// (text)
 	}
 
+	/**
+	 * Statistics of the y values of a data handler (see
+	 * {@link XYPlotData#getStatistics()}). Objects of this class are copies, they
+	 * do not change when values are added.
+	 */
+	public static class Statistics {
+		private long count;
+		private double mean;
+		private double m2;
+		private double min = Double.NaN;
+		private double max = Double.NaN;
+		// Samples for the percentiles, grouped by the number of values each
+		// sample stands for
+		private double[][] sampleValue = new double[0][];
+		private double[] sampleWeight = new double[0];
+		private int[] sampleNum = new int[0];
+		// Samples in ascending order with the rank of their centers, built once
+		// by sort()
+		private double[] sortedValue;
+		private double[] sortedRank;
+		private double totalWeight;
+
+		Statistics() {
+		}
+
+		void add(double y) {
+			count++;
+			double delta = y - mean;
+			mean += delta / count;
+			m2 += delta * (y - mean);
+		}
+
+		void merge(double n, double mean, double m2) {
+			if (n == 0) {
+				return;
+			}
+			double total = count + n;
+			double delta = mean - this.mean;
+			this.m2 += m2 + delta * delta * count * n / total;
+			this.mean += delta * n / total;
+			this.count += (long) n;
+		}
+
+		void addSample(double y, double weight) {
+			int g = 0;
+			while (g < sampleWeight.length && sampleWeight[g] != weight) {
+				g++;
+			}
+			if (g == sampleWeight.length) {
+				sampleValue = Arrays.copyOf(sampleValue, g + 1);
+				sampleWeight = Arrays.copyOf(sampleWeight, g + 1);
+				sampleNum = Arrays.copyOf(sampleNum, g + 1);
+				sampleValue[g] = new double[64];
+				sampleWeight[g] = weight;
+			}
+			if (sampleNum[g] == sampleValue[g].length) {
+				sampleValue[g] = Arrays.copyOf(sampleValue[g], 2 * sampleNum[g]);
+			}
+			sampleValue[g][sampleNum[g]++] = y;
+			sortedValue = null;
+		}
+
+		/**
+		 * Sort the samples for the percentiles. Each group of samples is sorted
+		 * by {@link Arrays#sort(double[], int, int)}, then the groups are merged.
+		 * This is done once before the statistics are handed out, afterwards the
+		 * object is only read.
+		 */
+		void sort() {
+			if (sortedValue != null) {
+				return;
+			}
+			int n = 0;
+			for (int g = 0; g < sampleNum.length; ++g) {
+				Arrays.sort(sampleValue[g], 0, sampleNum[g]);
+				n += sampleNum[g];
+			}
+			double[] value = new double[n];
+			double[] rank = new double[n];
+			int[] pos = new int[sampleNum.length];
+			double sum = 0;
+			for (int i = 0; i < n; ++i) {
+				int best = -1;
+				for (int g = 0; g < sampleNum.length; ++g) {
+					if (pos[g] < sampleNum[g]
+							&& (best < 0 || sampleValue[g][pos[g]] < sampleValue[best][pos[best]])) {
+						best = g;
+					}
+				}
+				// Each sample is placed in the middle of the values it stands for
+				value[i] = sampleValue[best][pos[best]++];
+				rank[i] = sum + sampleWeight[best] / 2;
+				sum += sampleWeight[best];
+			}
+			sortedValue = value;
+			sortedRank = rank;
+			totalWeight = sum;
+		}
+
+		/**
+		 * Get the number of values.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Get the arithmetic mean, NaN if there are no values.
+		 */
+		public double getMean() {
+			return count > 0 ? mean : Double.NaN;
+		}
+
+		/**
+		 * Get the (population) variance, NaN if there are no values.
+		 */
+		public double getVariance() {
+			return count > 0 ? Math.max(m2, 0) / count : Double.NaN;
+		}
+
+		/**
+		 * Get the (population) standard deviation, NaN if there are no values.
+		 */
+		public double getStdDev() {
+			return Math.sqrt(getVariance());
+		}
+
+		/**
+		 * Get the root mean square, NaN if there are no values.
+		 */
+		public double getRms() {
+			return count > 0 ? Math.sqrt(mean * mean + getVariance()) : Double.NaN;
+		}
+
+		/**
+		 * Get the minimum, NaN if there are no values.
+		 */
+		public double getMin() {
+			return count > 0 ? min : Double.NaN;
+		}
+
+		/**
+		 * Get the maximum, NaN if there are no values.
+		 */
+		public double getMax() {
+			return count > 0 ? max : Double.NaN;
+		}
+
+		/**
+		 * Get an approximated percentile. Only available for the statistics of a
+		 * range (see {@link XYPlotData#getStatistics(int, int)}). The samples
+		 * have been sorted when the statistics were created, so this is a binary
+		 * search and the method may be called from several threads.
+		 * 
+		 * @param percent Percentage of values less or equal to the result (0 to
+		 *                100, 50 for the median)
+		 * @return Percentile or NaN if not available
+		 */
+		public double getPercentile(double percent) {
+			double[] value = sortedValue;
+			if (value == null || value.length == 0 || count == 0) {
+				return Double.NaN;
+			}
+			// Between the samples the value is interpolated
+			double rank = Math.min(Math.max(percent, 0), 100) / 100 * totalWeight;
+			int n = value.length;
+			int i = Arrays.binarySearch(sortedRank, rank);
+			if (i < 0) {
+				i = -i - 1;
+			}
+			if (i == 0) {
+				return interpolate(0, min, sortedRank[0], value[0], rank);
+			}
+			if (i == n) {
+				return interpolate(sortedRank[n - 1], value[n - 1], totalWeight, max, rank);
+			}
+			return interpolate(sortedRank[i - 1], value[i - 1], sortedRank[i], value[i], rank);
+		}
+
+		private static double interpolate(double r0, double v0, double r1, double v1, double rank) {
+			if (r1 <= r0) {
+				return v1;
+			}
+			return v0 + (v1 - v0) * (rank - r0) / (r1 - r0);
+		}
+	}
+
 	/**
 	 * Inner class to hold minimum and maximum values.
 	 */
@@ -854,15 +3066,11 @@ public class XYPlotData {
 		MinMax() {
 			max = MIN_DOUBLE_VALUE;
 			min = MAX_DOUBLE_VALUE;
-			minIndex = 0;
-			maxIndex = 0;
 		}
 
 		MinMax(double min, double max) {
 			this.min = min;
 			this.max = max;
-			this.minIndex = 0;
-			this.maxIndex = 0;
 		}
 
 		public double getMin() {
@@ -875,8 +3083,6 @@ public class XYPlotData {
 
 		private double min;
 		private double max;
-		private int minIndex;
-		private int maxIndex;
 	}
 
 }
@@ -0,0 +1,840 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Disk archive for values dropped from the ring buffer of a data handler. The
+ * values are collected in an open segment in memory. A full segment is sealed
+ * and written to a file in the archive directory afterwards. Written segments
+ * are read back on access and kept in a least recently used cache limited by a
+ * memory budget.
+ * <p>
+ * The owning {@link XYPlotData} object does the file IO without holding its
+ * lock: sealed segments stay in memory until they have been written (see
+ * {@link #nextWrite()}), and segments are read into the cache (see
+ * {@link #missing(int)}) before their values are accessed. Only segments which
+ * have been dropped from the cache again before the access are read while the
+ * lock is held.
+ * <p>
+ * For each segment the first and last x value are kept in memory, and for each
+ * block of {@link #BLOCK_SIZE} values the first, minimum, maximum and last
+ * value. On top of the blocks, a level of detail pyramid like
+ * {@link XYPlotDataLod} keeps the positions of the minimum and maximum of
+ * larger buckets. So searching x values and y ranges reads at most the
+ * segments at both ends of a range, and archived ranges with many values per
+ * pixel are drawn without reading the segments.
+ * <p>
+ * Errors reading or writing the files are kept (see {@link #getError()}). A
+ * segment which cannot be written is dropped together with the values archived
+ * after it, and the archive does not take further values. Values which cannot
+ * be read are returned as NaN.
+ * <p>
+ * The class is not thread safe, synchronization is done by the owning
+ * {@link XYPlotData} object.
+ */
+class XYPlotDataArchive {
+	static final int SEGMENT_SHIFT = 16;
+	static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	static final int BLOCK_SHIFT = 8;
+	static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+	// Levels of XYPlotDataLod kept for the segments, the lowest one are the
+	// blocks
+	static final int MIN_LEVEL = (BLOCK_SHIFT - XYPlotDataLod.BASE_SHIFT) / XYPlotDataLod.LEVEL_SHIFT;
+	static final int MAX_LEVEL = (SEGMENT_SHIFT - XYPlotDataLod.BASE_SHIFT) / XYPlotDataLod.LEVEL_SHIFT;
+	private static final int BLOCKS = SEGMENT_SIZE / BLOCK_SIZE;
+	private static final int BORDER_WORDS = SEGMENT_SIZE / 64;
+	private static final long SEGMENT_BYTES = SEGMENT_SIZE * 16L + BORDER_WORDS * 8L;
+	// Vertices kept per block
+	private static final int FIRST = 0;
+	private static final int MIN = 1;
+	private static final int MAX = 2;
+	private static final int LAST = 3;
+
+	private final File directory;
+	private final int maxCached;
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private final Map<Segment, Values> cache;
+	private Segment open;
+	// Number of segments which have been passed to the writer
+	private int written;
+	private int size;
+	private double min;
+	private double max;
+	private IOException error;
+	private boolean failed;
+
+	/**
+	 * Create an archive.
+	 * 
+	 * @param directory    Directory for the segment files
+	 * @param memoryBudget Memory in bytes for segments read from disk. At least
+	 *                     one segment is kept.
+	 */
+	XYPlotDataArchive(File directory, long memoryBudget) {
+		this.directory = directory;
+		this.maxCached = (int) Math.max(1, Math.min(memoryBudget / SEGMENT_BYTES, Integer.MAX_VALUE));
+		this.cache = new LinkedHashMap<Segment, Values>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Segment, Values> eldest) {
+				return size() > maxCached;
+			}
+		};
+		clear();
+	}
+
+	/**
+	 * Remove all values, delete the segment files and reset the error. Files of
+	 * segments being written at the moment are deleted by
+	 * {@link #written(Segment, File, IOException)}.
+	 */
+	void clear() {
+		for (Segment segment : segments) {
+			delete(segment.file);
+		}
+		segments.clear();
+		cache.clear();
+		open = null;
+		written = 0;
+		size = 0;
+		error = null;
+		failed = false;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Get the number of archived values.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Get the number of segments kept in the cache.
+	 */
+	int maxCached() {
+		return maxCached;
+	}
+
+	/**
+	 * Get the first read or write error.
+	 * 
+	 * @return Error or null
+	 */
+	IOException getError() {
+		return error;
+	}
+
+	/**
+	 * Check if the archive takes further values. This is false after a write
+	 * error.
+	 */
+	boolean isWritable() {
+		return !failed;
+	}
+
+	/**
+	 * Append a value. The x values must not decrease.
+	 * 
+	 * @param xv     X value
+	 * @param yv     Y value
+	 * @param border True if there is a break after the value
+	 * @return True if the open segment has been sealed and has to be written,
+	 *         see {@link #nextWrite()}
+	 */
+	boolean add(double xv, double yv, boolean border) {
+		if (open == null) {
+			open = new Segment(segments.size(), xv);
+			segments.add(open);
+		}
+		Segment segment = open;
+		Values v = segment.values;
+		int pos = segment.count++;
+		v.x[pos] = xv;
+		v.y[pos] = yv;
+		if (border) {
+			v.border[pos >>> 6] |= (1L << pos);
+		}
+		segment.lastX = xv;
+		addVertex(segment, pos, xv, yv, border);
+		segment.min = Math.min(segment.min, yv);
+		segment.max = Math.max(segment.max, yv);
+		min = Math.min(min, yv);
+		max = Math.max(max, yv);
+		size++;
+		if (segment.count == SEGMENT_SIZE) {
+			open = null;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Get the x value on an index.
+	 */
+	double x(int index) {
+		Segment segment = segments.get(index >>> SEGMENT_SHIFT);
+		int pos = index & (SEGMENT_SIZE - 1);
+		int vertex = vertex(segment, pos);
+		if (vertex >= 0) {
+			return segment.vertexX[vertex];
+		}
+		Values v = values(segment);
+		return v != null ? v.x[pos] : Double.NaN;
+	}
+
+	/**
+	 * Get the y value on an index.
+	 */
+	double y(int index) {
+		Segment segment = segments.get(index >>> SEGMENT_SHIFT);
+		int pos = index & (SEGMENT_SIZE - 1);
+		int vertex = vertex(segment, pos);
+		if (vertex >= 0) {
+			return segment.vertexY[vertex];
+		}
+		Values v = values(segment);
+		return v != null ? v.y[pos] : Double.NaN;
+	}
+
+	/**
+	 * Check for a break after the value on an index.
+	 */
+	boolean border(int index) {
+		Segment segment = segments.get(index >>> SEGMENT_SHIFT);
+		int pos = index & (SEGMENT_SIZE - 1);
+		if (vertex(segment, pos) >= 0) {
+			return false;
+		}
+		Values v = values(segment);
+		return v != null && (v.border[pos >>> 6] & (1L << pos)) != 0;
+	}
+
+	/**
+	 * Check if the value on an index can be accessed without reading a segment
+	 * from disk.
+	 */
+	boolean inMemory(int index) {
+		Segment segment = segments.get(index >>> SEGMENT_SHIFT);
+		return segment.values != null || segment.unreadable || cache.containsKey(segment)
+				|| vertex(segment, index & (SEGMENT_SIZE - 1)) >= 0;
+	}
+
+	/**
+	 * Get the minimum of all archived y values.
+	 */
+	double min() {
+		return min;
+	}
+
+	/**
+	 * Get the maximum of all archived y values.
+	 */
+	double max() {
+		return max;
+	}
+
+	/**
+	 * Find the last index with a x value less or equal to the given value.
+	 * 
+	 * @param xvalue X value to search for
+	 * @return Index or -1 if all x values are greater
+	 */
+	int floorIndex(double xvalue) {
+		int n = floorSegment(xvalue);
+		if (n < 0) {
+			return -1;
+		}
+		Segment segment = segments.get(n);
+		int base = n << SEGMENT_SHIFT;
+		if (segment.lastX <= xvalue) {
+			return base + segment.count - 1;
+		}
+		int low = floorBlock(segment, xvalue) << BLOCK_SHIFT;
+		int top = Math.min(low + BLOCK_SIZE, segment.count) - 1;
+		while (low <= top) {
+			int mid = (low + top) >>> 1;
+			if (x(base + mid) <= xvalue) {
+				low = mid + 1;
+			} else {
+				top = mid - 1;
+			}
+		}
+		return base + top;
+	}
+
+	/**
+	 * Get the index of the first value of the block which contains the result of
+	 * {@link #floorIndex(double)}. This needs no values read from disk.
+	 * 
+	 * @param xvalue X value to search for
+	 * @return Index or -1 if all x values are greater
+	 */
+	int floorBlockIndex(double xvalue) {
+		int n = floorSegment(xvalue);
+		if (n < 0) {
+			return -1;
+		}
+		return (n << SEGMENT_SHIFT) + (floorBlock(segments.get(n), xvalue) << BLOCK_SHIFT);
+	}
+
+	/**
+	 * Get minimum and maximum of the y values in a range of indices.
+	 * 
+	 * @param from   First index
+	 * @param to     Last index (inclusive)
+	 * @param result Array receiving the minimum [0] and maximum [1]
+	 */
+	void range(int from, int to, double[] result) {
+		while (from <= to) {
+			Segment segment = segments.get(from >>> SEGMENT_SHIFT);
+			int pos = from & (SEGMENT_SIZE - 1);
+			if (pos == 0 && segment.count == SEGMENT_SIZE && from + SEGMENT_SIZE - 1 <= to) {
+				result[0] = Math.min(result[0], segment.min);
+				result[1] = Math.max(result[1], segment.max);
+				from += SEGMENT_SIZE;
+				continue;
+			}
+			int block = pos >>> BLOCK_SHIFT;
+			int blockEnd = from + (BLOCK_SIZE - (pos & (BLOCK_SIZE - 1))) - 1;
+			if ((pos & (BLOCK_SIZE - 1)) == 0 && blockEnd <= to
+					&& pos + BLOCK_SIZE <= segment.count) {
+				result[0] = Math.min(result[0], segment.vertexY[4 * block + MIN]);
+				result[1] = Math.max(result[1], segment.vertexY[4 * block + MAX]);
+				from = blockEnd + 1;
+			} else {
+				double yv = y(from);
+				result[0] = Math.min(result[0], yv);
+				result[1] = Math.max(result[1], yv);
+				from++;
+			}
+		}
+	}
+
+	/**
+	 * Select the level of detail for drawing a range of values, see
+	 * {@link XYPlotDataLod#selectLevel(int, int, double)}. The width of the
+	 * buckets is estimated from the first values of the blocks at both ends of
+	 * the range. As the archive keeps no smaller buckets, {@link #MIN_LEVEL} is
+	 * returned instead of a lower level.
+	 * 
+	 * @param start  First index of the range
+	 * @param stop   Index after the range
+	 * @param factor Pixels per x unit
+	 * @return Level or -1 if the values should be drawn one by one
+	 */
+	int selectLevel(int start, int stop, double factor) {
+		int from = start & ~(BLOCK_SIZE - 1);
+		int to = (stop - 1) & ~(BLOCK_SIZE - 1);
+		int result = -1;
+		if (to > from) {
+			double pixels = (firstX(to) - firstX(from)) * factor / (to - from);
+			for (int level = 0; level <= MAX_LEVEL && XYPlotDataLod.bucketSize(level) * pixels <= 1.0; ++level) {
+				result = level;
+			}
+		}
+		return result >= 0 ? Math.max(result, MIN_LEVEL) : -1;
+	}
+
+	/**
+	 * Get the indices of the values to draw for a bucket, see
+	 * {@link XYPlotDataLod#vertices(int, int, int, int[])}. Only the levels
+	 * from {@link #MIN_LEVEL} to {@link #MAX_LEVEL} are kept. The values on the
+	 * indices are kept in memory.
+	 * 
+	 * @param level  Level
+	 * @param index  Index of the first value of the bucket
+	 * @param stop   Index after the range to draw
+	 * @param result Array of at least four elements receiving the indices
+	 * @return Number of indices or 0 if index is not the start of a complete
+	 *         bucket without break inside the range
+	 */
+	int vertices(int level, int index, int stop, int[] result) {
+		if (level < MIN_LEVEL || level > MAX_LEVEL) {
+			return 0;
+		}
+		int shift = shift(level);
+		int bucketSize = 1 << shift;
+		if ((index & (bucketSize - 1)) != 0 || index + bucketSize > Math.min(stop, size)) {
+			return 0;
+		}
+		Segment segment = segments.get(index >>> SEGMENT_SHIFT);
+		int l = level - MIN_LEVEL;
+		int bucket = (index & (SEGMENT_SIZE - 1)) >>> shift;
+		if (segment.border[l][bucket]) {
+			return 0;
+		}
+		int base = index & ~(SEGMENT_SIZE - 1);
+		int a = base + Math.min(segment.minPos[l][bucket], segment.maxPos[l][bucket]);
+		int b = base + Math.max(segment.minPos[l][bucket], segment.maxPos[l][bucket]);
+		int n = 0;
+		result[n++] = index;
+		if (a != index) {
+			result[n++] = a;
+		}
+		if (b != a) {
+			result[n++] = b;
+		}
+		if (b != index + bucketSize - 1) {
+			result[n++] = index + bucketSize - 1;
+		}
+		return n;
+	}
+
+	/**
+	 * Get the next sealed segment to be written and mark it as passed to the
+	 * writer. The segments are passed in the order they were sealed.
+	 * 
+	 * @return Segment for {@link #write(Segment)} or null if there is none
+	 */
+	Segment nextWrite() {
+		if (written < segments.size() && segments.get(written) != open) {
+			return segments.get(written++);
+		}
+		return null;
+	}
+
+	/**
+	 * Write the values of a sealed segment to a new file. This may be called
+	 * without holding the lock of the owner, the values of a sealed segment do
+	 * not change.
+	 * 
+	 * @param segment Segment returned by {@link #nextWrite()}
+	 * @return File with the values
+	 * @throws IOException if the file cannot be written
+	 */
+	File write(Segment segment) throws IOException {
+		Values v = segment.values;
+		File result = File.createTempFile("xyplot", ".seg", directory);
+		try {
+			RandomAccessFile file = new RandomAccessFile(result, "rw");
+			try {
+				FileChannel channel = file.getChannel();
+				ByteBuffer buffer = ByteBuffer.allocate((int) SEGMENT_BYTES).order(ByteOrder.nativeOrder());
+				buffer.asDoubleBuffer().put(v.x).put(v.y);
+				buffer.position(SEGMENT_SIZE * 16);
+				buffer.asLongBuffer().put(v.border);
+				buffer.position(0);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			delete(result);
+			throw e;
+		}
+		return result;
+	}
+
+	/**
+	 * Take the result of {@link #write(Segment)}. A written segment moves into
+	 * the cache. A segment which could not be written is dropped together with
+	 * all segments after it, and no further values are taken.
+	 * 
+	 * @param segment Segment
+	 * @param file    File with the values or null
+	 * @param e       Write error or null
+	 * @return Number of values dropped from the end of the archive
+	 */
+	int written(Segment segment, File file, IOException e) {
+		if (!current(segment)) {
+			// Cleared in the meantime
+			delete(file);
+			return 0;
+		}
+		if (e == null) {
+			segment.file = file;
+			cache.put(segment, segment.values);
+			segment.values = null;
+			return 0;
+		}
+		if (error == null) {
+			error = e;
+		}
+		failed = true;
+		int result = 0;
+		while (segments.size() > segment.index) {
+			Segment dropped = segments.remove(segments.size() - 1);
+			cache.remove(dropped);
+			delete(dropped.file);
+			result += dropped.count;
+		}
+		open = null;
+		written = segments.size();
+		size -= result;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+		for (Segment s : segments) {
+			min = Math.min(min, s.min);
+			max = Math.max(max, s.max);
+		}
+		return result;
+	}
+
+	/**
+	 * Get the segment of an index if its values have to be read from disk.
+	 * 
+	 * @param index Index of a value
+	 * @return Segment for {@link #read(Segment)} or null if the values are in
+	 *         memory
+	 */
+	Segment missing(int index) {
+		Segment segment = segments.get(index >>> SEGMENT_SHIFT);
+		if (segment.values != null || segment.unreadable || cache.containsKey(segment)) {
+			return null;
+		}
+		return segment;
+	}
+
+	/**
+	 * Read the values of a written segment. This may be called without holding
+	 * the lock of the owner, the file of a written segment does not change.
+	 * 
+	 * @param segment Segment returned by {@link #missing(int)}
+	 * @return Values
+	 * @throws IOException if the file cannot be read
+	 */
+	Values read(Segment segment) throws IOException {
+		if (segment.file == null) {
+			throw new IOException("Segment has not been written");
+		}
+		Values result = new Values();
+		RandomAccessFile file = new RandomAccessFile(segment.file, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate((int) SEGMENT_BYTES).order(ByteOrder.nativeOrder());
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new IOException("Segment file truncated: " + segment.file);
+				}
+			}
+			buffer.position(0);
+			buffer.asDoubleBuffer().get(result.x).get(result.y);
+			buffer.position(SEGMENT_SIZE * 16);
+			buffer.asLongBuffer().get(result.border);
+		} finally {
+			file.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Take the result of {@link #read(Segment)} into the cache.
+	 * 
+	 * @param segment Segment
+	 * @param v       Values or null
+	 * @param e       Read error or null
+	 */
+	void loaded(Segment segment, Values v, IOException e) {
+		if (!current(segment)) {
+			return;
+		}
+		if (e != null) {
+			failedRead(segment, e);
+		} else {
+			cache.put(segment, v);
+		}
+	}
+
+	/**
+	 * Get the values of a segment. Segments which are not in memory are read
+	 * here, i.e. while the owner holds the lock.
+	 */
+	private Values values(Segment segment) {
+		if (segment.values != null) {
+			return segment.values;
+		}
+		Values result = cache.get(segment);
+		if (result == null && !segment.unreadable) {
+			try {
+				result = read(segment);
+				cache.put(segment, result);
+			} catch (IOException e) {
+				failedRead(segment, e);
+			}
+		}
+		return result;
+	}
+
+	private void failedRead(Segment segment, IOException e) {
+		segment.unreadable = true;
+		if (error == null) {
+			error = e;
+		}
+	}
+
+	/**
+	 * Check that a segment still belongs to the archive.
+	 */
+	private boolean current(Segment segment) {
+		return segment.index < segments.size() && segments.get(segment.index) == segment;
+	}
+
+	/**
+	 * Update the block and the buckets of the pyramid for an appended value.
+	 */
+	private void addVertex(Segment segment, int pos, double xv, double yv, boolean border) {
+		int block = pos >>> BLOCK_SHIFT;
+		int v = 4 * block;
+		boolean start = (pos & (BLOCK_SIZE - 1)) == 0;
+		if (start) {
+			segment.vertexX[v + FIRST] = xv;
+			segment.vertexY[v + FIRST] = yv;
+		}
+		if (start || yv < segment.vertexY[v + MIN]) {
+			segment.vertexX[v + MIN] = xv;
+			segment.vertexY[v + MIN] = yv;
+			segment.minPos[0][block] = (char) pos;
+		}
+		if (start || yv > segment.vertexY[v + MAX]) {
+			segment.vertexX[v + MAX] = xv;
+			segment.vertexY[v + MAX] = yv;
+			segment.maxPos[0][block] = (char) pos;
+		}
+		segment.vertexX[v + LAST] = xv;
+		segment.vertexY[v + LAST] = yv;
+		if (border) {
+			segment.border[0][block] = true;
+		}
+		if ((pos & (BLOCK_SIZE - 1)) == BLOCK_SIZE - 1) {
+			merge(segment, MIN_LEVEL + 1, pos + 1 - BLOCK_SIZE);
+		}
+	}
+
+	/**
+	 * Merge a complete bucket of the level below into the bucket of a level and
+	 * pass the bucket to the next level if it is complete.
+	 * 
+	 * @param segment    Segment
+	 * @param level      Level
+	 * @param childStart Position of the first value of the complete bucket
+	 */
+	private void merge(Segment segment, int level, int childStart) {
+		if (level > MAX_LEVEL) {
+			return;
+		}
+		int l = level - MIN_LEVEL;
+		int shift = shift(level);
+		int bucketSize = 1 << shift;
+		int bucket = childStart >>> shift;
+		int child = childStart >>> shift(level - 1);
+		char minPos = segment.minPos[l - 1][child];
+		char maxPos = segment.maxPos[l - 1][child];
+		if ((childStart & (bucketSize - 1)) == 0) {
+			segment.minPos[l][bucket] = minPos;
+			segment.maxPos[l][bucket] = maxPos;
+			segment.border[l][bucket] = segment.border[l - 1][child];
+		} else {
+			// The minimum and maximum of each bucket are vertices of a block
+			if (vertexY(segment, minPos, MIN) < vertexY(segment, segment.minPos[l][bucket], MIN)) {
+				segment.minPos[l][bucket] = minPos;
+			}
+			if (vertexY(segment, maxPos, MAX) > vertexY(segment, segment.maxPos[l][bucket], MAX)) {
+				segment.maxPos[l][bucket] = maxPos;
+			}
+			segment.border[l][bucket] |= segment.border[l - 1][child];
+		}
+		int end = childStart + (1 << shift(level - 1));
+		if ((end & (bucketSize - 1)) == 0) {
+			merge(segment, level + 1, end - bucketSize);
+		}
+	}
+
+	private static double vertexY(Segment segment, int pos, int vertex) {
+		return segment.vertexY[4 * (pos >>> BLOCK_SHIFT) + vertex];
+	}
+
+	/**
+	 * Get the vertex of a block which holds the value on a position. Vertices
+	 * are only used for complete blocks without break.
+	 * 
+	 * @return Vertex or -1 if the value is no vertex
+	 */
+	private static int vertex(Segment segment, int pos) {
+		int block = pos >>> BLOCK_SHIFT;
+		if (((block + 1) << BLOCK_SHIFT) > segment.count || segment.border[0][block]) {
+			return -1;
+		}
+		int v = 4 * block;
+		int offset = pos & (BLOCK_SIZE - 1);
+		if (offset == 0) {
+			return v + FIRST;
+		} else if (pos == segment.minPos[0][block]) {
+			return v + MIN;
+		} else if (pos == segment.maxPos[0][block]) {
+			return v + MAX;
+		} else if (offset == BLOCK_SIZE - 1) {
+			return v + LAST;
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the x value of the first value of the block containing an index.
+	 */
+	private double firstX(int index) {
+		Segment segment = segments.get(index >>> SEGMENT_SHIFT);
+		return segment.vertexX[4 * ((index & (SEGMENT_SIZE - 1)) >>> BLOCK_SHIFT) + FIRST];
+	}
+
+	/**
+	 * Get the last segment with a first x value less or equal to a given value.
+	 */
+	private int floorSegment(double xvalue) {
+		int low = 0;
+		int high = segments.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (segments.get(mid).firstX <= xvalue) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * Get the last block of a segment with a first x value less or equal to a
+	 * given value, at least the first block.
+	 */
+	private static int floorBlock(Segment segment, double xvalue) {
+		int low = 1;
+		int high = (segment.count - 1) >>> BLOCK_SHIFT;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (segment.vertexX[4 * mid + FIRST] <= xvalue) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+	private static int shift(int level) {
+		return XYPlotDataLod.BASE_SHIFT + level * XYPlotDataLod.LEVEL_SHIFT;
+	}
+
+	private static void delete(File file) {
+		if (file != null && !file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Summary of a segment kept in memory.
+	 */
+	static class Segment {
+		private final int index;
+		private final double firstX;
+		// First, minimum, maximum and last value of each block
+		private final double[] vertexX = new double[4 * BLOCKS];
+		private final double[] vertexY = new double[4 * BLOCKS];
+		// Positions of minimum and maximum and breaks per level, starting with
+		// the blocks
+		private final char[][] minPos = new char[MAX_LEVEL - MIN_LEVEL + 1][];
+		private final char[][] maxPos = new char[MAX_LEVEL - MIN_LEVEL + 1][];
+		private final boolean[][] border = new boolean[MAX_LEVEL - MIN_LEVEL + 1][];
+		private double lastX;
+		private double min = Double.POSITIVE_INFINITY;
+		private double max = Double.NEGATIVE_INFINITY;
+		private int count;
+		// Values of the open segment and of a sealed segment until it is written
+		private Values values = new Values();
+		private File file;
+		private boolean unreadable;
+
+		Segment(int index, double firstX) {
+			this.index = index;
+			this.firstX = firstX;
+			this.lastX = firstX;
+			for (int l = 0; l < minPos.length; ++l) {
+				int buckets = SEGMENT_SIZE >>> shift(MIN_LEVEL + l);
+				minPos[l] = new char[buckets];
+				maxPos[l] = new char[buckets];
+				border[l] = new boolean[buckets];
+			}
+		}
+	}
+
+	/**
+	 * Values of a segment.
+	 */
+	static class Values {
+		private final double[] x = new double[SEGMENT_SIZE];
+		private final double[] y = new double[SEGMENT_SIZE];
+		private final long[] border = new long[BORDER_WORDS];
+	}
+}
@@ -0,0 +1,235 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size arrays of primitive values split into chunks, which are allocated
+ * when the first value other than the empty value is written into them. The
+ * summaries of a ring buffer ({@link XYPlotDataIndex},
+ * {@link XYPlotDataStatistics}, {@link XYPlotDataLod}) have a slot per block of
+ * the capacity, but the slots are filled in the order of the sequence numbers
+ * of the values. Like the chunks of {@link XYPlotDataHeapRing}, only the slots
+ * of the values added so far take memory until the buffer is full, and
+ * {@link XYPlotDataDirectRing} keeps its heap usage low for buffers which are
+ * never filled.
+ * <p>
+ * The classes are not thread safe, synchronization is done by the owning
+ * {@link XYPlotData} object.
+ */
+final class XYPlotDataChunks {
+	private static final int MAX_CHUNK_SHIFT = 10;
+
+	private XYPlotDataChunks() {
+	}
+
+	/**
+	 * Get the chunk size for an array size. Small arrays are a single chunk.
+	 */
+	private static int chunkShift(int size) {
+		int result = 0;
+		while (result < MAX_CHUNK_SHIFT && (1 << result) < size) {
+			result++;
+		}
+		return result;
+	}
+
+	private static int chunks(int size, int shift) {
+		return (int) (((long) size + (1 << shift) - 1) >>> shift);
+	}
+
+	/**
+	 * Chunked array of doubles.
+	 */
+	static final class Doubles {
+		private final int shift;
+		private final int mask;
+		private final double empty;
+		private final double[][] chunks;
+
+		/**
+		 * Create an array.
+		 * 
+		 * @param size  Number of elements
+		 * @param empty Value of the elements not written yet
+		 */
+		Doubles(int size, double empty) {
+			this.shift = chunkShift(size);
+			this.mask = (1 << shift) - 1;
+			this.empty = empty;
+			this.chunks = new double[chunks(size, shift)][];
+		}
+
+		double get(int i) {
+			double[] chunk = chunks[i >>> shift];
+			return chunk == null ? empty : chunk[i & mask];
+		}
+
+		void set(int i, double value) {
+			double[] chunk = chunks[i >>> shift];
+			if (chunk == null) {
+				if (value == empty) {
+					return;
+				}
+				chunk = new double[mask + 1];
+				if (empty != 0) {
+					Arrays.fill(chunk, empty);
+				}
+				chunks[i >>> shift] = chunk;
+			}
+			chunk[i & mask] = value;
+		}
+
+		/**
+		 * Set all elements to the empty value and release the chunks.
+		 */
+		void clear() {
+			Arrays.fill(chunks, null);
+		}
+	}
+
+	/**
+	 * Chunked array of floats, the empty value is 0.
+	 */
+	static final class Floats {
+		private final int shift;
+		private final int mask;
+		private final float[][] chunks;
+
+		/**
+		 * Create an array.
+		 * 
+		 * @param size Number of elements
+		 */
+		Floats(int size) {
+			this.shift = chunkShift(size);
+			this.mask = (1 << shift) - 1;
+			this.chunks = new float[chunks(size, shift)][];
+		}
+
+		float get(int i) {
+			float[] chunk = chunks[i >>> shift];
+			return chunk == null ? 0 : chunk[i & mask];
+		}
+
+		void set(int i, float value) {
+			float[] chunk = chunks[i >>> shift];
+			if (chunk == null) {
+				if (value == 0) {
+					return;
+				}
+				chunk = new float[mask + 1];
+				chunks[i >>> shift] = chunk;
+			}
+			chunk[i & mask] = value;
+		}
+
+		/**
+		 * Set all elements to 0 and release the chunks.
+		 */
+		void clear() {
+			Arrays.fill(chunks, null);
+		}
+	}
+
+	/**
+	 * Chunked array of ints, the empty value is 0.
+	 */
+	static final class Ints {
+		private final int shift;
+		private final int mask;
+		private final int[][] chunks;
+
+		/**
+		 * Create an array.
+		 * 
+		 * @param size Number of elements
+		 */
+		Ints(int size) {
+			this.shift = chunkShift(size);
+			this.mask = (1 << shift) - 1;
+			this.chunks = new int[chunks(size, shift)][];
+		}
+
+		int get(int i) {
+			int[] chunk = chunks[i >>> shift];
+			return chunk == null ? 0 : chunk[i & mask];
+		}
+
+		void set(int i, int value) {
+			int[] chunk = chunks[i >>> shift];
+			if (chunk == null) {
+				if (value == 0) {
+					return;
+				}
+				chunk = new int[mask + 1];
+				chunks[i >>> shift] = chunk;
+			}
+			chunk[i & mask] = value;
+		}
+
+		/**
+		 * Set all elements to 0 and release the chunks.
+		 */
+		void clear() {
+			Arrays.fill(chunks, null);
+		}
+	}
+}
@@ -0,0 +1,486 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * Ring buffer holding the values in compressed blocks on the Java heap. The
+ * buffer is divided into blocks of {@link #BLOCK_SIZE} physical positions. Only
+ * the block currently written is kept uncompressed, a block is sealed as soon
+ * as the writing moves on to the next block.
+ * <p>
+ * A sealed block is a bit stream in the style of the Gorilla time series
+ * compression: the x values are stored as delta of delta of their bit
+ * patterns, which needs a single bit for values sampled in regular intervals.
+ * Each y value is stored as XOR with its predecessor, which leaves few
+ * meaningful bits for slowly changing values. Both encodings are lossless.
+ * <p>
+ * For each sealed block the first, last, minimum and maximum value is kept as
+ * summary. These values are returned without decoding the block, so the
+ * vertices of the level of detail buckets can be drawn without touching the
+ * compressed data as long as the buckets are aligned with the blocks. This is
+ * the case if the capacity is a multiple of {@link #BLOCK_SIZE}. The y range of
+ * a block range is answered by the {@link XYPlotDataIndex}, other accesses
+ * decode one block at a time.
+ */
+class XYPlotDataCompressedRing extends XYPlotDataRing {
+	static final int BLOCK_SHIFT = 8;
+	static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+	private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+	// Summary of a sealed block
+	private static final int FIRST_X = 0;
+	private static final int FIRST_Y = 1;
+	private static final int LAST_X = 2;
+	private static final int LAST_Y = 3;
+	private static final int MIN_X = 4;
+	private static final int MIN_Y = 5;
+	private static final int MAX_X = 6;
+	private static final int MAX_Y = 7;
+	private static final int SUMMARY_SIZE = 8;
+
+	// Worst case of 68 bits for x and 77 bits for y per value
+	private static final int MAX_WORDS = (BLOCK_SIZE * 145 + 63) / 64;
+
+	private long[][] blocks;
+	private double[] summary;
+	private int[] extremaOffset;
+	private long[] border;
+	private final double[] openX = new double[BLOCK_SIZE];
+	private final double[] openY = new double[BLOCK_SIZE];
+	private int open = -1;
+	private final double[] cacheX = new double[BLOCK_SIZE];
+	private final double[] cacheY = new double[BLOCK_SIZE];
+	private int cached = -1;
+	private long sealedBytes;
+	private int sealedValues;
+	private final long[] bits = new long[MAX_WORDS];
+	private int bitPos;
+
+	/**
+	 * Create a compressed ring buffer.
+	 * 
+	 * @param capacity Maximum number of values in the buffer
+	 */
+	XYPlotDataCompressedRing(int capacity) {
+		super(capacity);
+		int n = (capacity() + BLOCK_MASK) >>> BLOCK_SHIFT;
+		this.blocks = new long[n][];
+		this.summary = new double[n * SUMMARY_SIZE];
+		this.extremaOffset = new int[2 * n];
+		this.border = new long[borderWords(capacity())];
+	}
+
+	@Override
+	void clear() {
+		super.clear();
+		Arrays.fill(blocks, null);
+		open = -1;
+		cached = -1;
+		sealedBytes = 0;
+		sealedValues = 0;
+	}
+
+	/**
+	 * Get the number of bytes used by the sealed blocks.
+	 */
+	long compressedBytes() {
+		return sealedBytes;
+	}
+
+	@Override
+	double bytesPerValue() {
+		return sealedValues > 0 ? (double) sealedBytes / sealedValues : super.bytesPerValue();
+	}
+
+	@Override
+	double xAt(int pos) {
+		int b = pos >>> BLOCK_SHIFT;
+		int off = pos & BLOCK_MASK;
+		if (b == open) {
+			return openX[off];
+		}
+		int s = summaryValue(b, off);
+		if (s >= 0) {
+			return summary[b * SUMMARY_SIZE + s];
+		}
+		decode(b);
+		return cacheX[off];
+	}
+
+	@Override
+	double yAt(int pos) {
+		int b = pos >>> BLOCK_SHIFT;
+		int off = pos & BLOCK_MASK;
+		if (b == open) {
+			return openY[off];
+		}
+		int s = summaryValue(b, off);
+		if (s >= 0) {
+			return summary[b * SUMMARY_SIZE + s + 1];
+		}
+		decode(b);
+		return cacheY[off];
+	}
+
+	@Override
+	void store(int pos, double xv, double yv) {
+		openBlock(pos >>> BLOCK_SHIFT);
+		openX[pos & BLOCK_MASK] = xv;
+		openY[pos & BLOCK_MASK] = yv;
+	}
+
+	@Override
+	void storeY(int pos, double yv) {
+		openBlock(pos >>> BLOCK_SHIFT);
+		openY[pos & BLOCK_MASK] = yv;
+	}
+
+	@Override
+	void copy(double[] xs, double[] ys, int off, int pos, int len) {
+		for (int i = 0; i < len; ++i) {
+			store(pos + i, xs[off + i], ys[off + i]);
+		}
+	}
+
+	@Override
+	void copy(DoubleBuffer xs, DoubleBuffer ys, int pos, int len) {
+		for (int i = 0; i < len; ++i) {
+			store(pos + i, xs.get(), ys.get());
+		}
+	}
+
+	@Override
+	long borderBits(int word) {
+		return border[word];
+	}
+
+	@Override
+	void setBorderBits(int word, long bits) {
+		border[word] = bits;
+	}
+
+	@Override
+	void free() {
+		blocks = new long[0][];
+		summary = new double[0];
+		extremaOffset = new int[0];
+		border = new long[0];
+		open = -1;
+		cached = -1;
+	}
+
+	/**
+	 * Get the number of physical positions of a block. Only the last block can
+	 * be shorter than {@link #BLOCK_SIZE}.
+	 */
+	private int blockLength(int b) {
+		return Math.min(BLOCK_SIZE, capacity() - (b << BLOCK_SHIFT));
+	}
+
+	/**
+	 * Find the summary entry for a position of a sealed block.
+	 * 
+	 * @return Index of the x value in the summary or -1 if the value is not part
+	 *         of the summary
+	 */
+	private int summaryValue(int b, int off) {
+		if (blocks[b] == null) {
+			return -1;
+		}
+		if (off == 0) {
+			return FIRST_X;
+		}
+		if (off == blockLength(b) - 1) {
+			return LAST_X;
+		}
+		if (off == extremaOffset[2 * b]) {
+			return MIN_X;
+		}
+		if (off == extremaOffset[2 * b + 1]) {
+			return MAX_X;
+		}
+		return -1;
+	}
+
+	/**
+	 * Make a block the uncompressed block for writing. The block written before
+	 * is sealed.
+	 */
+	private void openBlock(int b) {
+		if (b == open) {
+			return;
+		}
+		seal();
+		if (blocks[b] != null) {
+			// Keep the values of the block not yet overwritten
+			decode(b);
+			System.arraycopy(cacheX, 0, openX, 0, BLOCK_SIZE);
+			System.arraycopy(cacheY, 0, openY, 0, BLOCK_SIZE);
+			sealedBytes -= 8L * blocks[b].length;
+			sealedValues -= blockLength(b);
+			blocks[b] = null;
+		}
+		cached = -1;
+		open = b;
+	}
+
+	/**
+	 * Compress the uncompressed block.
+	 */
+	private void seal() {
+		if (open < 0) {
+			return;
+		}
+		int b = open;
+		int len = blockLength(b);
+		Arrays.fill(bits, 0);
+		bitPos = 0;
+		long prevX = 0;
+		long prevDelta = 0;
+		long prevY = 0;
+		int prevLead = -1;
+		int prevTrail = 0;
+		int minOff = 0;
+		int maxOff = 0;
+		for (int i = 0; i < len; ++i) {
+			long xv = Double.doubleToRawLongBits(openX[i]);
+			long yv = Double.doubleToRawLongBits(openY[i]);
+			if (i == 0) {
+				write(xv, 64);
+				write(yv, 64);
+			} else {
+				long delta = xv - prevX;
+				writeDelta(delta - prevDelta);
+				prevDelta = delta;
+				long xor = yv ^ prevY;
+				if (xor == 0) {
+					write(0, 1);
+				} else {
+					int lead = Math.min(Long.numberOfLeadingZeros(xor), 31);
+					int trail = Long.numberOfTrailingZeros(xor);
+					if (prevLead >= 0 && lead >= prevLead && trail >= prevTrail) {
+						write(2, 2);
+						write(xor >>> prevTrail, 64 - prevLead - prevTrail);
+					} else {
+						int meaningful = 64 - lead - trail;
+						write(3, 2);
+						write(lead, 5);
+						write(meaningful & 63, 6);
+						write(xor >>> trail, meaningful);
+						prevLead = lead;
+						prevTrail = trail;
+					}
+				}
+			}
+			prevX = xv;
+			prevY = yv;
+			if (openY[i] < openY[minOff] || Double.isNaN(openY[minOff])) {
+				minOff = i;
+			}
+			if (openY[i] > openY[maxOff] || Double.isNaN(openY[maxOff])) {
+				maxOff = i;
+			}
+		}
+		blocks[b] = Arrays.copyOf(bits, (bitPos + 63) >>> 6);
+		sealedBytes += 8L * blocks[b].length;
+		sealedValues += len;
+		int s = b * SUMMARY_SIZE;
+		summary[s + FIRST_X] = openX[0];
+		summary[s + FIRST_Y] = openY[0];
+		summary[s + LAST_X] = openX[len - 1];
+		summary[s + LAST_Y] = openY[len - 1];
+		summary[s + MIN_X] = openX[minOff];
+		summary[s + MIN_Y] = openY[minOff];
+		summary[s + MAX_X] = openX[maxOff];
+		summary[s + MAX_Y] = openY[maxOff];
+		extremaOffset[2 * b] = minOff;
+		extremaOffset[2 * b + 1] = maxOff;
+		open = -1;
+	}
+
+	/**
+	 * Decode a sealed block into the cache.
+	 */
+	private void decode(int b) {
+		if (b == cached) {
+			return;
+		}
+		long[] data = blocks[b];
+		if (data == null) {
+			Arrays.fill(cacheX, 0.0);
+			Arrays.fill(cacheY, 0.0);
+			cached = b;
+			return;
+		}
+		int len = blockLength(b);
+		bitPos = 0;
+		long xv = 0;
+		long delta = 0;
+		long yv = 0;
+		int lead = 0;
+		int trail = 0;
+		for (int i = 0; i < len; ++i) {
+			if (i == 0) {
+				xv = read(data, 64);
+				yv = read(data, 64);
+			} else {
+				delta += readDelta(data);
+				xv += delta;
+				if (read(data, 1) != 0) {
+					if (read(data, 1) != 0) {
+						lead = (int) read(data, 5);
+						int meaningful = (int) read(data, 6);
+						if (meaningful == 0) {
+							meaningful = 64;
+						}
+						trail = 64 - lead - meaningful;
+					}
+					yv ^= read(data, 64 - lead - trail) << trail;
+				}
+			}
+			cacheX[i] = Double.longBitsToDouble(xv);
+			cacheY[i] = Double.longBitsToDouble(yv);
+		}
+		cached = b;
+	}
+
+	/**
+	 * Write a delta of delta with a variable length prefix.
+	 */
+	private void writeDelta(long dod) {
+		if (dod == 0) {
+			write(0, 1);
+		} else if (dod >= -64 && dod < 64) {
+			write(2, 2);
+			write(dod, 7);
+		} else if (dod >= -256 && dod < 256) {
+			write(6, 3);
+			write(dod, 9);
+		} else if (dod >= -2048 && dod < 2048) {
+			write(14, 4);
+			write(dod, 12);
+		} else {
+			write(15, 4);
+			write(dod, 64);
+		}
+	}
+
+	/**
+	 * Read a delta of delta written by {@link #writeDelta(long)}.
+	 */
+	private long readDelta(long[] data) {
+		int n = 0;
+		while (n < 4 && read(data, 1) != 0) {
+			n++;
+		}
+		switch (n) {
+		case 0:
+			return 0;
+		case 1:
+			return signed(read(data, 7), 7);
+		case 2:
+			return signed(read(data, 9), 9);
+		case 3:
+			return signed(read(data, 12), 12);
+		default:
+			return read(data, 64);
+		}
+	}
+
+	private static long signed(long value, int n) {
+		return (value << (64 - n)) >> (64 - n);
+	}
+
+	/**
+	 * Append the lower n bits (1 to 64) of a value to the bit stream.
+	 */
+	private void write(long value, int n) {
+		if (n < 64) {
+			value &= (1L << n) - 1;
+		}
+		int word = bitPos >>> 6;
+		int free = 64 - (bitPos & 63);
+		if (n <= free) {
+			bits[word] |= value << (free - n);
+		} else {
+			bits[word] |= value >>> (n - free);
+			bits[word + 1] |= value << (64 - n + free);
+		}
+		bitPos += n;
+	}
+
+	/**
+	 * Read n bits (1 to 64) from a bit stream.
+	 */
+	private long read(long[] data, int n) {
+		int word = bitPos >>> 6;
+		int free = 64 - (bitPos & 63);
+		long value;
+		if (n <= free) {
+			value = data[word] >>> (free - n);
+		} else {
+			value = (data[word] << (n - free)) | (data[word + 1] >>> (64 - n + free));
+		}
+		bitPos += n;
+		return n < 64 ? value & ((1L << n) - 1) : value;
+	}
+}
@@ -0,0 +1,586 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.io.File;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Data handler computing its values from one or more source data handlers,
+ * e.g. a moving average or the difference of two channels. The values are
+ * computed incrementally with constant effort per new source value, and only
+ * when they are needed: when a plot showing the handler is painted or when
+ * {@link #update()} is called. Values are not added to a derived handler
+ * directly.
+ * <p>
+ * Several sources are combined row by row, the n-th value of each source forms
+ * a row with the x value of the first source. So the sources should be sampled
+ * on the same x values, e.g. channels of a {@link XYPlotDataGroup}. A break in
+ * any source (see {@link XYPlotData#setPause()}) is a break of the derived
+ * values and restarts filters. Source values dropped from the source buffers
+ * before they have been computed are skipped with a break.
+ * <p>
+ * Results which are not a number are not stored.
+ * 
+ * Example:
+ * 
+ * <pre>
+ * XYPlotData average = XYPlotDataDerived.movingAverage(data, 100000, 50);
+ * plot.setDataHandlers(new XYPlotData[] { data, average });
+ * </pre>
+ */
+public class XYPlotDataDerived extends XYPlotData {
+	private static final int CHUNK_SIZE = 4096;
+
+	private final XYPlotData[] sources;
+	private final Operator operator;
+	// Serializes the computation, taken before the lock of any data handler
+	private final Lock updateLock = new ReentrantLock();
+	private final long[] next;
+	private final long[] generation;
+	private final long[] seenVersion;
+	private final boolean[] seenBorder;
+	private final int[] fetched;
+	private final double[][] sourceX;
+	private final double[][] sourceY;
+	private final boolean[][] sourceBorder;
+	private final double[] rowY;
+	private final double[] resultX;
+	private final double[] resultY;
+	private final boolean[] resultBorder;
+
+	private XYPlotDataDerived(XYPlotData[] sources, int maxNum, Operator operator) {
+		super(null, maxNum);
+		if (sources.length == 0) {
+			throw new IllegalArgumentException("At least one source expected");
+		}
+		this.sources = sources.clone();
+		this.operator = operator;
+		int n = sources.length;
+		this.next = new long[n];
+		this.generation = new long[n];
+		this.seenVersion = new long[n];
+		this.seenBorder = new boolean[n];
+		this.fetched = new int[n];
+		int chunk = Math.max(Math.min(CHUNK_SIZE, sources[0].getMaxNumber()), 1);
+		this.sourceX = new double[n][chunk];
+		this.sourceY = new double[n][chunk];
+		this.sourceBorder = new boolean[n][chunk];
+		this.rowY = new double[n];
+		this.resultX = new double[chunk];
+		this.resultY = new double[chunk];
+		this.resultBorder = new boolean[chunk];
+		for (int i = 0; i < n; ++i) {
+			generation[i] = -1;
+			seenVersion[i] = -1;
+		}
+	}
+
+	/**
+	 * Create a handler with the moving average of a source over a number of
+	 * values.
+	 * 
+	 * @param source Source data handler
+	 * @param maxNum Maximum number of values
+	 * @param window Number of values averaged
+	 * @return New data handler
+	 */
+	public static XYPlotDataDerived movingAverage(XYPlotData source, int maxNum, int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must contain at least one value");
+		}
+		return new XYPlotDataDerived(new XYPlotData[] { source }, maxNum, new MovingAverage(window));
+	}
+
+	/**
+	 * Create a handler with the exponential moving average of a source.
+	 * 
+	 * @param source Source data handler
+	 * @param maxNum Maximum number of values
+	 * @param alpha  Weight of a new value between 0 and 1
+	 * @return New data handler
+	 */
+	public static XYPlotDataDerived exponentialAverage(XYPlotData source, int maxNum, double alpha) {
+		if (!(alpha > 0 && alpha <= 1)) {
+			throw new IllegalArgumentException("Weight must be between 0 and 1");
+		}
+		return new XYPlotDataDerived(new XYPlotData[] { source }, maxNum, new ExponentialAverage(alpha));
+	}
+
+	/**
+	 * Create a handler with the derivative of a source by x. Each value is the
+	 * slope between a source value and the value before.
+	 * 
+	 * @param source Source data handler
+	 * @param maxNum Maximum number of values
+	 * @return New data handler
+	 */
+	public static XYPlotDataDerived derivative(XYPlotData source, int maxNum) {
+		return new XYPlotDataDerived(new XYPlotData[] { source }, maxNum, new Derivative());
+	}
+
+	/**
+	 * Create a handler with the running integral of a source by x (trapezoidal
+	 * rule). The integral starts with 0 at the first value, gaps at breaks are
+	 * not integrated.
+	 * 
+	 * @param source Source data handler
+	 * @param maxNum Maximum number of values
+	 * @return New data handler
+	 */
+	public static XYPlotDataDerived integral(XYPlotData source, int maxNum) {
+		return new XYPlotDataDerived(new XYPlotData[] { source }, maxNum, new Integral());
+	}
+
+	/**
+	 * Create a handler with an arithmetic expression over the values of one or
+	 * more sources, e.g. <code>"(y0 - y1) / 2"</code>. The expression knows the
+	 * operators + - * / ^ (power), parentheses, numbers, the x value
+	 * <code>x</code>, the y values of the sources <code>y0</code>,
+	 * <code>y1</code>, ... and the functions abs, sqrt, exp, log, sin and cos.
+	 * 
+	 * @param expression Text of the expression
+	 * @param maxNum     Maximum number of values
+	 * @param sources    Source data handlers
+	 * @return New data handler
+	 * @throws IllegalArgumentException if the expression is not valid
+	 */
+	public static XYPlotDataDerived expression(String expression, int maxNum, XYPlotData... sources) {
+		return new XYPlotDataDerived(sources, maxNum, new Expression(new XYPlotDataExpression(expression,
+				sources.length)));
+	}
+
+	/**
+	 * Compute the values for all new source values.
+	 * 
+	 * @return Number of source rows processed
+	 */
+	public int update() {
+		int num = compute();
+		if (num > 0) {
+			notifyOwner();
+		}
+		return num;
+	}
+
+	@Override
+	public int addValue(double x, double y) {
+		throw notAdded();
+	}
+
+	@Override
+	public int addValue(double x, String label) {
+		throw notAdded();
+	}
+
+	@Override
+	public int addValues(double[] xs, double[] ys, int off, int len) {
+		throw notAdded();
+	}
+
+	@Override
+	public int addValues(DoubleBuffer xs, DoubleBuffer ys) {
+		throw notAdded();
+	}
+
+	@Override
+	public void changeValues(double[] y) {
+		throw notAdded();
+	}
+
+	@Override
+	public void setIngestionQueue(int capacity, OverflowPolicy policy) {
+		throw notAdded();
+	}
+
+	@Override
+	public void setReorderWindow(double maxDelay, int maxPending) {
+		throw notAdded();
+	}
+
+	@Override
+	public void setRetention(double maxAge, int maxCount, long maxBytes) {
+		throw notAdded();
+	}
+
+	@Override
+	public void setMaxNumber(int maxNum) {
+		throw notAdded();
+	}
+
+	@Override
+	public void setArchive(File directory, long memoryBudget) {
+		throw notAdded();
+	}
+
+	private static IllegalStateException notAdded() {
+		return new IllegalStateException("Values of a derived data handler are computed from its sources");
+	}
+
+	@Override
+	void refresh() {
+		super.refresh();
+		compute();
+	}
+
+	@Override
+	boolean hasPending() {
+		for (int i = 0; i < sources.length; ++i) {
+			if (sources[i].getDataVersion() != seenVersion[i] || sources[i].hasPending()) {
+				return true;
+			}
+		}
+		return super.hasPending();
+	}
+
+	/**
+	 * Compute the values for all new source values. The lock of this handler is
+	 * taken only for storing the results, never together with the lock of a
+	 * source.
+	 * 
+	 * @return Number of source rows processed
+	 */
+	private int compute() {
+		for (XYPlotData source : sources) {
+			source.refresh();
+		}
+		int total = 0;
+		updateLock.lock();
+		try {
+			for (;;) {
+				int rows = fetch(false);
+				if (rows == 0) {
+					break;
+				}
+				int num = 0;
+				for (int r = 0; r < rows; ++r) {
+					double x = sourceX[0][r];
+					boolean border = false;
+					for (int i = 0; i < sources.length; ++i) {
+						rowY[i] = sourceY[i][r];
+						border |= sourceBorder[i][r];
+					}
+					double y = operator.apply(x, rowY);
+					if (!Double.isNaN(y)) {
+						resultX[num] = x;
+						resultY[num] = y;
+						resultBorder[num] = false;
+						num++;
+					}
+					if (border) {
+						if (num > 0) {
+							resultBorder[num - 1] = true;
+						}
+						operator.reset();
+					}
+				}
+				lock();
+				try {
+					appendComputed(resultX, resultY, resultBorder, num);
+				} finally {
+					unlock();
+				}
+				for (int i = 0; i < sources.length; ++i) {
+					next[i] += rows;
+				}
+				total += rows;
+			}
+		} finally {
+			updateLock.unlock();
+		}
+		return total;
+	}
+
+	/**
+	 * Read the next rows from the sources. Starts the computation again if the
+	 * values of a source have been replaced and inserts a break if source values
+	 * have been dropped before they were read. The caller must hold the update
+	 * lock.
+	 * 
+	 * @param restarted True to read all sources from their oldest values
+	 * @return Number of complete rows read
+	 */
+	private int fetch(boolean restarted) {
+		boolean restart = false;
+		boolean pause = false;
+		long gap = 0;
+		for (int i = 0; i < sources.length; ++i) {
+			XYPlotData source = sources[i];
+			source.lock();
+			try {
+				seenVersion[i] = source.getDataVersion();
+				long first = source.firstSequence();
+				int length = source.ringLength();
+				if (restarted) {
+					// The rows are formed again from the oldest values of every
+					// source, not only of the replaced one
+					generation[i] = source.valuesGeneration();
+					next[i] = first;
+				} else if (source.valuesGeneration() != generation[i]) {
+					restart = true;
+				}
+				// A break may be set after the last value has been read
+				long last = next[i] - 1;
+				if (last >= first && last < first + length && !seenBorder[i] && source.ringBorder((int) (last - first))) {
+					pause = true;
+				}
+				gap = Math.max(gap, first - next[i]);
+				long start = Math.max(next[i], first);
+				int num = (int) Math.max(Math.min(sourceX[i].length, first + length - start), 0);
+				source.readRing((int) (start - first), num, sourceX[i], sourceY[i], sourceBorder[i]);
+				fetched[i] = num;
+			} finally {
+				source.unlock();
+			}
+		}
+		if (restart) {
+			// Compute all values again from the oldest values of the sources
+			clearValues();
+			operator.restart();
+			for (int i = 0; i < sources.length; ++i) {
+				seenBorder[i] = false;
+			}
+			return fetch(true);
+		}
+		if (pause || gap > 0) {
+			lock();
+			try {
+				markBorder();
+			} finally {
+				unlock();
+			}
+			operator.reset();
+			for (int i = 0; i < sources.length; ++i) {
+				seenBorder[i] = true;
+			}
+			if (gap > 0) {
+				for (int i = 0; i < sources.length; ++i) {
+					next[i] += gap;
+				}
+				return fetch(false);
+			}
+		}
+		int rows = Integer.MAX_VALUE;
+		for (int i = 0; i < sources.length; ++i) {
+			rows = Math.min(rows, fetched[i]);
+		}
+		for (int i = 0; i < sources.length && rows > 0; ++i) {
+			seenBorder[i] = sourceBorder[i][rows - 1];
+		}
+		return rows;
+	}
+
+	/**
+	 * Computation of a derived value from a row of source values.
+	 */
+	private static abstract class Operator {
+
+		/**
+		 * Compute the value for a row.
+		 * 
+		 * @param x  X value of the row
+		 * @param ys Y values of the sources
+		 * @return Result or NaN if there is no result for this row
+		 */
+		abstract double apply(double x, double[] ys);
+
+		/**
+		 * Forget the values before a break.
+		 */
+		void reset() {
+		}
+
+		/**
+		 * Start the computation again from the first value.
+		 */
+		void restart() {
+			reset();
+		}
+	}
+
+	private static class MovingAverage extends Operator {
+		private final double[] window;
+		private int pos;
+		private int num;
+		private double sum;
+		private int added;
+
+		MovingAverage(int size) {
+			window = new double[size];
+		}
+
+		@Override
+		double apply(double x, double[] ys) {
+			double v = ys[0];
+			if (num == window.length) {
+				sum -= window[pos];
+			} else {
+				num++;
+			}
+			window[pos] = v;
+			sum += v;
+			pos = (pos + 1) % window.length;
+			// Sum up again from time to time against rounding errors
+			if (++added >= window.length) {
+				added = 0;
+				sum = 0;
+				for (int i = 0; i < num; ++i) {
+					sum += window[i];
+				}
+			}
+			return sum / num;
+		}
+
+		@Override
+		void reset() {
+			pos = 0;
+			num = 0;
+			sum = 0;
+			added = 0;
+		}
+	}
+
+	private static class ExponentialAverage extends Operator {
+		private final double alpha;
+		private double average = Double.NaN;
+
+		ExponentialAverage(double alpha) {
+			this.alpha = alpha;
+		}
+
+		@Override
+		double apply(double x, double[] ys) {
+			if (Double.isNaN(average)) {
+				average = ys[0];
+			} else {
+				average += alpha * (ys[0] - average);
+			}
+			return average;
+		}
+
+		@Override
+		void reset() {
+			average = Double.NaN;
+		}
+	}
+
+	private static class Derivative extends Operator {
+		private double lastX = Double.NaN;
+		private double lastY;
+
+		@Override
+		double apply(double x, double[] ys) {
+			double result = Double.NaN;
+			if (!Double.isNaN(lastX) && x != lastX) {
+				result = (ys[0] - lastY) / (x - lastX);
+			}
+			lastX = x;
+			lastY = ys[0];
+			return result;
+		}
+
+		@Override
+		void reset() {
+			lastX = Double.NaN;
+		}
+	}
+
+	private static class Integral extends Operator {
+		private double lastX = Double.NaN;
+		private double lastY;
+		private double sum;
+
+		@Override
+		double apply(double x, double[] ys) {
+			if (!Double.isNaN(lastX)) {
+				sum += (x - lastX) * (ys[0] + lastY) / 2;
+			}
+			lastX = x;
+			lastY = ys[0];
+			return sum;
+		}
+
+		@Override
+		void reset() {
+			// The sum goes on after a break
+			lastX = Double.NaN;
+		}
+
+		@Override
+		void restart() {
+			reset();
+			sum = 0;
+		}
+	}
+
+	private static class Expression extends Operator {
+		private final XYPlotDataExpression expression;
+
+		Expression(XYPlotDataExpression expression) {
+			this.expression = expression;
+		}
+
+		@Override
+		double apply(double x, double[] ys) {
+			return expression.evaluate(x, ys);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Ring buffer holding the values in direct byte buffers outside of the Java
+ * heap. The heap usage of the buffer does not depend on the capacity, so very
+ * large buffers neither enlarge the heap nor the garbage collection pauses.
+ * The summaries kept by the data handler grow with the values added (see
+ * {@link XYPlotDataChunks}).
+ * <p>
+ * The native memory is freed by {@link #free()} if the runtime allows it,
+ * otherwise it is left to the garbage collector.
+ */
+class XYPlotDataDirectRing extends XYPlotDataRing {
+	private ByteBuffer xBytes;
+	private ByteBuffer yBytes;
+	private ByteBuffer borderBytes;
+	private DoubleBuffer x;
+	private DoubleBuffer y;
+	private LongBuffer border;
+
+	/**
+	 * Create a ring buffer in native memory.
+	 * 
+	 * @param capacity Maximum number of values in the buffer
+	 * @throws IllegalArgumentException if a column would exceed 2GB
+	 */
+	XYPlotDataDirectRing(int capacity) {
+		super(capacity);
+		if (capacity() > Integer.MAX_VALUE / 8) {
+			throw new IllegalArgumentException("Capacity too large for direct buffers: " + capacity);
+		}
+		this.xBytes = ByteBuffer.allocateDirect(capacity() * 8).order(ByteOrder.nativeOrder());
+		this.yBytes = ByteBuffer.allocateDirect(capacity() * 8).order(ByteOrder.nativeOrder());
+		this.borderBytes = ByteBuffer.allocateDirect(borderWords(capacity()) * 8).order(ByteOrder.nativeOrder());
+		this.x = xBytes.asDoubleBuffer();
+		this.y = yBytes.asDoubleBuffer();
+		this.border = borderBytes.asLongBuffer();
+	}
+
+	@Override
+	double xAt(int pos) {
+		return x.get(pos);
+	}
+
+	@Override
+	double yAt(int pos) {
+		return y.get(pos);
+	}
+
+	@Override
+	void store(int pos, double xv, double yv) {
+		x.put(pos, xv);
+		y.put(pos, yv);
+	}
+
+	@Override
+	void storeY(int pos, double yv) {
+		y.put(pos, yv);
+	}
+
+	@Override
+	void copy(double[] xs, double[] ys, int off, int pos, int len) {
+		x.position(pos);
+		x.put(xs, off, len);
+		y.position(pos);
+		y.put(ys, off, len);
+	}
+
+	@Override
+	void copy(DoubleBuffer xs, DoubleBuffer ys, int pos, int len) {
+		x.position(pos);
+		x.put(slice(xs, len));
+		y.position(pos);
+		y.put(slice(ys, len));
+	}
+
+	@Override
+	long borderBits(int word) {
+		return border.get(word);
+	}
+
+	@Override
+	void setBorderBits(int word, long bits) {
+		border.put(word, bits);
+	}
+
+	@Override
+	void free() {
+		ByteBuffer[] buffers = { xBytes, yBytes, borderBytes };
+		xBytes = yBytes = borderBytes = ByteBuffer.allocateDirect(0);
+		x = y = DoubleBuffer.allocate(0);
+		border = LongBuffer.allocate(0);
+		for (ByteBuffer buffer : buffers) {
+			release(buffer);
+		}
+	}
+
+	/**
+	 * Get the next len values of a buffer as separate buffer and advance the
+	 * position of the buffer.
+	 */
+	private static DoubleBuffer slice(DoubleBuffer buffer, int len) {
+		DoubleBuffer result = buffer.duplicate();
+		result.limit(result.position() + len);
+		buffer.position(buffer.position() + len);
+		return result;
+	}
+
+	/**
+	 * Free the native memory of a direct buffer. There is no public API for
+	 * this, so the cleaner is called by reflection (Java 9 and later through
+	 * sun.misc.Unsafe, before through the cleaner of the buffer). If both fail,
+	 * the memory is freed when the buffer is garbage collected.
+	 */
+	private static void release(ByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Method method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			method.invoke(field.get(null), buffer);
+		} catch (Exception e) {
+			try {
+				Method method = buffer.getClass().getMethod("cleaner");
+				method.setAccessible(true);
+				Object cleaner = method.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			} catch (Exception e2) {
+				// Left to the garbage collector
+			}
+		}
+	}
+}
@@ -0,0 +1,348 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+/**
+ * Small arithmetic expression over the values of several data handlers, see
+ * {@link XYPlotDataDerived#expression(String, int, XYPlotData...)}. The text is
+ * compiled once into a program for a stack machine, so evaluating it does not
+ * allocate memory.
+ * <p>
+ * The expression knows the operators + - * / ^ (power), parentheses, numbers,
+ * the x value <code>x</code>, the y values of the sources <code>y0</code>,
+ * <code>y1</code>, ... and the functions abs, sqrt, exp, log, sin and cos.
+ * <p>
+ * The class is not thread safe.
+ */
+class XYPlotDataExpression {
+	private static final int CONST = 0;
+	private static final int X = 1;
+	private static final int Y = 2;
+	private static final int ADD = 3;
+	private static final int SUB = 4;
+	private static final int MUL = 5;
+	private static final int DIV = 6;
+	private static final int POW = 7;
+	private static final int NEG = 8;
+	private static final int ABS = 9;
+	private static final int SQRT = 10;
+	private static final int EXP = 11;
+	private static final int LOG = 12;
+	private static final int SIN = 13;
+	private static final int COS = 14;
+	private static final String[] FUNCTIONS = { "abs", "sqrt", "exp", "log", "sin", "cos" };
+
+	private final String text;
+	private final int sources;
+	private int pos;
+	// Operation codes with the operand in the upper bits
+	private int[] program = new int[16];
+	private double[] constants = new double[4];
+	private int length;
+	private int constantNum;
+	private int depth;
+	private int maxDepth;
+	private final double[] stack;
+
+	/**
+	 * Compile an expression.
+	 * 
+	 * @param text    Text of the expression
+	 * @param sources Number of y values available
+	 * @throws IllegalArgumentException if the text is not a valid expression
+	 */
+	XYPlotDataExpression(String text, int sources) {
+		this.text = text;
+		this.sources = sources;
+		parseSum();
+		skipSpace();
+		if (pos < text.length()) {
+			throw error("Unexpected character");
+		}
+		this.stack = new double[Math.max(maxDepth, 1)];
+	}
+
+	/**
+	 * Evaluate the expression.
+	 * 
+	 * @param x  X value
+	 * @param ys Y values of the sources
+	 * @return Result
+	 */
+	double evaluate(double x, double[] ys) {
+		int top = -1;
+		for (int i = 0; i < length; ++i) {
+			int op = program[i] & 0xff;
+			int arg = program[i] >>> 8;
+			switch (op) {
+			case CONST:
+				stack[++top] = constants[arg];
+				break;
+			case X:
+				stack[++top] = x;
+				break;
+			case Y:
+				stack[++top] = ys[arg];
+				break;
+			case ADD:
+				top--;
+				stack[top] += stack[top + 1];
+				break;
+			case SUB:
+				top--;
+				stack[top] -= stack[top + 1];
+				break;
+			case MUL:
+				top--;
+				stack[top] *= stack[top + 1];
+				break;
+			case DIV:
+				top--;
+				stack[top] /= stack[top + 1];
+				break;
+			case POW:
+				top--;
+				stack[top] = Math.pow(stack[top], stack[top + 1]);
+				break;
+			case NEG:
+				stack[top] = -stack[top];
+				break;
+			case ABS:
+				stack[top] = Math.abs(stack[top]);
+				break;
+			case SQRT:
+				stack[top] = Math.sqrt(stack[top]);
+				break;
+			case EXP:
+				stack[top] = Math.exp(stack[top]);
+				break;
+			case LOG:
+				stack[top] = Math.log(stack[top]);
+				break;
+			case SIN:
+				stack[top] = Math.sin(stack[top]);
+				break;
+			default:
+				stack[top] = Math.cos(stack[top]);
+				break;
+			}
+		}
+		return stack[0];
+	}
+
+	// sum := product (('+' | '-') product)*
+	private void parseSum() {
+		parseProduct();
+		for (;;) {
+			if (accept('+')) {
+				parseProduct();
+				emit(ADD, 0, -1);
+			} else if (accept('-')) {
+				parseProduct();
+				emit(SUB, 0, -1);
+			} else {
+				return;
+			}
+		}
+	}
+
+	// product := unary (('*' | '/') unary)*
+	private void parseProduct() {
+		parseUnary();
+		for (;;) {
+			if (accept('*')) {
+				parseUnary();
+				emit(MUL, 0, -1);
+			} else if (accept('/')) {
+				parseUnary();
+				emit(DIV, 0, -1);
+			} else {
+				return;
+			}
+		}
+	}
+
+	// unary := '-' unary | power
+	private void parseUnary() {
+		if (accept('-')) {
+			parseUnary();
+			emit(NEG, 0, 0);
+		} else {
+			parsePower();
+		}
+	}
+
+	// power := primary ('^' unary)?
+	private void parsePower() {
+		parsePrimary();
+		if (accept('^')) {
+			parseUnary();
+			emit(POW, 0, -1);
+		}
+	}
+
+	// primary := number | 'x' | 'y' digits | function '(' sum ')' | '(' sum ')'
+	private void parsePrimary() {
+		skipSpace();
+		if (accept('(')) {
+			parseSum();
+			expect(')');
+			return;
+		}
+		int start = pos;
+		if (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+			while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+				pos++;
+			}
+			if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+				pos++;
+				if (pos < text.length() && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+					pos++;
+				}
+				while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+					pos++;
+				}
+			}
+			double value;
+			try {
+				value = Double.parseDouble(text.substring(start, pos));
+			} catch (NumberFormatException e) {
+				pos = start;
+				throw error("Invalid number");
+			}
+			if (constantNum == constants.length) {
+				double[] c = new double[constantNum * 2];
+				System.arraycopy(constants, 0, c, 0, constantNum);
+				constants = c;
+			}
+			constants[constantNum] = value;
+			emit(CONST, constantNum++, 1);
+			return;
+		}
+		while (pos < text.length() && Character.isLetterOrDigit(text.charAt(pos))) {
+			pos++;
+		}
+		String name = text.substring(start, pos);
+		if (name.equals("x")) {
+			emit(X, 0, 1);
+			return;
+		}
+		if (name.length() > 1 && name.charAt(0) == 'y') {
+			int source = -1;
+			try {
+				source = Integer.parseInt(name.substring(1));
+			} catch (NumberFormatException e) {
+				// Reported below
+			}
+			if (source < 0 || source >= sources) {
+				pos = start;
+				throw error("Unknown source " + name);
+			}
+			emit(Y, source, 1);
+			return;
+		}
+		for (int i = 0; i < FUNCTIONS.length; ++i) {
+			if (FUNCTIONS[i].equals(name)) {
+				expect('(');
+				parseSum();
+				expect(')');
+				emit(ABS + i, 0, 0);
+				return;
+			}
+		}
+		pos = start;
+		throw error(name.length() == 0 ? "Value expected" : "Unknown name " + name);
+	}
+
+	private void emit(int op, int arg, int change) {
+		if (length == program.length) {
+			int[] p = new int[length * 2];
+			System.arraycopy(program, 0, p, 0, length);
+			program = p;
+		}
+		program[length++] = op | (arg << 8);
+		depth += change;
+		maxDepth = Math.max(maxDepth, depth);
+	}
+
+	private boolean accept(char c) {
+		skipSpace();
+		if (pos < text.length() && text.charAt(pos) == c) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(char c) {
+		if (!accept(c)) {
+			throw error("'" + c + "' expected");
+		}
+	}
+
+	private void skipSpace() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + pos + " in expression \"" + text + "\"");
+	}
+}
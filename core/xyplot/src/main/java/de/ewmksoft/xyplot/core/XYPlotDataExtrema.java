@@ -0,0 +1,221 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+/**
+ * Sliding window minimum and maximum of the y values in a
+ * {@link XYPlotDataRing}. Two monotonic deques hold the candidates for the
+ * minimum and maximum. Appending and dropping values is O(1) amortized, so the
+ * extrema never have to be searched again when the current minimum or maximum
+ * leaves the ring buffer.
+ * <p>
+ * The deques store the sequence numbers of the values (see
+ * {@link XYPlotDataRing#first()}) truncated to int, which is unambiguous since
+ * the buffer never holds more than 2^31 values. The deques grow with the number
+ * of candidates, so no memory is taken for the capacity of the buffer in
+ * advance.
+ * <p>
+ * The class is not thread safe, synchronization is done by the owning
+ * {@link XYPlotData} object.
+ */
+class XYPlotDataExtrema {
+	private final XYPlotDataRing values;
+	private int[] minDeque;
+	private int[] maxDeque;
+	private int minHead;
+	private int minSize;
+	private int maxHead;
+	private int maxSize;
+
+	/**
+	 * Create the extrema tracker for a ring buffer.
+	 * 
+	 * @param values Ring buffer to track
+	 */
+	XYPlotDataExtrema(XYPlotDataRing values) {
+		this.values = values;
+		int size = Math.max(Math.min(values.capacity(), 64), 1);
+		this.minDeque = new int[size];
+		this.maxDeque = new int[size];
+	}
+
+	/**
+	 * Remove all candidates.
+	 */
+	void clear() {
+		minHead = 0;
+		minSize = 0;
+		maxHead = 0;
+		maxSize = 0;
+	}
+
+	/**
+	 * Recalculate the candidates from all values in the ring buffer. This is
+	 * required after values have been changed in place.
+	 */
+	void rebuild() {
+		clear();
+		for (int i = 0; i < values.size(); ++i) {
+			add(i);
+		}
+	}
+
+	/**
+	 * Add a value which has been appended to the ring buffer. Values dropped
+	 * from the buffer must have been removed by {@link #drop()} before.
+	 * 
+	 * @param index Logical index of the new value
+	 */
+	void add(int index) {
+		double y = values.y(index);
+		int seq = (int) (values.first() + index);
+		if (minSize == minDeque.length || maxSize == maxDeque.length) {
+			grow();
+		}
+		while (minSize > 0 && values.y(indexOf(minDeque[slot(minHead, minSize - 1)])) >= y) {
+			minSize--;
+		}
+		minDeque[slot(minHead, minSize)] = seq;
+		minSize++;
+		while (maxSize > 0 && values.y(indexOf(maxDeque[slot(maxHead, maxSize - 1)])) <= y) {
+			maxSize--;
+		}
+		maxDeque[slot(maxHead, maxSize)] = seq;
+		maxSize++;
+	}
+
+	/**
+	 * Remove the candidates which have been dropped from the ring buffer.
+	 */
+	void drop() {
+		while (minSize > 0 && indexOf(minDeque[minHead]) < 0) {
+			minHead = slot(minHead, 1);
+			minSize--;
+		}
+		while (maxSize > 0 && indexOf(maxDeque[maxHead]) < 0) {
+			maxHead = slot(maxHead, 1);
+			maxSize--;
+		}
+	}
+
+	/**
+	 * Check if there is no value in the window.
+	 */
+	boolean isEmpty() {
+		return minSize == 0;
+	}
+
+	/**
+	 * Get the logical index of the minimum value.
+	 */
+	int minIndex() {
+		return indexOf(minDeque[minHead]);
+	}
+
+	/**
+	 * Get the logical index of the maximum value.
+	 */
+	int maxIndex() {
+		return indexOf(maxDeque[maxHead]);
+	}
+
+	/**
+	 * Get the minimum value, 0 if the window is empty.
+	 */
+	double min() {
+		return minSize > 0 ? values.y(minIndex()) : 0;
+	}
+
+	/**
+	 * Get the maximum value, 0 if the window is empty.
+	 */
+	double max() {
+		return maxSize > 0 ? values.y(maxIndex()) : 0;
+	}
+
+	/**
+	 * Double the size of both deques.
+	 */
+	private void grow() {
+		int[] min = new int[2 * minDeque.length];
+		int[] max = new int[2 * maxDeque.length];
+		for (int i = 0; i < minSize; ++i) {
+			min[i] = minDeque[slot(minHead, i)];
+		}
+		for (int i = 0; i < maxSize; ++i) {
+			max[i] = maxDeque[slot(maxHead, i)];
+		}
+		minDeque = min;
+		maxDeque = max;
+		minHead = 0;
+		maxHead = 0;
+	}
+
+	private int indexOf(int seq) {
+		return seq - (int) values.first();
+	}
+
+	private int slot(int head, int offset) {
+		int pos = head + offset;
+		if (pos >= minDeque.length) {
+			pos -= minDeque.length;
+		}
+		return pos;
+	}
+}
@@ -0,0 +1,351 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Group of data handlers (channels) sampled on the same x values. The x values
+ * are stored only once for the whole group, each channel keeps its own y
+ * values. Values are added in rows of one x value and one y value per channel
+ * by {@link #addRow(double, double[])} or
+ * {@link #addRows(double[], double[][], int, int)}, the channels do not take
+ * values on their own.
+ * <p>
+ * The channels are normal data handlers for a plot (see
+ * {@link XYPlot#setDataHandlers(XYPlotData[])}). They share one lock, and the
+ * lookups of x values done by a plot for each channel, directly or on the views
+ * taken for drawing, are computed once for the group as long as the channels
+ * or views cover the same rows.
+ * 
+ * Example:
+ * 
+ * <pre>
+ * XYPlotDataGroup group = new XYPlotDataGroup(32, 100000);
+ * plot.setDataHandlers(group.getChannels());
+ * group.addRow(time, samples);
+ * </pre>
+ */
+public class XYPlotDataGroup {
+	private static final int CACHE_SIZE = 8;
+	// Result of cachedFloorIndex if the lookup is not in the cache
+	static final int NOT_CACHED = -2;
+
+	private final Lock lock = new ReentrantLock();
+	private final XYPlotData[] channels;
+	private final double[] sharedX;
+	// Physical position of the next row in the shared x values
+	private int tail;
+	private final double[] rowX = new double[1];
+	private final double[] rowY = new double[1];
+	// Number of times the group has been cleared. Within a generation the rows
+	// of a sequence number (see XYPlotDataRing#first()) never change.
+	private long generation;
+	private final long[] cacheGeneration = new long[CACHE_SIZE];
+	private final long[] cacheFirst = new long[CACHE_SIZE];
+	private final int[] cacheLength = new int[CACHE_SIZE];
+	private final double[] cacheX = new double[CACHE_SIZE];
+	private final int[] cacheResult = new int[CACHE_SIZE];
+	private int cacheNext;
+
+	/**
+	 * Create a group of channels. The buffers for the x values and for the y
+	 * values of all channels are allocated at once, this takes 8 * (channelNum +
+	 * 1) * maxNum bytes of heap memory from the start.
+	 * 
+	 * @param channelNum Number of channels
+	 * @param maxNum     Maximum number of values per channel
+	 */
+	public XYPlotDataGroup(int channelNum, int maxNum) {
+		sharedX = new double[Math.max(maxNum, 0)];
+		channels = new XYPlotData[channelNum];
+		for (int i = 0; i < channelNum; ++i) {
+			channels[i] = new XYPlotData(this, new XYPlotDataSharedRing(sharedX), lock);
+		}
+		Arrays.fill(cacheGeneration, -1);
+	}
+
+	/**
+	 * Get the number of channels.
+	 */
+	public int getChannelNum() {
+		return channels.length;
+	}
+
+	/**
+	 * Get a channel of the group.
+	 * 
+	 * @param index Index of the channel
+	 * @return Data handler of the channel
+	 */
+	public XYPlotData getChannel(int index) {
+		return channels[index];
+	}
+
+	/**
+	 * Get all channels of the group.
+	 * 
+	 * @return Array with the data handlers of the channels
+	 */
+	public XYPlotData[] getChannels() {
+		return channels.clone();
+	}
+
+	/**
+	 * Add a row of values. If the buffers are full, the oldest row is dropped.
+	 * 
+	 * @param x  X value
+	 * @param ys Y values, one per channel
+	 */
+	public void addRow(double x, double[] ys) {
+		if (ys.length != channels.length) {
+			throw new IllegalArgumentException("One y value per channel expected");
+		}
+		lock.lock();
+		try {
+			rowX[0] = x;
+			archiveRows(rowX, null, ys, 0, 1);
+			writeX(rowX, 0, 1);
+			for (int i = 0; i < channels.length; ++i) {
+				rowY[0] = ys[i];
+				channels[i].appendValues(rowX, rowY, 0, 1);
+			}
+		} finally {
+			lock.unlock();
+		}
+		writeArchives();
+		notifyOwners();
+	}
+
+	/**
+	 * Add a block of rows. This is the same as calling
+	 * {@link #addRow(double, double[])} for each row, but the lock is taken only
+	 * once and the plots are notified only once.
+	 * 
+	 * @param xs  Array with x values
+	 * @param ys  Arrays with y values, one array per channel
+	 * @param off Offset of the first row in the arrays
+	 * @param len Number of rows to add
+	 */
+	public void addRows(double[] xs, double[][] ys, int off, int len) {
+		if (ys.length != channels.length) {
+			throw new IllegalArgumentException("One y array per channel expected");
+		}
+		if (off < 0 || len < 0 || off + len > xs.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		for (double[] y : ys) {
+			if (off + len > y.length) {
+				throw new IndexOutOfBoundsException();
+			}
+		}
+		lock.lock();
+		try {
+			archiveRows(xs, ys, null, off, len);
+			writeX(xs, off, len);
+			for (int i = 0; i < channels.length; ++i) {
+				channels[i].appendValues(xs, ys[i], off, len);
+			}
+		} finally {
+			lock.unlock();
+		}
+		writeArchives();
+		if (len > 0) {
+			notifyOwners();
+		}
+	}
+
+	/**
+	 * Limit the values kept in the buffers of all channels below their
+	 * capacity, see {@link XYPlotData#setRetention(double, int, long)}.
+	 * 
+	 * @param maxAge   Maximum distance in x units between the oldest and the
+	 *                 newest row, 0 for no limit
+	 * @param maxCount Maximum number of rows, 0 for no limit
+	 * @param maxBytes Maximum memory for the values of one channel in bytes, 0
+	 *                 for no limit
+	 */
+	public void setRetention(double maxAge, int maxCount, long maxBytes) {
+		lock.lock();
+		try {
+			for (XYPlotData channel : channels) {
+				channel.retention(maxAge, maxCount, maxBytes);
+			}
+		} finally {
+			lock.unlock();
+		}
+		writeArchives();
+		notifyOwners();
+	}
+
+	/**
+	 * Remove all values of all channels.
+	 */
+	public void clear() {
+		lock.lock();
+		try {
+			for (XYPlotData channel : channels) {
+				channel.clearValues();
+			}
+			tail = 0;
+			generation++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Archive the values dropped by adding rows for all channels and keep them
+	 * for the views. This has to be done before any channel overwrites the
+	 * shared x values. The caller must hold the lock.
+	 */
+	private void archiveRows(double[] xs, double[][] ys, double[] row, int off, int len) {
+		for (int i = 0; i < channels.length; ++i) {
+			if (row != null) {
+				rowY[0] = row[i];
+				channels[i].beforeAdd(xs, rowY, null, null, off, len);
+			} else {
+				channels[i].beforeAdd(xs, ys[i], null, null, off, len);
+			}
+		}
+	}
+
+	/**
+	 * Write the archive segments sealed by the last rows, see
+	 * {@link XYPlotData#writeArchive()}. The caller must not hold the lock.
+	 */
+	private void writeArchives() {
+		for (XYPlotData channel : channels) {
+			channel.writeArchive();
+		}
+	}
+
+	/**
+	 * Write the x values of appended rows into the shared buffer at the
+	 * positions the rings of the channels append to. Like in the rings, only the
+	 * last values of a block larger than the buffer are kept. The caller must
+	 * hold the lock.
+	 */
+	private void writeX(double[] xs, int off, int len) {
+		int capacity = sharedX.length;
+		if (capacity == 0 || len <= 0) {
+			return;
+		}
+		int skip = Math.max(0, len - capacity);
+		off += skip;
+		len -= skip;
+		int part = Math.min(len, capacity - tail);
+		System.arraycopy(xs, off, sharedX, tail, part);
+		System.arraycopy(xs, off + part, sharedX, 0, len - part);
+		tail = (tail + len) % capacity;
+	}
+
+	private void notifyOwners() {
+		for (XYPlotData channel : channels) {
+			channel.notifyOwner();
+		}
+	}
+
+	/**
+	 * Get the number of times the group has been cleared. The caller must hold
+	 * the lock.
+	 */
+	long generation() {
+		return generation;
+	}
+
+	/**
+	 * Look up the result of a binary search for the last row with a x value less
+	 * or equal to the given value. The channels and their views have the same x
+	 * values for the same rows, so a search done for one of them is taken for
+	 * all others. The caller must hold the lock.
+	 * 
+	 * @param generation Generation of the rows, see {@link #generation()}
+	 * @param first      Sequence number of the first row searched
+	 * @param length     Number of rows searched
+	 * @param xvalue     X value to search for
+	 * @return Index relative to the first row, -1 if all x values are greater or
+	 *         {@link #NOT_CACHED}
+	 */
+	int cachedFloorIndex(long generation, long first, int length, double xvalue) {
+		for (int i = 0; i < CACHE_SIZE; ++i) {
+			if (cacheGeneration[i] == generation && cacheFirst[i] == first && cacheLength[i] == length
+					&& cacheX[i] == xvalue) {
+				return cacheResult[i];
+			}
+		}
+		return NOT_CACHED;
+	}
+
+	/**
+	 * Keep the result of a binary search for
+	 * {@link #cachedFloorIndex(long, long, int, double)}. The caller must hold the
+	 * lock.
+	 */
+	void cacheFloorIndex(long generation, long first, int length, double xvalue, int result) {
+		cacheGeneration[cacheNext] = generation;
+		cacheFirst[cacheNext] = first;
+		cacheLength[cacheNext] = length;
+		cacheX[cacheNext] = xvalue;
+		cacheResult[cacheNext] = result;
+		cacheNext = (cacheNext + 1) % CACHE_SIZE;
+	}
+}
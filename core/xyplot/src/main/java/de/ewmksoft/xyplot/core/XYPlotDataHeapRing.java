@@ -0,0 +1,246 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Ring buffer holding the values in primitive arrays on the Java heap. The
+ * arrays are split into chunks, which are allocated when the first value is
+ * written into them, so a buffer with a large capacity only uses memory for the
+ * values added so far.
+ * <p>
+ * The buffer has one chunk of physical positions more than its capacity. This
+ * way the oldest and the newest value never share a chunk, and the capacity
+ * can be changed by arranging the chunks in a new order (see
+ * {@link #resize(int)}) without copying any values.
+ */
+class XYPlotDataHeapRing extends XYPlotDataRing {
+	private static final int MAX_CHUNK_SHIFT = 12;
+
+	private final int shift;
+	private final int mask;
+	private double[][] x;
+	private double[][] y;
+	private long[][] border;
+
+	/**
+	 * Create a ring buffer on the heap.
+	 * 
+	 * @param capacity Maximum number of values in the buffer
+	 */
+	XYPlotDataHeapRing(int capacity) {
+		this(capacity, chunkShift(capacity));
+	}
+
+	private XYPlotDataHeapRing(int capacity, int shift) {
+		super(capacity, span(capacity, shift));
+		this.shift = shift;
+		this.mask = (1 << shift) - 1;
+		int chunks = span() >>> shift;
+		this.x = new double[chunks][];
+		this.y = new double[chunks][];
+		this.border = new long[chunks][];
+	}
+
+	/**
+	 * Get the chunk size for a capacity. Small buffers get small chunks, but a
+	 * chunk holds at least one word of border bits.
+	 */
+	private static int chunkShift(int capacity) {
+		int result = 6;
+		while (result < MAX_CHUNK_SHIFT && (1 << result) < capacity) {
+			result++;
+		}
+		return result;
+	}
+
+	private static int span(int capacity, int shift) {
+		if (capacity <= 0) {
+			return 0;
+		}
+		int chunks = (int) (((long) capacity + (1 << shift) - 1) >>> shift) + 1;
+		return chunks << shift;
+	}
+
+	@Override
+	void clear() {
+		super.clear();
+		for (int i = 0; i < x.length; ++i) {
+			x[i] = null;
+			y[i] = null;
+			border[i] = null;
+		}
+	}
+
+	@Override
+	boolean resize(int capacity) {
+		capacity = Math.max(capacity, 0);
+		int newSpan = span(capacity, shift);
+		int chunks = newSpan >>> shift;
+		double[][] nx = new double[chunks][];
+		double[][] ny = new double[chunks][];
+		long[][] nborder = new long[chunks][];
+		int head = head() & mask;
+		if (size() > 0) {
+			// Chunks of the values in logical order, the first one starts with the
+			// oldest value
+			int first = head() >>> shift;
+			int used = (head + size() + mask) >>> shift;
+			for (int i = 0; i < used; ++i) {
+				int c = (first + i) % x.length;
+				nx[i] = x[c];
+				ny[i] = y[c];
+				nborder[i] = border[c];
+			}
+		} else {
+			head = 0;
+		}
+		x = nx;
+		y = ny;
+		border = nborder;
+		setLayout(capacity, newSpan, head);
+		return true;
+	}
+
+	@Override
+	double xAt(int pos) {
+		return x[pos >>> shift][pos & mask];
+	}
+
+	@Override
+	double yAt(int pos) {
+		return y[pos >>> shift][pos & mask];
+	}
+
+	@Override
+	void store(int pos, double xv, double yv) {
+		int c = chunk(pos);
+		x[c][pos & mask] = xv;
+		y[c][pos & mask] = yv;
+	}
+
+	@Override
+	void storeY(int pos, double yv) {
+		y[pos >>> shift][pos & mask] = yv;
+	}
+
+	@Override
+	void copy(double[] xs, double[] ys, int off, int pos, int len) {
+		while (len > 0) {
+			int c = chunk(pos);
+			int part = Math.min(len, mask + 1 - (pos & mask));
+			System.arraycopy(xs, off, x[c], pos & mask, part);
+			System.arraycopy(ys, off, y[c], pos & mask, part);
+			off += part;
+			pos += part;
+			len -= part;
+		}
+	}
+
+	@Override
+	void copy(DoubleBuffer xs, DoubleBuffer ys, int pos, int len) {
+		while (len > 0) {
+			int c = chunk(pos);
+			int part = Math.min(len, mask + 1 - (pos & mask));
+			xs.get(x[c], pos & mask, part);
+			ys.get(y[c], pos & mask, part);
+			pos += part;
+			len -= part;
+		}
+	}
+
+	@Override
+	long borderBits(int word) {
+		long[] bits = border[word >>> (shift - 6)];
+		return bits != null ? bits[word & (mask >>> 6)] : 0;
+	}
+
+	@Override
+	void setBorderBits(int word, long bits) {
+		int c = word >>> (shift - 6);
+		if (border[c] == null) {
+			if (bits == 0) {
+				return;
+			}
+			chunk(c << shift);
+		}
+		border[c][word & (mask >>> 6)] = bits;
+	}
+
+	@Override
+	void free() {
+		x = new double[0][];
+		y = new double[0][];
+		border = new long[0][];
+	}
+
+	/**
+	 * Get the chunk of a physical position, allocate it if necessary.
+	 */
+	private int chunk(int pos) {
+		int c = pos >>> shift;
+		if (x[c] == null) {
+			x[c] = new double[mask + 1];
+			y[c] = new double[mask + 1];
+			border[c] = new long[(mask + 1) >>> 6];
+		}
+		return c;
+	}
+}
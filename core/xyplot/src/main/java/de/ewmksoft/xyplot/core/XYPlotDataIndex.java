@@ -0,0 +1,240 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+/**
+ * Block index for range queries on the y values of a {@link XYPlotDataRing}.
+ * The values are grouped into blocks of {@link #BLOCK_SIZE} values by their
+ * sequence number (see {@link XYPlotDataRing#first()}). For each block the
+ * minimum and maximum is kept, and a segment tree over the completed blocks
+ * answers the minimum and maximum of any block range in O(log n).
+ * <p>
+ * A range query scans the values of the partially covered blocks at both ends
+ * of the range and takes the fully covered blocks from the tree. A block fully
+ * covered by a range of values in the buffer is always complete, so dropped
+ * values never show up in a result.
+ * <p>
+ * The arrays are chunked (see {@link XYPlotDataChunks}), so the heap usage
+ * grows with the values added, up to at most a third of a byte per value of
+ * the capacity.
+ * <p>
+ * The class is not thread safe, synchronization is done by the owning
+ * {@link XYPlotData} object.
+ */
+class XYPlotDataIndex {
+	static final int BLOCK_SHIFT = 8;
+	static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+	private final XYPlotDataRing values;
+	private final int slots;
+	private final int leaves;
+	// Minimum and maximum of the block filled at the moment
+	private double blockMin;
+	private double blockMax;
+	private final XYPlotDataChunks.Doubles treeMin;
+	private final XYPlotDataChunks.Doubles treeMax;
+
+	/**
+	 * Create the index for a ring buffer.
+	 * 
+	 * @param values Ring buffer to index
+	 */
+	XYPlotDataIndex(XYPlotDataRing values) {
+		this.values = values;
+		// A window of capacity values touches at most capacity / BLOCK_SIZE + 2
+		// blocks
+		this.slots = (values.capacity() >> BLOCK_SHIFT) + 2;
+		int n = 1;
+		while (n < slots) {
+			n <<= 1;
+		}
+		this.leaves = n;
+		this.treeMin = new XYPlotDataChunks.Doubles(2 * leaves, Double.POSITIVE_INFINITY);
+		this.treeMax = new XYPlotDataChunks.Doubles(2 * leaves, Double.NEGATIVE_INFINITY);
+		clear();
+	}
+
+	/**
+	 * Remove all blocks.
+	 */
+	void clear() {
+		blockMin = Double.POSITIVE_INFINITY;
+		blockMax = Double.NEGATIVE_INFINITY;
+		treeMin.clear();
+		treeMax.clear();
+	}
+
+	/**
+	 * Recalculate the index from all values in the ring buffer. This is required
+	 * after values have been changed in place.
+	 */
+	void rebuild() {
+		clear();
+		for (int i = 0; i < values.size(); ++i) {
+			add(i);
+		}
+	}
+
+	/**
+	 * Add a value which has been appended to the ring buffer.
+	 * 
+	 * @param index Logical index of the new value
+	 */
+	void add(int index) {
+		long seq = values.first() + index;
+		int slot = (int) ((seq >>> BLOCK_SHIFT) % slots);
+		int offset = (int) (seq & (BLOCK_SIZE - 1));
+		double y = values.y(index);
+		if (offset == 0) {
+			blockMin = y;
+			blockMax = y;
+			setLeaf(slot, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+		} else {
+			if (y < blockMin) {
+				blockMin = y;
+			}
+			if (y > blockMax) {
+				blockMax = y;
+			}
+		}
+		if (offset == BLOCK_SIZE - 1) {
+			setLeaf(slot, blockMin, blockMax);
+		}
+	}
+
+	/**
+	 * Get minimum and maximum of the y values in a range of logical indices.
+	 * 
+	 * @param from   First index
+	 * @param to     Last index (inclusive)
+	 * @param result Array receiving the minimum [0] and maximum [1]. If the range
+	 *               is empty, both are left unchanged.
+	 */
+	void range(int from, int to, double[] result) {
+		long first = values.first();
+		long seqFrom = first + from;
+		long seqTo = first + to;
+		long blockFrom = (seqFrom + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+		long blockTo = ((seqTo + 1) >>> BLOCK_SHIFT) - 1;
+		if (blockFrom > blockTo) {
+			scan(from, to, result);
+			return;
+		}
+		scan(from, (int) ((blockFrom << BLOCK_SHIFT) - first) - 1, result);
+		scan((int) (((blockTo + 1) << BLOCK_SHIFT) - first), to, result);
+		int slotFrom = (int) (blockFrom % slots);
+		int slotTo = (int) (blockTo % slots);
+		if (slotFrom <= slotTo) {
+			query(slotFrom, slotTo, result);
+		} else {
+			query(slotFrom, slots - 1, result);
+			query(0, slotTo, result);
+		}
+	}
+
+	private void scan(int from, int to, double[] result) {
+		for (int i = from; i <= to; ++i) {
+			double y = values.y(i);
+			if (y < result[0]) {
+				result[0] = y;
+			}
+			if (y > result[1]) {
+				result[1] = y;
+			}
+		}
+	}
+
+	private void query(int from, int to, double[] result) {
+		int lo = from + leaves;
+		int hi = to + leaves + 1;
+		while (lo < hi) {
+			if ((lo & 1) != 0) {
+				merge(lo++, result);
+			}
+			if ((hi & 1) != 0) {
+				merge(--hi, result);
+			}
+			lo >>>= 1;
+			hi >>>= 1;
+		}
+	}
+
+	private void merge(int node, double[] result) {
+		double min = treeMin.get(node);
+		double max = treeMax.get(node);
+		if (min < result[0]) {
+			result[0] = min;
+		}
+		if (max > result[1]) {
+			result[1] = max;
+		}
+	}
+
+	private void setLeaf(int slot, double min, double max) {
+		int node = slot + leaves;
+		treeMin.set(node, min);
+		treeMax.set(node, max);
+		node >>>= 1;
+		while (node > 0) {
+			treeMin.set(node, Math.min(treeMin.get(2 * node), treeMin.get(2 * node + 1)));
+			treeMax.set(node, Math.max(treeMax.get(2 * node), treeMax.get(2 * node + 1)));
+			node >>>= 1;
+		}
+	}
+}
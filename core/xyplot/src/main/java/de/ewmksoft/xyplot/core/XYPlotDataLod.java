@@ -0,0 +1,313 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+/**
+ * Level of detail pyramid for drawing the values of a {@link XYPlotDataRing}.
+ * Level 0 groups the values into buckets of 64 values, each further level into
+ * buckets four times as large. Buckets are aligned by the sequence numbers of
+ * the values (see {@link XYPlotDataRing#first()}).
+ * <p>
+ * For each bucket the position of the minimum and maximum y value is kept.
+ * Together with the first and the last value of the bucket, this gives the up
+ * to four values which have to be drawn to represent the bucket if it covers
+ * about one pixel column. A bucket is updated when a value is appended, larger
+ * buckets are updated from the smaller buckets when these are complete. Buckets
+ * of dropped values are reused without further cost.
+ * <p>
+ * The arrays are chunked (see {@link XYPlotDataChunks}), so the heap usage
+ * grows with the values added, up to a quarter of a byte per value of the
+ * capacity.
+ * <p>
+ * The class is not thread safe, synchronization is done by the owning
+ * {@link XYPlotData} object.
+ */
+class XYPlotDataLod {
+	static final int BASE_SHIFT = 6;
+	static final int LEVEL_SHIFT = 2;
+
+	private final XYPlotDataRing values;
+	private final int levels;
+	private final int[] slots;
+	private final XYPlotDataChunks.Ints[] minOffset;
+	private final XYPlotDataChunks.Ints[] maxOffset;
+	// 1 if the bucket contains a break
+	private final XYPlotDataChunks.Ints[] border;
+	// Bucket filled at the moment per level, stored when it is complete
+	private final long[] openStart;
+	private final int[] openMin;
+	private final int[] openMax;
+	private final boolean[] openBorder;
+
+	/**
+	 * Create the pyramid for a ring buffer. Only levels with buckets not larger
+	 * than the capacity of the buffer are created.
+	 * 
+	 * @param values Ring buffer
+	 */
+	XYPlotDataLod(XYPlotDataRing values) {
+		this.values = values;
+		int n = 0;
+		while (bucketSize(n) <= values.capacity() && shift(n) < 31) {
+			n++;
+		}
+		this.levels = n;
+		this.slots = new int[levels];
+		this.minOffset = new XYPlotDataChunks.Ints[levels];
+		this.maxOffset = new XYPlotDataChunks.Ints[levels];
+		this.border = new XYPlotDataChunks.Ints[levels];
+		this.openStart = new long[levels];
+		this.openMin = new int[levels];
+		this.openMax = new int[levels];
+		this.openBorder = new boolean[levels];
+		for (int level = 0; level < levels; ++level) {
+			// A window of capacity values touches at most capacity / size + 2
+			// buckets
+			slots[level] = (values.capacity() >> shift(level)) + 2;
+			minOffset[level] = new XYPlotDataChunks.Ints(slots[level]);
+			maxOffset[level] = new XYPlotDataChunks.Ints(slots[level]);
+			border[level] = new XYPlotDataChunks.Ints(slots[level]);
+		}
+		clear();
+	}
+
+	/**
+	 * Get the number of values per bucket on a level.
+	 * 
+	 * @param level Level
+	 * @return Bucket size
+	 */
+	static int bucketSize(int level) {
+		return 1 << shift(level);
+	}
+
+	private static int shift(int level) {
+		return BASE_SHIFT + level * LEVEL_SHIFT;
+	}
+
+	/**
+	 * Get the number of levels.
+	 * 
+	 * @return Number of levels, 0 if the buffer is smaller than a bucket
+	 */
+	int levels() {
+		return levels;
+	}
+
+	/**
+	 * Remove all buckets.
+	 */
+	void clear() {
+		for (int level = 0; level < levels; ++level) {
+			minOffset[level].clear();
+			maxOffset[level].clear();
+			border[level].clear();
+			openStart[level] = -1;
+		}
+	}
+
+	/**
+	 * Recalculate all buckets from the values and breaks in the ring buffer.
+	 * This is required after values have been changed in place.
+	 */
+	void rebuild() {
+		clear();
+		for (int i = 0; i < values.size(); ++i) {
+			add(i);
+			if (values.border(i)) {
+				setBorder(i);
+			}
+		}
+	}
+
+	/**
+	 * Add a value which has been appended to the ring buffer.
+	 * 
+	 * @param index Logical index of the new value
+	 */
+	void add(int index) {
+		if (levels > 0) {
+			merge(0, values.first() + index, index, index, index, false);
+		}
+	}
+
+	/**
+	 * Mark the bucket of a value on all levels as containing a break after the
+	 * value. Such buckets are not used for drawing.
+	 * 
+	 * @param index Logical index of the value
+	 */
+	void setBorder(int index) {
+		long seq = values.first() + index;
+		for (int level = 0; level < levels; ++level) {
+			if (seq - (seq & (bucketSize(level) - 1)) == openStart[level]) {
+				openBorder[level] = true;
+			} else {
+				border[level].set(slot(level, seq), 1);
+			}
+		}
+	}
+
+	/**
+	 * Select the level with a bucket width closest to one pixel, but not wider.
+	 * The width is estimated from the average distance of the x values in the
+	 * given range.
+	 * 
+	 * @param start  First index of the range
+	 * @param stop   Index after the range
+	 * @param factor Pixels per x unit
+	 * @return Level or -1 if the values should be drawn one by one
+	 */
+	int selectLevel(int start, int stop, double factor) {
+		int result = -1;
+		if (stop - start > bucketSize(0)) {
+			double span = values.x(stop - 1) - values.x(start);
+			double pixels = span * factor / (stop - 1 - start);
+			for (int level = 0; level < levels && bucketSize(level) * pixels <= 1.0; ++level) {
+				result = level;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the indices of the values to draw for a bucket. This are the first,
+	 * minimum, maximum and last value in the order of their indices.
+	 * 
+	 * @param level  Level
+	 * @param index  Logical index of the first value of the bucket
+	 * @param stop   Index after the range to draw
+	 * @param result Array of at least four elements receiving the indices
+	 * @return Number of indices or 0 if index is not the start of a complete
+	 *         bucket without break inside the range
+	 */
+	int vertices(int level, int index, int stop, int[] result) {
+		int size = bucketSize(level);
+		long seq = values.first() + index;
+		if ((seq & (size - 1)) != 0 || index + size > stop || index + size > values.size()) {
+			return 0;
+		}
+		int slot = slot(level, seq);
+		if (border[level].get(slot) != 0) {
+			return 0;
+		}
+		int min = minOffset[level].get(slot);
+		int max = maxOffset[level].get(slot);
+		int a = index + Math.min(min, max);
+		int b = index + Math.max(min, max);
+		int n = 0;
+		result[n++] = index;
+		if (a != index) {
+			result[n++] = a;
+		}
+		if (b != a) {
+			result[n++] = b;
+		}
+		if (b != index + size - 1) {
+			result[n++] = index + size - 1;
+		}
+		return n;
+	}
+
+	/**
+	 * Merge a complete child bucket (or a single value on level 0) into the
+	 * bucket of a level and pass the bucket to the next level if it is complete.
+	 */
+	private void merge(int level, long seq, int start, int minIndex, int maxIndex, boolean childBorder) {
+		int size = bucketSize(level);
+		int offset = (int) (seq & (size - 1));
+		int bucketStart = start - offset;
+		// A bucket which started before the oldest value (only seen while
+		// rebuilding) is never drawn, it is just filled from the first value
+		if (offset == 0 || bucketStart < 0) {
+			openStart[level] = seq - offset;
+			openMin[level] = minIndex - bucketStart;
+			openMax[level] = maxIndex - bucketStart;
+			openBorder[level] = childBorder;
+		} else {
+			if (values.y(minIndex) < values.y(bucketStart + openMin[level])) {
+				openMin[level] = minIndex - bucketStart;
+			}
+			if (values.y(maxIndex) > values.y(bucketStart + openMax[level])) {
+				openMax[level] = maxIndex - bucketStart;
+			}
+			openBorder[level] |= childBorder;
+		}
+		int childSize = level == 0 ? 1 : bucketSize(level - 1);
+		if (offset + childSize != size) {
+			return;
+		}
+		// Only complete buckets are drawn, so the bucket is stored now
+		int min = openMin[level];
+		int max = openMax[level];
+		boolean broken = openBorder[level];
+		openStart[level] = -1;
+		int slot = slot(level, seq);
+		minOffset[level].set(slot, min);
+		maxOffset[level].set(slot, max);
+		border[level].set(slot, broken ? 1 : 0);
+		if (level + 1 < levels) {
+			merge(level + 1, seq - offset, bucketStart, bucketStart + min, bucketStart + max, broken);
+		}
+	}
+
+	private int slot(int level, long seq) {
+		return (int) ((seq >>> shift(level)) % slots[level]);
+	}
+}
@@ -0,0 +1,220 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import de.ewmksoft.xyplot.core.XYPlotData.OverflowPolicy;
+
+/**
+ * Bounded lock free queue in front of a {@link XYPlotData} ring buffer. Any
+ * number of threads may add values without taking a lock. The values are
+ * moved in batches into the ring buffer by the owning data handler.
+ * <p>
+ * Each slot carries a sequence number telling producers and the consumer
+ * whether the slot is free or filled for a given position.
+ */
+class XYPlotDataQueue {
+	private static final long BLOCK_PARK_NANOS = 10000;
+	// Maximum time a producer waits for room with OverflowPolicy.BLOCK
+	static final long BLOCK_TIMEOUT_NANOS = 1000000000L;
+
+	private final int mask;
+	private final double[] x;
+	private final double[] y;
+	private final AtomicLongArray sequence;
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong drops = new AtomicLong();
+	private final OverflowPolicy policy;
+	private final long blockTimeout;
+
+	/**
+	 * Create a queue.
+	 * 
+	 * @param capacity Minimum number of values the queue can hold. It is rounded
+	 *                 up to the next power of two.
+	 * @param policy   Behavior if a value is added to a full queue
+	 */
+	XYPlotDataQueue(int capacity, OverflowPolicy policy) {
+		this(capacity, policy, BLOCK_TIMEOUT_NANOS);
+	}
+
+	/**
+	 * Create a queue.
+	 * 
+	 * @param capacity     Minimum number of values the queue can hold. It is
+	 *                     rounded up to the next power of two.
+	 * @param policy       Behavior if a value is added to a full queue
+	 * @param blockTimeout Nanoseconds a producer waits for room with
+	 *                     {@link OverflowPolicy#BLOCK} before the value is
+	 *                     dropped
+	 */
+	XYPlotDataQueue(int capacity, OverflowPolicy policy, long blockTimeout) {
+		int size = 2;
+		while (size < capacity && size < (1 << 30)) {
+			size <<= 1;
+		}
+		this.mask = size - 1;
+		this.x = new double[size];
+		this.y = new double[size];
+		this.sequence = new AtomicLongArray(size);
+		for (int i = 0; i < size; ++i) {
+			sequence.set(i, i);
+		}
+		this.policy = policy;
+		this.blockTimeout = blockTimeout;
+	}
+
+	/**
+	 * Add a value to the queue.
+	 * 
+	 * @param xv X value
+	 * @param yv Y value
+	 * @return True if the queue was empty before, i.e. the consumer has to be
+	 *         notified
+	 */
+	boolean offer(double xv, double yv) {
+		long deadline = 0;
+		long pos = tail.get();
+		for (;;) {
+			int index = (int) pos & mask;
+			long diff = sequence.get(index) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					x[index] = xv;
+					y[index] = yv;
+					// A full volatile store, the read of head below must not
+					// be reordered before it. Otherwise the consumer may see
+					// the slot empty while this producer sees the queue not
+					// empty, and nobody wakes up the consumer.
+					sequence.set(index, pos + 1);
+					return head.get() == pos;
+				}
+			} else if (diff < 0) {
+				// Queue is full
+				if (policy == OverflowPolicy.DROP) {
+					drops.incrementAndGet();
+					return false;
+				} else if (policy == OverflowPolicy.DROP_OLDEST) {
+					if (poll(null)) {
+						drops.incrementAndGet();
+					}
+				} else {
+					// Nobody may drain the queue, e.g. while the plot is not
+					// painted, so the producer must not wait forever
+					long now = System.nanoTime();
+					if (deadline == 0) {
+						deadline = now + blockTimeout;
+					} else if (now - deadline >= 0) {
+						drops.incrementAndGet();
+						return false;
+					}
+					LockSupport.parkNanos(BLOCK_PARK_NANOS);
+				}
+			}
+			pos = tail.get();
+		}
+	}
+
+	/**
+	 * Remove the oldest value from the queue.
+	 * 
+	 * @param value Array receiving x and y value or null to drop the value
+	 * @return True if a value has been removed, false if the queue is empty
+	 */
+	boolean poll(double[] value) {
+		long pos = head.get();
+		for (;;) {
+			int index = (int) pos & mask;
+			long diff = sequence.get(index) - (pos + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					if (value != null) {
+						value[0] = x[index];
+						value[1] = y[index];
+					}
+					sequence.lazySet(index, pos + mask + 1);
+					return true;
+				}
+			} else if (diff < 0) {
+				return false;
+			}
+			pos = head.get();
+		}
+	}
+
+	/**
+	 * Get the number of values currently waiting in the queue.
+	 */
+	int depth() {
+		long result = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(result, mask + 1));
+	}
+
+	/**
+	 * Get the number of values dropped because the queue was full, including
+	 * values given up after the timeout of {@link OverflowPolicy#BLOCK}.
+	 */
+	long drops() {
+		return drops.get();
+	}
+}
@@ -0,0 +1,232 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+/**
+ * Reorder window in front of a {@link XYPlotData} ring buffer. Values arriving
+ * slightly out of order are kept in a binary heap sorted by x value and handed
+ * to the ring buffer in ascending order once they are older than the window.
+ * Values with the same x value keep their order of arrival.
+ * <p>
+ * A value with a x value lower than the last value already handed on is late
+ * and can no longer be merged. It is rejected by {@link #offer(double, double)}.
+ * <p>
+ * Without a limit of waiting values, the window holds back at most as many
+ * values as the ring buffer can hold. More values would be dropped from the
+ * ring buffer right after they are handed on, so this keeps the heap from
+ * growing without bounds, e.g. for bursts of values within maxDelay.
+ * <p>
+ * The class is not thread safe, synchronization is done by the owning
+ * {@link XYPlotData} object.
+ */
+class XYPlotDataReorder {
+	private final double maxDelay;
+	private final int maxPending;
+	private double[] x;
+	private double[] y;
+	private long[] order;
+	private int size;
+	private long nextOrder;
+	private double newest;
+	private double released;
+
+	/**
+	 * Create a reorder window. A value is held back until it is more than
+	 * maxDelay older than the newest value or until more than maxPending values
+	 * are waiting, whatever comes first.
+	 * 
+	 * @param maxDelay   Width of the window in x units, 0 for no limit
+	 * @param maxPending Maximum number of values held back, 0 for no limit
+	 * @param released   X value of the last value in the ring buffer
+	 */
+	XYPlotDataReorder(double maxDelay, int maxPending, double released) {
+		this.maxDelay = Math.max(maxDelay, 0);
+		this.maxPending = Math.max(maxPending, 0);
+		int size = maxPending > 0 ? Math.min(maxPending + 1, 1024) : 64;
+		this.x = new double[size];
+		this.y = new double[size];
+		this.order = new long[size];
+		clear(released);
+	}
+
+	/**
+	 * Remove all waiting values.
+	 * 
+	 * @param released X value of the last value in the ring buffer
+	 */
+	void clear(double released) {
+		size = 0;
+		newest = released;
+		this.released = released;
+	}
+
+	/**
+	 * Add a value to the window.
+	 * 
+	 * @param xv X value
+	 * @param yv Y value
+	 * @return False if the value is late and has not been added
+	 */
+	boolean offer(double xv, double yv) {
+		if (xv < released) {
+			return false;
+		}
+		if (size == x.length) {
+			grow();
+		}
+		// Sift up
+		long o = nextOrder++;
+		int i = size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!less(xv, o, x[parent], order[parent])) {
+				break;
+			}
+			set(i, x[parent], y[parent], order[parent]);
+			i = parent;
+		}
+		set(i, xv, yv, o);
+		if (xv > newest) {
+			newest = xv;
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the oldest value if it has left the window.
+	 * 
+	 * @param value    Array receiving x and y value
+	 * @param capacity Capacity of the ring buffer, the limit of waiting values
+	 *                 if maxPending is 0
+	 * @return True if a value has been removed
+	 */
+	boolean poll(double[] value, int capacity) {
+		if (size == 0) {
+			return false;
+		}
+		int limit = maxPending > 0 ? maxPending : Math.max(capacity, 1);
+		boolean due = size > limit || (maxDelay > 0 && x[0] < newest - maxDelay);
+		return due && flush(value);
+	}
+
+	/**
+	 * Remove the oldest value regardless of the window.
+	 * 
+	 * @param value Array receiving x and y value
+	 * @return True if a value has been removed, false if the window is empty
+	 */
+	boolean flush(double[] value) {
+		if (size == 0) {
+			return false;
+		}
+		value[0] = x[0];
+		value[1] = y[0];
+		released = x[0];
+		// Sift down the last value
+		size--;
+		double lx = x[size];
+		double ly = y[size];
+		long lo = order[size];
+		int i = 0;
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && less(x[child + 1], order[child + 1], x[child], order[child])) {
+				child++;
+			}
+			if (!less(x[child], order[child], lx, lo)) {
+				break;
+			}
+			set(i, x[child], y[child], order[child]);
+			i = child;
+		}
+		set(i, lx, ly, lo);
+		return true;
+	}
+
+	/**
+	 * Get the number of values waiting in the window.
+	 */
+	int depth() {
+		return size;
+	}
+
+	private static boolean less(double x1, long o1, double x2, long o2) {
+		return x1 < x2 || (x1 == x2 && o1 < o2);
+	}
+
+	private void set(int i, double xv, double yv, long o) {
+		x[i] = xv;
+		y[i] = yv;
+		order[i] = o;
+	}
+
+	private void grow() {
+		int n = x.length * 2;
+		double[] nx = new double[n];
+		double[] ny = new double[n];
+		long[] no = new long[n];
+		System.arraycopy(x, 0, nx, 0, size);
+		System.arraycopy(y, 0, ny, 0, size);
+		System.arraycopy(order, 0, no, 0, size);
+		x = nx;
+		y = ny;
+		order = no;
+	}
+}
@@ -0,0 +1,431 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Circular buffer holding the x/y values of one data handler. The break
+ * (border) flags are packed into a bit set. All methods use logical indices,
+ * where index 0 is the oldest value in the buffer.
+ * <p>
+ * The memory for the values is provided by the subclasses, see
+ * {@link XYPlotDataHeapRing}, {@link XYPlotDataDirectRing} and
+ * {@link XYPlotDataCompressedRing}. They only deal with physical positions.
+ * A subclass may provide more physical positions (span) than the capacity, the
+ * free positions are then ahead of the newest value.
+ * <p>
+ * The class is not thread safe, synchronization is done by the owning
+ * {@link XYPlotData} object.
+ */
+abstract class XYPlotDataRing {
+	private int capacity;
+	private int span;
+	private int head;
+	private int size;
+	private long first;
+
+	/**
+	 * Create a ring buffer.
+	 * 
+	 * @param capacity Maximum number of values in the buffer
+	 */
+	XYPlotDataRing(int capacity) {
+		this(capacity, capacity);
+	}
+
+	/**
+	 * Create a ring buffer with more physical positions than values.
+	 * 
+	 * @param capacity Maximum number of values in the buffer
+	 * @param span     Number of physical positions, at least the capacity
+	 */
+	XYPlotDataRing(int capacity, int span) {
+		this.capacity = Math.max(capacity, 0);
+		this.span = Math.max(span, this.capacity);
+	}
+
+	/**
+	 * Get the number of long words of the border bit set.
+	 * 
+	 * @param capacity Capacity of the buffer
+	 */
+	static int borderWords(int capacity) {
+		return (Math.max(capacity, 0) + 63) >>> 6;
+	}
+
+	/**
+	 * Remove all values from the buffer.
+	 */
+	void clear() {
+		head = 0;
+		size = 0;
+		first = 0;
+		for (int i = 0; i < borderWords(span); ++i) {
+			setBorderBits(i, 0);
+		}
+	}
+
+	/**
+	 * Remove all values and free the memory. The buffer has no capacity
+	 * afterwards.
+	 */
+	void release() {
+		clear();
+		capacity = 0;
+		span = 0;
+		free();
+	}
+
+	/**
+	 * Get the maximum number of values in the buffer.
+	 */
+	int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Get the current number of values in the buffer.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Get the sequence number of the oldest value. Each appended value gets the
+	 * next sequence number, so this is the number of values dropped since the
+	 * last {@link #clear()}.
+	 */
+	long first() {
+		return first;
+	}
+
+	/**
+	 * Remove the oldest values from the buffer.
+	 * 
+	 * @param num Number of values to remove
+	 */
+	void drop(int num) {
+		num = Math.min(Math.max(num, 0), size);
+		head = physical(num);
+		first += num;
+		size -= num;
+	}
+
+	/**
+	 * Change the capacity without copying the values. The caller must have
+	 * dropped the values exceeding the new capacity before.
+	 * 
+	 * @param capacity New maximum number of values
+	 * @return False if the storage does not support changing the capacity
+	 */
+	boolean resize(int capacity) {
+		return false;
+	}
+
+	/**
+	 * Set a new layout of the physical positions after the subclass has moved
+	 * its storage (see {@link #resize(int)}).
+	 * 
+	 * @param capacity New maximum number of values
+	 * @param span     New number of physical positions
+	 * @param head     New physical position of the oldest value
+	 */
+	void setLayout(int capacity, int span, int head) {
+		this.capacity = capacity;
+		this.span = span;
+		this.head = head;
+	}
+
+	/**
+	 * Get the number of physical positions.
+	 */
+	int span() {
+		return span;
+	}
+
+	/**
+	 * Get the physical position of the oldest value.
+	 */
+	int head() {
+		return head;
+	}
+
+	/**
+	 * Get the average number of bytes used per value. This is used to convert a
+	 * memory limit into a number of values.
+	 */
+	double bytesPerValue() {
+		return 16;
+	}
+
+	/**
+	 * Check if the buffer is completely filled.
+	 */
+	boolean isFull() {
+		return size == capacity;
+	}
+
+	/**
+	 * Append a value. If the buffer is full, the oldest value is dropped.
+	 * 
+	 * @param xv X value
+	 * @param yv Y value
+	 * @return True if the oldest value has been dropped
+	 */
+	boolean add(double xv, double yv) {
+		if (capacity == 0) {
+			return false;
+		}
+		boolean dropped = false;
+		int pos = physical(size);
+		if (size == capacity) {
+			head = next(head);
+			first++;
+			dropped = true;
+		} else {
+			size++;
+		}
+		store(pos, xv, yv);
+		clearBorder(pos);
+		return dropped;
+	}
+
+	/**
+	 * Append a block of values. If the block does not fit into the free space,
+	 * the oldest values are overwritten. If the block is larger than the buffer,
+	 * only its last values are stored.
+	 * 
+	 * @param xs  Array with x values
+	 * @param ys  Array with y values
+	 * @param off Offset of the first value in the arrays
+	 * @param len Number of values
+	 * @return Number of values dropped from the buffer
+	 */
+	int add(double[] xs, double[] ys, int off, int len) {
+		return add(xs, ys, null, null, off, len);
+	}
+
+	/**
+	 * Append a block of values read from the current positions of two buffers.
+	 * The positions of the buffers are advanced by len.
+	 * 
+	 * @param xs  Buffer with x values
+	 * @param ys  Buffer with y values
+	 * @param len Number of values
+	 * @return Number of values dropped from the buffer
+	 */
+	int add(DoubleBuffer xs, DoubleBuffer ys, int len) {
+		return add(null, null, xs, ys, 0, len);
+	}
+
+	private int add(double[] xa, double[] ya, DoubleBuffer xb, DoubleBuffer yb, int off, int len) {
+		if (capacity == 0 || len <= 0) {
+			return 0;
+		}
+		int skip = Math.max(0, len - capacity);
+		off += skip;
+		len -= skip;
+		if (xb != null) {
+			xb.position(xb.position() + skip);
+			yb.position(yb.position() + skip);
+		}
+		int dropped = Math.max(0, size + len - capacity);
+		int pos = physical(size);
+		int part = Math.min(len, span - pos);
+		copy(xa, ya, xb, yb, off, pos, part);
+		copy(xa, ya, xb, yb, off + part, 0, len - part);
+		for (int i = 0; i < len; ++i) {
+			clearBorder(pos);
+			pos = next(pos);
+		}
+		head = physical(dropped);
+		first += dropped;
+		size += len - dropped;
+		return dropped;
+	}
+
+	private void copy(double[] xa, double[] ya, DoubleBuffer xb, DoubleBuffer yb, int off, int pos, int len) {
+		if (len <= 0) {
+			return;
+		}
+		if (xb != null) {
+			copy(xb, yb, pos, len);
+		} else {
+			copy(xa, ya, off, pos, len);
+		}
+	}
+
+	/**
+	 * Get the x value at a logical position.
+	 * 
+	 * @param index Logical index (0 is the oldest value)
+	 */
+	double x(int index) {
+		return xAt(physical(index));
+	}
+
+	/**
+	 * Get the y value at a logical position.
+	 * 
+	 * @param index Logical index (0 is the oldest value)
+	 */
+	double y(int index) {
+		return yAt(physical(index));
+	}
+
+	/**
+	 * Replace the y value at a logical position.
+	 * 
+	 * @param index Logical index (0 is the oldest value)
+	 * @param value New y value
+	 */
+	void setY(int index, double value) {
+		storeY(physical(index), value);
+	}
+
+	/**
+	 * Check if there is a break after the value at a logical position.
+	 * 
+	 * @param index Logical index (0 is the oldest value)
+	 */
+	boolean border(int index) {
+		int pos = physical(index);
+		return (borderBits(pos >>> 6) & (1L << pos)) != 0;
+	}
+
+	/**
+	 * Mark a break after the value at a logical position.
+	 * 
+	 * @param index Logical index (0 is the oldest value)
+	 */
+	void setBorder(int index) {
+		int pos = physical(index);
+		setBorderBits(pos >>> 6, borderBits(pos >>> 6) | (1L << pos));
+	}
+
+	private void clearBorder(int pos) {
+		setBorderBits(pos >>> 6, borderBits(pos >>> 6) & ~(1L << pos));
+	}
+
+	/**
+	 * Convert a logical into a physical array index.
+	 */
+	private int physical(int index) {
+		int pos = head + index;
+		if (pos >= span) {
+			pos -= span;
+		}
+		return pos;
+	}
+
+	private int next(int pos) {
+		pos++;
+		if (pos == span) {
+			pos = 0;
+		}
+		return pos;
+	}
+
+	/**
+	 * Get the x value at a physical position.
+	 */
+	abstract double xAt(int pos);
+
+	/**
+	 * Get the y value at a physical position.
+	 */
+	abstract double yAt(int pos);
+
+	/**
+	 * Store a value at a physical position.
+	 */
+	abstract void store(int pos, double xv, double yv);
+
+	/**
+	 * Store a y value at a physical position.
+	 */
+	abstract void storeY(int pos, double yv);
+
+	/**
+	 * Copy values from arrays to consecutive physical positions.
+	 */
+	abstract void copy(double[] xs, double[] ys, int off, int pos, int len);
+
+	/**
+	 * Copy values from the current positions of buffers to consecutive physical
+	 * positions. The positions of the buffers are advanced by len.
+	 */
+	abstract void copy(DoubleBuffer xs, DoubleBuffer ys, int pos, int len);
+
+	/**
+	 * Get a word of the border bit set.
+	 */
+	abstract long borderBits(int word);
+
+	/**
+	 * Set a word of the border bit set.
+	 */
+	abstract void setBorderBits(int word, long bits);
+
+	/**
+	 * Free the memory of the values.
+	 */
+	abstract void free();
+}
@@ -0,0 +1,412 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.io.File;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Data handler showing the magnitude spectrum of the newest values of a source
+ * data handler, e.g. for vibration monitoring in a second plot. The spectrum is
+ * computed by a radix-2 real FFT over a frame of a fixed number of values,
+ * weighted by a selectable window. The x values are frequencies in cycles per x
+ * unit, the y values are amplitudes, i.e. a sine of amplitude 1 gives a peak of
+ * about 1 (exactly 1 with {@link Window#FLAT_TOP}).
+ * <p>
+ * A new spectrum is computed by {@link #update()} when the source has got
+ * enough new values for the next frame (see overlap). The transformation costs
+ * O(size log size) per frame, so update() is meant to be called on the
+ * acquisition side, e.g. after a block of values has been added to the source,
+ * and never while painting: the plot only draws the last computed spectrum. If
+ * several frames have arrived since the last call, only the newest one is
+ * transformed. Once the handler is painted by a plot, no new spectrum is
+ * computed before the last one has been painted, so the transformations are
+ * limited to the display update rate; the frames arriving in between are
+ * skipped. All values are replaced by the new spectrum at once. The work
+ * arrays are allocated once, so no memory is allocated per spectrum.
+ * <p>
+ * The frame must not contain a break (see {@link XYPlotData#setPause()}), the
+ * values before a break are not used. The sampling interval is taken from the
+ * x values of the frame.
+ * 
+ * Example:
+ * 
+ * <pre>
+ * XYPlotDataSpectrum spectrum = new XYPlotDataSpectrum(data, 4096, Window.HANN, 0.5);
+ * spectrumPlot.setDataHandlers(new XYPlotData[] { spectrum });
+ * ...
+ * data.addValues(xs, ys, 0, len);
+ * spectrum.update();
+ * </pre>
+ */
+public class XYPlotDataSpectrum extends XYPlotData {
+	// Relative change of the sampling interval ignored to keep the frequencies
+	private static final double INTERVAL_TOLERANCE = 1E-6;
+
+	/**
+	 * Window applied to a frame before the transformation.
+	 */
+	public enum Window {
+		/** No weighting, best frequency resolution but strong leakage */
+		RECTANGULAR,
+		/** Hann window, a good default */
+		HANN,
+		/** Hamming window, lower first side lobe than Hann */
+		HAMMING,
+		/** Flat top window, accurate amplitudes but wide peaks */
+		FLAT_TOP
+	}
+
+	private final XYPlotData source;
+	private final int size;
+	private final int hop;
+	// Serializes the computation, taken before the lock of any data handler
+	private final Lock updateLock = new ReentrantLock();
+	private long next;
+	private long generation = -1;
+	private boolean seenBorder;
+	// Set by the first paint, then a spectrum is only computed after the last
+	// one has been painted
+	private volatile boolean painting;
+	private volatile boolean painted = true;
+	// Newest values of the source, pos is the oldest one
+	private final double[] frameX;
+	private final double[] frameY;
+	private int pos;
+	private int available;
+	private int fresh;
+	private final double[] readX;
+	private final double[] readY;
+	private final boolean[] readBorder;
+	// Work arrays of the transformation
+	private final double[] window;
+	private final double windowSum;
+	private final double[] cos;
+	private final double[] sin;
+	private final int[] reverse;
+	private final double[] re;
+	private final double[] im;
+	private final double[] frequency;
+	private final double[] magnitude;
+	private double interval = Double.NaN;
+
+	/**
+	 * Create a spectrum handler.
+	 * 
+	 * @param source  Source data handler
+	 * @param size    Number of values per frame, a power of two of at least 4.
+	 *                The spectrum has size / 2 + 1 values.
+	 * @param window  Window applied to the frames
+	 * @param overlap Part of a frame overlapping with the next frame, between 0
+	 *                (no overlap) and less than 1
+	 */
+	public XYPlotDataSpectrum(XYPlotData source, int size, Window window, double overlap) {
+		super(null, size / 2 + 1);
+		if (size < 4 || (size & (size - 1)) != 0) {
+			throw new IllegalArgumentException("Frame size must be a power of two of at least 4");
+		}
+		if (!(overlap >= 0 && overlap < 1)) {
+			throw new IllegalArgumentException("Overlap must be at least 0 and less than 1");
+		}
+		this.source = source;
+		this.size = size;
+		this.hop = (int) Math.max(1, Math.round(size * (1 - overlap)));
+		this.frameX = new double[size];
+		this.frameY = new double[size];
+		this.readX = new double[size];
+		this.readY = new double[size];
+		this.readBorder = new boolean[size];
+		this.window = new double[size];
+		double sum = 0;
+		for (int i = 0; i < size; ++i) {
+			this.window[i] = weight(window, 2 * Math.PI * i / size);
+			sum += this.window[i];
+		}
+		this.windowSum = sum;
+		int half = size / 2;
+		this.cos = new double[half];
+		this.sin = new double[half];
+		for (int i = 0; i < half; ++i) {
+			cos[i] = Math.cos(2 * Math.PI * i / size);
+			sin[i] = Math.sin(2 * Math.PI * i / size);
+		}
+		this.reverse = new int[half];
+		int bits = Integer.numberOfTrailingZeros(half);
+		for (int i = 0; i < half; ++i) {
+			reverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+		}
+		this.re = new double[half];
+		this.im = new double[half];
+		this.frequency = new double[half + 1];
+		this.magnitude = new double[half + 1];
+	}
+
+	private static double weight(Window window, double phase) {
+		switch (window) {
+		case HANN:
+			return 0.5 - 0.5 * Math.cos(phase);
+		case HAMMING:
+			return 0.54 - 0.46 * Math.cos(phase);
+		case FLAT_TOP:
+			return 0.21557895 - 0.41663158 * Math.cos(phase) + 0.277263158 * Math.cos(2 * phase) - 0.083578947
+					* Math.cos(3 * phase) + 0.006947368 * Math.cos(4 * phase);
+		default:
+			return 1;
+		}
+	}
+
+	/**
+	 * Compute a new spectrum if the source has got enough new values and the last
+	 * spectrum has been painted, if the handler is shown in a plot. This runs the
+	 * transformation in the calling thread, which should be the one adding the
+	 * values to the source.
+	 * 
+	 * @return True if a new spectrum has been computed
+	 */
+	public boolean update() {
+		boolean result = compute();
+		if (result) {
+			notifyOwner();
+		}
+		return result;
+	}
+
+	@Override
+	public int addValue(double x, double y) {
+		throw notAdded();
+	}
+
+	@Override
+	public int addValue(double x, String label) {
+		throw notAdded();
+	}
+
+	@Override
+	public int addValues(double[] xs, double[] ys, int off, int len) {
+		throw notAdded();
+	}
+
+	@Override
+	public int addValues(DoubleBuffer xs, DoubleBuffer ys) {
+		throw notAdded();
+	}
+
+	@Override
+	public void changeValues(double[] y) {
+		throw notAdded();
+	}
+
+	@Override
+	public void setIngestionQueue(int capacity, OverflowPolicy policy) {
+		throw notAdded();
+	}
+
+	@Override
+	public void setReorderWindow(double maxDelay, int maxPending) {
+		throw notAdded();
+	}
+
+	@Override
+	public void setRetention(double maxAge, int maxCount, long maxBytes) {
+		throw notAdded();
+	}
+
+	@Override
+	public void setMaxNumber(int maxNum) {
+		throw notAdded();
+	}
+
+	@Override
+	public void setArchive(File directory, long memoryBudget) {
+		throw notAdded();
+	}
+
+	private static IllegalStateException notAdded() {
+		return new IllegalStateException("Values of a spectrum are computed from its source");
+	}
+
+	@Override
+	void refresh() {
+		super.refresh();
+		painting = true;
+		painted = true;
+	}
+
+	/**
+	 * Read the new values of the source and compute a spectrum if there are
+	 * enough of them. The lock of this handler is taken only for storing the
+	 * spectrum, never together with the lock of the source.
+	 */
+	private boolean compute() {
+		source.refresh();
+		updateLock.lock();
+		try {
+			read();
+			if (available < size || fresh < hop || (painting && !painted)) {
+				return false;
+			}
+			fresh = 0;
+			transform();
+			replaceValues(frequency, magnitude, frequency.length);
+			painted = false;
+			return true;
+		} finally {
+			updateLock.unlock();
+		}
+	}
+
+	/**
+	 * Move the new values of the source into the frame buffer. Only the newest
+	 * values after the last break are kept. The caller must hold the update
+	 * lock.
+	 */
+	private void read() {
+		int num;
+		source.lock();
+		try {
+			long first = source.firstSequence();
+			int length = source.ringLength();
+			if (source.valuesGeneration() != generation || next < first) {
+				// The values have been replaced or dropped before they were read
+				generation = source.valuesGeneration();
+				next = first;
+				available = 0;
+				seenBorder = false;
+			}
+			// A break may be set after the last value has been read
+			long last = next - 1;
+			if (last >= first && !seenBorder && source.ringBorder((int) (last - first))) {
+				available = 0;
+				seenBorder = true;
+			}
+			long start = Math.max(next, first + length - size);
+			num = (int) (first + length - start);
+			source.readRing((int) (start - first), num, readX, readY, readBorder);
+			next = first + length;
+		} finally {
+			source.unlock();
+		}
+		for (int i = 0; i < num; ++i) {
+			frameX[pos] = readX[i];
+			frameY[pos] = readY[i];
+			pos = (pos + 1) & (size - 1);
+			available = readBorder[i] ? 0 : Math.min(available + 1, size);
+		}
+		fresh += num;
+		if (num > 0) {
+			seenBorder = readBorder[num - 1];
+		}
+	}
+
+	/**
+	 * Compute the spectrum of the frame into frequency and magnitude. The real
+	 * values are packed into a complex array of half the size, transformed and
+	 * separated again afterwards.
+	 */
+	private void transform() {
+		int half = size / 2;
+		for (int i = 0; i < half; ++i) {
+			int a = (pos + 2 * i) & (size - 1);
+			int b = (a + 1) & (size - 1);
+			re[reverse[i]] = frameY[a] * window[2 * i];
+			im[reverse[i]] = frameY[b] * window[2 * i + 1];
+		}
+		for (int len = 2; len <= half; len <<= 1) {
+			int step = size / len;
+			int m = len >>> 1;
+			for (int i = 0; i < half; i += len) {
+				for (int j = 0; j < m; ++j) {
+					double wr = cos[j * step];
+					double wi = -sin[j * step];
+					int u = i + j;
+					int v = u + m;
+					double tr = wr * re[v] - wi * im[v];
+					double ti = wr * im[v] + wi * re[v];
+					re[v] = re[u] - tr;
+					im[v] = im[u] - ti;
+					re[u] += tr;
+					im[u] += ti;
+				}
+			}
+		}
+		for (int k = 0; k <= half; ++k) {
+			double a = re[k % half];
+			double b = im[k % half];
+			double c = re[(half - k) % half];
+			double d = im[(half - k) % half];
+			double wr = k < half ? cos[k] : -1;
+			double wi = k < half ? sin[k] : 0;
+			double or = (b + d) / 2;
+			double oi = (c - a) / 2;
+			double xr = (a + c) / 2 + wr * or + wi * oi;
+			double xi = (b - d) / 2 + wr * oi - wi * or;
+			double scale = (k == 0 || k == half) ? 1 : 2;
+			magnitude[k] = scale * Math.sqrt(xr * xr + xi * xi) / windowSum;
+		}
+		double dx = (frameX[(pos + size - 1) & (size - 1)] - frameX[pos]) / (size - 1);
+		if (!(Math.abs(dx - interval) <= INTERVAL_TOLERANCE * Math.abs(interval))) {
+			interval = dx;
+			for (int k = 0; k <= half; ++k) {
+				frequency[k] = dx > 0 ? k / (size * dx) : k;
+			}
+		}
+	}
+}
@@ -0,0 +1,320 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.util.Arrays;
+
+/**
+ * Incrementally maintained statistics of the y values of a
+ * {@link XYPlotDataRing}. The mean and variance of all values in the buffer
+ * are kept by Welford's algorithm, values dropped from the buffer are removed
+ * again. For range queries the values are grouped into the same blocks as in
+ * {@link XYPlotDataIndex}: each completed block keeps its count, mean and sum
+ * of squared deviations, which are merged in a segment tree, and a summary of
+ * {@link #QUANTILES} evenly spaced quantiles of its values. The summaries are
+ * stored with float precision to keep them at half a byte per value. The
+ * arrays are chunked (see {@link XYPlotDataChunks}), so the heap usage grows
+ * with the values added, up to at most one byte per value of the capacity.
+ * <p>
+ * Percentiles of a range are approximated from the block summaries and the
+ * values of the partially covered blocks at both ends of the range. The rank
+ * error stays below 1/64 of the values of the range, usually it is much
+ * smaller. Ranges of more than {@link #MAX_BLOCKS} blocks take the summaries
+ * of evenly spaced blocks only.
+ * <p>
+ * The class is not thread safe, synchronization is done by the owning
+ * {@link XYPlotData} object.
+ */
+class XYPlotDataStatistics {
+	static final int QUANTILES = 32;
+	private static final int BLOCK_SHIFT = XYPlotDataIndex.BLOCK_SHIFT;
+	private static final int BLOCK_SIZE = XYPlotDataIndex.BLOCK_SIZE;
+	// Larger ranges take the summary of every n-th block only
+	private static final int MAX_BLOCKS = 4096;
+
+	private final XYPlotDataRing values;
+	private final int slots;
+	private final int leaves;
+	private long count;
+	private double mean;
+	private double m2;
+	// QUANTILES summary values per block, written when the block is completed
+	private final XYPlotDataChunks.Floats summary;
+	private final XYPlotDataChunks.Doubles treeCount;
+	private final XYPlotDataChunks.Doubles treeMean;
+	private final XYPlotDataChunks.Doubles treeM2;
+	// Values, count, mean and squared deviations of the block filled at the
+	// moment
+	private final double[] blockValues = new double[BLOCK_SIZE];
+	private int blockCount;
+	private double blockMean;
+	private double blockM2;
+
+	/**
+	 * Create the statistics for a ring buffer.
+	 * 
+	 * @param values Ring buffer
+	 */
+	XYPlotDataStatistics(XYPlotDataRing values) {
+		this.values = values;
+		this.slots = (values.capacity() >> BLOCK_SHIFT) + 2;
+		int n = 1;
+		while (n < slots) {
+			n <<= 1;
+		}
+		this.leaves = n;
+		this.summary = new XYPlotDataChunks.Floats(slots * QUANTILES);
+		this.treeCount = new XYPlotDataChunks.Doubles(2 * leaves, 0);
+		this.treeMean = new XYPlotDataChunks.Doubles(2 * leaves, 0);
+		this.treeM2 = new XYPlotDataChunks.Doubles(2 * leaves, 0);
+	}
+
+	/**
+	 * Remove all values.
+	 */
+	void clear() {
+		count = 0;
+		mean = 0;
+		m2 = 0;
+		blockCount = 0;
+		blockMean = 0;
+		blockM2 = 0;
+		summary.clear();
+		treeCount.clear();
+		treeMean.clear();
+		treeM2.clear();
+	}
+
+	/**
+	 * Recalculate the statistics from all values in the ring buffer. This is
+	 * required after values have been changed in place.
+	 */
+	void rebuild() {
+		clear();
+		for (int i = 0; i < values.size(); ++i) {
+			add(i);
+		}
+	}
+
+	/**
+	 * Add a value which has been appended to the ring buffer.
+	 * 
+	 * @param index Logical index of the new value
+	 */
+	void add(int index) {
+		double y = values.y(index);
+		count++;
+		double delta = y - mean;
+		mean += delta / count;
+		m2 += delta * (y - mean);
+
+		long seq = values.first() + index;
+		int slot = (int) ((seq >>> BLOCK_SHIFT) % slots);
+		int offset = (int) (seq & (BLOCK_SIZE - 1));
+		if (offset == 0) {
+			blockCount = 0;
+			blockMean = 0;
+			blockM2 = 0;
+			setLeaf(slot, 0, 0, 0);
+		}
+		int n = ++blockCount;
+		delta = y - blockMean;
+		blockMean += delta / n;
+		blockM2 += delta * (y - blockMean);
+		blockValues[offset] = y;
+		if (offset == BLOCK_SIZE - 1 && n == BLOCK_SIZE) {
+			summarize(slot);
+			setLeaf(slot, n, blockMean, blockM2);
+		}
+	}
+
+	/**
+	 * Remove the oldest values before they are dropped from the ring buffer.
+	 * 
+	 * @param num Number of values to be dropped
+	 */
+	void drop(int num) {
+		for (int i = 0; i < num; ++i) {
+			double y = values.y(i);
+			if (count <= 1) {
+				count = 0;
+				mean = 0;
+				m2 = 0;
+				continue;
+			}
+			double delta = y - mean;
+			mean -= delta / --count;
+			m2 = Math.max(m2 - delta * (y - mean), 0);
+		}
+	}
+
+	/**
+	 * Get the statistics of all values in the ring buffer, without percentiles.
+	 * 
+	 * @param result Statistics receiving the count, mean and variance
+	 */
+	void total(XYPlotData.Statistics result) {
+		result.merge(count, mean, m2);
+	}
+
+	/**
+	 * Add the values of a range of logical indices to the statistics.
+	 * 
+	 * @param from        First index
+	 * @param to          Last index (inclusive)
+	 * @param result      Statistics receiving the values
+	 * @param percentiles True to add the samples for the percentiles, false
+	 *                    for count, mean and variance only
+	 */
+	void range(int from, int to, XYPlotData.Statistics result, boolean percentiles) {
+		long first = values.first();
+		long blockFrom = (first + from + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+		long blockTo = ((first + to + 1) >>> BLOCK_SHIFT) - 1;
+		if (blockFrom > blockTo) {
+			scan(from, to, result, percentiles);
+			return;
+		}
+		scan(from, (int) ((blockFrom << BLOCK_SHIFT) - first) - 1, result, percentiles);
+		scan((int) (((blockTo + 1) << BLOCK_SHIFT) - first), to, result, percentiles);
+		int slotFrom = (int) (blockFrom % slots);
+		int slotTo = (int) (blockTo % slots);
+		if (slotFrom <= slotTo) {
+			query(slotFrom, slotTo, result);
+		} else {
+			query(slotFrom, slots - 1, result);
+			query(0, slotTo, result);
+		}
+		if (!percentiles) {
+			return;
+		}
+		long blocks = blockTo - blockFrom + 1;
+		long stride = (blocks + MAX_BLOCKS - 1) / MAX_BLOCKS;
+		for (long b = blockFrom; b <= blockTo; b += stride) {
+			double weight = (double) BLOCK_SIZE / QUANTILES * Math.min(stride, blockTo + 1 - b);
+			int base = (int) (b % slots) * QUANTILES;
+			for (int k = 0; k < QUANTILES; ++k) {
+				result.addSample(summary.get(base + k), weight);
+			}
+		}
+	}
+
+	private void scan(int from, int to, XYPlotData.Statistics result, boolean percentiles) {
+		for (int i = from; i <= to; ++i) {
+			double y = values.y(i);
+			result.add(y);
+			if (percentiles) {
+				result.addSample(y, 1);
+			}
+		}
+	}
+
+	private void summarize(int slot) {
+		Arrays.sort(blockValues);
+		// Each summary value stands for the middle of BLOCK_SIZE / QUANTILES values
+		int step = BLOCK_SIZE / QUANTILES;
+		for (int k = 0; k < QUANTILES; ++k) {
+			int i = k * step + step / 2;
+			summary.set(slot * QUANTILES + k, (float) ((blockValues[i - 1] + blockValues[i]) / 2));
+		}
+	}
+
+	private void query(int from, int to, XYPlotData.Statistics result) {
+		int lo = from + leaves;
+		int hi = to + leaves + 1;
+		while (lo < hi) {
+			if ((lo & 1) != 0) {
+				result.merge(treeCount.get(lo), treeMean.get(lo), treeM2.get(lo));
+				lo++;
+			}
+			if ((hi & 1) != 0) {
+				--hi;
+				result.merge(treeCount.get(hi), treeMean.get(hi), treeM2.get(hi));
+			}
+			lo >>>= 1;
+			hi >>>= 1;
+		}
+	}
+
+	private void setLeaf(int slot, double n, double m, double s) {
+		int node = slot + leaves;
+		treeCount.set(node, n);
+		treeMean.set(node, m);
+		treeM2.set(node, s);
+		node >>>= 1;
+		while (node > 0) {
+			int a = 2 * node;
+			int b = a + 1;
+			double na = treeCount.get(a);
+			double nb = treeCount.get(b);
+			double total = na + nb;
+			if (total == 0) {
+				treeCount.set(node, 0);
+				treeMean.set(node, 0);
+				treeM2.set(node, 0);
+			} else {
+				double ma = treeMean.get(a);
+				double delta = treeMean.get(b) - ma;
+				treeCount.set(node, total);
+				treeMean.set(node, ma + delta * nb / total);
+				treeM2.set(node, treeM2.get(a) + treeM2.get(b) + delta * delta * na * nb / total);
+			}
+			node >>>= 1;
+		}
+	}
+}
@@ -0,0 +1,521 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.io.File;
+import java.nio.DoubleBuffer;
+
+/**
+ * Data handler working like the triggered acquisition of an oscilloscope.
+ * Values added to the handler are checked for the trigger condition one by one
+ * while they are added and kept in a capture ring of one frame. When a trigger
+ * has been found and the values after the trigger have arrived, the frame is
+ * shown: the values before the trigger (pre-trigger) and the values starting
+ * with the trigger value (post-trigger). All values shown are replaced by the
+ * new frame at once, so a plot never shows parts of two frames. The x values of
+ * a frame are relative to the trigger value.
+ * <p>
+ * Values added to the handler do not pass an ingestion queue or a reorder
+ * window, switch values are not supported.
+ * 
+ * Example:
+ * 
+ * <pre>
+ * XYPlotDataTrigger scope = new XYPlotDataTrigger(200, 800);
+ * scope.setTrigger(Trigger.RISING_EDGE, 0.5);
+ * scope.setMode(Mode.NORMAL);
+ * plot.setDataHandlers(new XYPlotData[] { scope });
+ * scope.addValues(times, samples, 0, num);
+ * </pre>
+ */
+public class XYPlotDataTrigger extends XYPlotData {
+
+	/**
+	 * Condition starting a frame.
+	 */
+	public enum Trigger {
+		/** The value crosses the level upwards */
+		RISING_EDGE,
+		/** The value crosses the level downwards */
+		FALLING_EDGE,
+		/** The value crosses the level in any direction */
+		ANY_EDGE,
+		/** The value is at or above the level */
+		ABOVE,
+		/** The value is at or below the level */
+		BELOW,
+		/** The value leaves the window between low and high level */
+		LEAVE_WINDOW,
+		/** The value enters the window between low and high level */
+		ENTER_WINDOW
+	}
+
+	/**
+	 * Acquisition mode.
+	 */
+	public enum Mode {
+		/** A frame is shown for each trigger */
+		NORMAL,
+		/**
+		 * Like {@link #NORMAL}, but if there was no trigger for the length of a
+		 * frame, the newest values are shown without trigger
+		 */
+		AUTO,
+		/**
+		 * Only the first frame after {@link XYPlotDataTrigger#arm()} is shown
+		 */
+		SINGLE
+	}
+
+	private final int pre;
+	private final int post;
+	private final double[] captureX;
+	private final double[] captureY;
+	private int pos;
+	private int filled;
+	private final double[] frameX;
+	private final double[] frameY;
+	private Trigger trigger = Trigger.RISING_EDGE;
+	private double low;
+	private double high;
+	private Mode mode = Mode.NORMAL;
+	private double holdoff;
+	private boolean armed = true;
+	// Number of values still missing for the frame, -1 while waiting
+	private int remaining = -1;
+	private int untriggered;
+	private double last = Double.NaN;
+	private double lastTriggerX = Double.NaN;
+	// Trigger of the frame being captured, the one shown stays until it is done
+	private double pendingTriggerX = Double.NaN;
+	private double triggerX = Double.NaN;
+	private long frames;
+
+	/**
+	 * Create a triggered handler.
+	 * 
+	 * @param preTrigger  Number of values shown before the trigger value
+	 * @param postTrigger Number of values shown starting with the trigger value,
+	 *                    at least 1
+	 */
+	public XYPlotDataTrigger(int preTrigger, int postTrigger) {
+		super(null, Math.max(preTrigger, 0) + postTrigger);
+		if (preTrigger < 0 || postTrigger < 1) {
+			throw new IllegalArgumentException("Invalid number of values before or after the trigger");
+		}
+		this.pre = preTrigger;
+		this.post = postTrigger;
+		int size = pre + post;
+		this.captureX = new double[size];
+		this.captureY = new double[size];
+		this.frameX = new double[size];
+		this.frameY = new double[size];
+	}
+
+	/**
+	 * Set the trigger condition for a level.
+	 * 
+	 * @param trigger Condition, see {@link Trigger}
+	 * @param level   Level
+	 */
+	public void setTrigger(Trigger trigger, double level) {
+		setTrigger(trigger, level, level);
+	}
+
+	/**
+	 * Set the trigger condition. A frame being captured is completed.
+	 * 
+	 * @param trigger Condition, see {@link Trigger}
+	 * @param low     Level or lower level of a window
+	 * @param high    Upper level of a window, ignored for other conditions
+	 */
+	public void setTrigger(Trigger trigger, double low, double high) {
+		lock();
+		try {
+			this.trigger = trigger;
+			this.low = low;
+			this.high = Math.max(low, high);
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Set the holdoff, i.e. the minimum distance in x units between two
+	 * triggers. Triggers within the holdoff are ignored.
+	 * 
+	 * @param holdoff Holdoff, 0 for none
+	 */
+	public void setHoldoff(double holdoff) {
+		lock();
+		try {
+			this.holdoff = Math.max(holdoff, 0);
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Set the acquisition mode and arm the trigger.
+	 * 
+	 * @param mode Mode, see {@link Mode}
+	 */
+	public void setMode(Mode mode) {
+		lock();
+		try {
+			this.mode = mode;
+			armed = true;
+			untriggered = 0;
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Get the acquisition mode.
+	 */
+	public Mode getMode() {
+		lock();
+		try {
+			return mode;
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Arm the trigger again, e.g. for the next frame in {@link Mode#SINGLE}.
+	 */
+	public void arm() {
+		lock();
+		try {
+			armed = true;
+			untriggered = 0;
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Check if the trigger is armed or a frame is being captured. In
+	 * {@link Mode#SINGLE} the trigger is disarmed after a frame.
+	 */
+	public boolean isArmed() {
+		lock();
+		try {
+			return armed;
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Get the number of frames shown since the handler has been created.
+	 */
+	public long getFrameCount() {
+		lock();
+		try {
+			return frames;
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Get the absolute x value of the trigger of the frame shown.
+	 * 
+	 * @return X value or NaN if the frame has been shown without trigger
+	 */
+	public double getTriggerX() {
+		lock();
+		try {
+			return triggerX;
+		} finally {
+			unlock();
+		}
+	}
+
+	@Override
+	public int addValue(double x, double y) {
+		boolean shown;
+		lock();
+		try {
+			shown = capture(x, y);
+		} finally {
+			unlock();
+		}
+		if (shown) {
+			notifyOwner();
+		}
+		return length();
+	}
+
+	@Override
+	public int addValues(double[] xs, double[] ys, int off, int len) {
+		if (off < 0 || len < 0 || off + len > xs.length || off + len > ys.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		boolean shown = false;
+		lock();
+		try {
+			for (int i = off; i < off + len; ++i) {
+				shown |= capture(xs[i], ys[i]);
+			}
+		} finally {
+			unlock();
+		}
+		if (shown) {
+			notifyOwner();
+		}
+		return length();
+	}
+
+	@Override
+	public int addValues(DoubleBuffer xs, DoubleBuffer ys) {
+		int len = Math.min(xs.remaining(), ys.remaining());
+		boolean shown = false;
+		lock();
+		try {
+			for (int i = 0; i < len; ++i) {
+				shown |= capture(xs.get(), ys.get());
+			}
+		} finally {
+			unlock();
+		}
+		if (shown) {
+			notifyOwner();
+		}
+		return length();
+	}
+
+	@Override
+	public int addValue(double x, String label) {
+		throw new IllegalStateException("Switch values can not be triggered");
+	}
+
+	@Override
+	public void changeValues(double[] y) {
+		throw notSupported();
+	}
+
+	@Override
+	public void setIngestionQueue(int capacity, OverflowPolicy policy) {
+		throw notSupported();
+	}
+
+	@Override
+	public void setReorderWindow(double maxDelay, int maxPending) {
+		throw notSupported();
+	}
+
+	@Override
+	public void setRetention(double maxAge, int maxCount, long maxBytes) {
+		throw notSupported();
+	}
+
+	@Override
+	public void setMaxNumber(int maxNum) {
+		throw notSupported();
+	}
+
+	@Override
+	public void setArchive(File directory, long memoryBudget) {
+		throw notSupported();
+	}
+
+	private static IllegalStateException notSupported() {
+		return new IllegalStateException("Values of a trigger are the captured frames");
+	}
+
+	/**
+	 * Declare a break after the last added value. The values before the break
+	 * are not used for the next frame and a frame being captured is dropped.
+	 */
+	@Override
+	public void setPause() {
+		lock();
+		try {
+			restart();
+		} finally {
+			unlock();
+		}
+	}
+
+	/**
+	 * Clear the frame shown and the values captured so far. The next trigger is
+	 * not subject to the holdoff.
+	 */
+	@Override
+	public void clear() {
+		lock();
+		try {
+			restart();
+			lastTriggerX = Double.NaN;
+			triggerX = Double.NaN;
+			super.clear();
+		} finally {
+			unlock();
+		}
+	}
+
+	private void restart() {
+		filled = 0;
+		remaining = -1;
+		pendingTriggerX = Double.NaN;
+		untriggered = 0;
+		last = Double.NaN;
+	}
+
+	/**
+	 * Put a value into the capture ring and check the trigger. The caller must
+	 * hold the lock.
+	 * 
+	 * @return True if a frame has been completed and shown
+	 */
+	private boolean capture(double x, double y) {
+		int size = captureX.length;
+		captureX[pos] = x;
+		captureY[pos] = y;
+		pos = pos + 1 == size ? 0 : pos + 1;
+		filled = Math.min(filled + 1, size);
+		double before = last;
+		last = y;
+		if (remaining > 0) {
+			// Capturing the values after the trigger
+			if (--remaining == 0) {
+				remaining = -1;
+				show(post, pendingTriggerX);
+				return true;
+			}
+			return false;
+		}
+		if (!armed) {
+			return false;
+		}
+		if (isTrigger(before, y) && !(x < lastTriggerX + holdoff)) {
+			lastTriggerX = x;
+			untriggered = 0;
+			if (post == 1) {
+				show(1, x);
+				return true;
+			}
+			remaining = post - 1;
+			pendingTriggerX = x;
+			return false;
+		}
+		if (mode == Mode.AUTO && ++untriggered >= size) {
+			untriggered = 0;
+			show(post, Double.NaN);
+			return true;
+		}
+		return false;
+	}
+
+	private boolean isTrigger(double before, double y) {
+		switch (trigger) {
+		case RISING_EDGE:
+			return before < low && y >= low;
+		case FALLING_EDGE:
+			return before > low && y <= low;
+		case ANY_EDGE:
+			return (before < low && y >= low) || (before > low && y <= low);
+		case ABOVE:
+			return y >= low;
+		case BELOW:
+			return y <= low;
+		case LEAVE_WINDOW:
+			return inside(before) && !inside(y) && !Double.isNaN(y);
+		default:
+			return !inside(before) && !Double.isNaN(before) && inside(y);
+		}
+	}
+
+	private boolean inside(double y) {
+		return y >= low && y <= high;
+	}
+
+	/**
+	 * Show the newest values of the capture ring as frame. The caller must hold
+	 * the lock.
+	 * 
+	 * @param after   Number of values starting with the trigger value
+	 * @param trigger Absolute x value of the trigger or NaN
+	 */
+	private void show(int after, double trigger) {
+		int size = captureX.length;
+		int num = Math.min(filled, size);
+		int start = pos - num;
+		if (start < 0) {
+			start += size;
+		}
+		// Without trigger the value after the pre-trigger values is the origin
+		double origin = captureX[(start + Math.max(num - after, 0)) % size];
+		for (int i = 0; i < num; ++i) {
+			int p = (start + i) % size;
+			frameX[i] = captureX[p] - origin;
+			frameY[i] = captureY[p];
+		}
+		replaceValues(frameX, frameY, num);
+		triggerX = trigger;
+		frames++;
+		if (mode == Mode.SINGLE) {
+			armed = false;
+		}
+	}
+}
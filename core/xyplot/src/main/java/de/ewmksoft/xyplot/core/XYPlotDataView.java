@@ -0,0 +1,437 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.util.Arrays;
+
+/**
+ * Read view of the values of a data handler at the time the view was created
+ * (see {@link XYPlotData#getView()}). Creating a view takes the lock of the
+ * data handler only for a moment, reading the values does not block the
+ * producers for longer than copying a small block of values. Producers may go
+ * on adding values while a view is in use: values added afterwards are not
+ * part of the view, and values of the view which are dropped from the ring
+ * buffer or changed are copied into the view before (copy on write).
+ * <p>
+ * Values of the disk archive (see {@link XYPlotData#setArchive}) are read
+ * from the archive. They are lost for the view if the data handler is cleared
+ * while the view is in use, in that case NaN is returned.
+ * <p>
+ * A view must be closed by {@link #close()} to stop the copying. The class is
+ * not thread safe, each thread should use its own view.
+ * 
+ * Example:
+ * 
+ * <pre>
+ * XYPlotDataView view = data.getView();
+ * try {
+ * 	for (int i = 0; i &lt; view.length(); ++i) {
+ * 		print(view.x(i), view.y(i));
+ * 	}
+ * } finally {
+ * 	view.close();
+ * }
+ * </pre>
+ */
+public final class XYPlotDataView {
+	private static final int BLOCK_SIZE = 256;
+	private static final int CACHE_SIZE = 4;
+
+	private final XYPlotData data;
+	private final int length;
+	final int archived;
+	final long ringFirst;
+	final long archiveGeneration;
+	final long groupGeneration;
+	private final double[] labelRank;
+
+	// Values of the ring buffer dropped or changed after the view was created,
+	// guarded by the lock of the data handler
+	private double[] keptX = new double[0];
+	private double[] keptY = new double[0];
+	private boolean[] keptBorder = new boolean[0];
+	private int kept;
+	private boolean detached;
+
+	// Block of values read last, followed by a cache for single values read
+	// together with the result of a search or a level of detail bucket
+	private final double[] blockX = new double[BLOCK_SIZE + CACHE_SIZE];
+	private final double[] blockY = new double[BLOCK_SIZE + CACHE_SIZE];
+	private final boolean[] blockBorder = new boolean[BLOCK_SIZE + CACHE_SIZE];
+	private final int[] cacheIndex = new int[CACHE_SIZE];
+	private int blockStart;
+	private int blockLength;
+	private boolean closed;
+
+	/**
+	 * Create a view. The caller must hold the lock of the data handler.
+	 * 
+	 * @param data              Data handler
+	 * @param length            Number of values
+	 * @param archived          Number of archived values
+	 * @param ringFirst         Sequence number of the first value of the ring
+	 *                          buffer
+	 * @param archiveGeneration Number of times the archive has been cleared
+	 * @param groupGeneration   Number of times the data group of a channel has
+	 *                          been cleared, see
+	 *                          {@link XYPlotDataGroup#generation()}
+	 * @param labelRank         Positions of the switch labels by id
+	 */
+	XYPlotDataView(XYPlotData data, int length, int archived, long ringFirst, long archiveGeneration,
+			long groupGeneration, double[] labelRank) {
+		this.data = data;
+		this.length = length;
+		this.archived = archived;
+		this.ringFirst = ringFirst;
+		this.archiveGeneration = archiveGeneration;
+		this.groupGeneration = groupGeneration;
+		this.labelRank = labelRank;
+		Arrays.fill(cacheIndex, -1);
+	}
+
+	/**
+	 * Get the data handler of the view.
+	 */
+	public XYPlotData getData() {
+		return data;
+	}
+
+	/**
+	 * Get the number of values in the view.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Get the x value on a given index position.
+	 * 
+	 * @param index Position in the view (0 to {@link #length()} - 1)
+	 */
+	public double x(int index) {
+		return blockX[load(index)];
+	}
+
+	/**
+	 * Get the y value on a given index position.
+	 * 
+	 * @param index Position in the view (0 to {@link #length()} - 1)
+	 */
+	public double y(int index) {
+		return blockY[load(index)];
+	}
+
+	/**
+	 * Check for a break after the value on a given index position.
+	 * 
+	 * @param index Position in the view (0 to {@link #length()} - 1)
+	 */
+	public boolean border(int index) {
+		return blockBorder[load(index)];
+	}
+
+	/**
+	 * Find the index of the last value with a x value less or equal to a given x
+	 * value. The lock of the data handler is taken once for the whole search.
+	 * 
+	 * @param xvalue X value to search for
+	 * @return Index of the value or -1 if all x values are greater
+	 */
+	public int findIndexFloor(double xvalue) {
+		if (archived > 0) {
+			data.loadArchive(xvalue);
+		}
+		data.lock();
+		try {
+			return data.viewFloorIndex(this, xvalue);
+		} finally {
+			data.unlock();
+		}
+	}
+
+	/**
+	 * Find the index of the first value with a x value greater or equal to a given
+	 * x value.
+	 * 
+	 * @param xvalue X value to search for
+	 * @return Index of the value or -1 if all x values are less
+	 */
+	public int findIndexCeiling(double xvalue) {
+		int result = findIndexFloor(xvalue);
+		if (result < 0 || x(result) < xvalue) {
+			result++;
+		}
+		return result < length ? result : -1;
+	}
+
+	/**
+	 * Find the index of the value with the x value closest to a given x value.
+	 * 
+	 * @param xvalue X value to search for
+	 * @return Index of the closest value or -1 if there are no values
+	 */
+	public int findIndexNearest(double xvalue) {
+		int floor = findIndexFloor(xvalue);
+		int ceiling = floor + 1;
+		if (ceiling >= length) {
+			return floor;
+		} else if (floor < 0) {
+			return ceiling;
+		}
+		return (xvalue - x(floor) < x(ceiling) - xvalue) ? floor : ceiling;
+	}
+
+	/**
+	 * Release the view. The values are not copied for the view any more.
+	 */
+	public void close() {
+		if (!closed) {
+			closed = true;
+			data.releaseView(this);
+		}
+	}
+
+	/**
+	 * Select the level of detail for drawing a range of values, see
+	 * {@link XYPlotData#selectLodLevel(int, int, double)}.
+	 */
+	int selectLodLevel(int start, int stop, double factor) {
+		data.lock();
+		try {
+			return data.viewLodLevel(this, start, stop, factor);
+		} finally {
+			data.unlock();
+		}
+	}
+
+	/**
+	 * Get the indices of the values representing a bucket of the level of
+	 * detail pyramid, see {@link XYPlotData#getLodVertices(int, int, int, int[])}.
+	 */
+	int getLodVertices(int level, int index, int stop, int[] result) {
+		data.lock();
+		try {
+			return data.viewLodVertices(this, level, index, stop, result);
+		} finally {
+			data.unlock();
+		}
+	}
+
+	/**
+	 * Check if a value of the view is taken from the disk archive.
+	 * 
+	 * @param index Position in the view
+	 */
+	boolean isArchived(int index) {
+		return index < archived;
+	}
+
+	/**
+	 * Get the number of values of the ring buffer in the view.
+	 */
+	int ringSize() {
+		return length - archived;
+	}
+
+	/**
+	 * Get the number of values of the ring buffer kept by the view. These are
+	 * the first values of the ring buffer part. The caller must hold the lock of
+	 * the data handler.
+	 */
+	int kept() {
+		return kept;
+	}
+
+	/**
+	 * Check if all values of the ring buffer part are kept by the view, so the
+	 * level of detail of the data handler does not match the view any more. The
+	 * caller must hold the lock of the data handler.
+	 */
+	boolean isDetached() {
+		return detached;
+	}
+
+	/**
+	 * Keep the next value of the ring buffer part before it is dropped or
+	 * changed. The caller must hold the lock of the data handler.
+	 * 
+	 * @param xv     X value
+	 * @param yv     Stored y value
+	 * @param border Break after the value
+	 */
+	void keep(double xv, double yv, boolean border) {
+		if (kept == keptX.length) {
+			int size = Math.min(Math.max(2 * kept, 64), ringSize());
+			keptX = Arrays.copyOf(keptX, size);
+			keptY = Arrays.copyOf(keptY, size);
+			keptBorder = Arrays.copyOf(keptBorder, size);
+		}
+		keptX[kept] = xv;
+		keptY[kept] = yv;
+		keptBorder[kept] = border;
+		kept++;
+	}
+
+	/**
+	 * Mark that all values of the ring buffer part are kept. The caller must
+	 * hold the lock of the data handler.
+	 */
+	void detach() {
+		detached = true;
+	}
+
+	/**
+	 * Read a kept value into the block. The caller must hold the lock of the
+	 * data handler.
+	 * 
+	 * @param index Index in the ring buffer part
+	 * @param pos   Position in the block
+	 */
+	void readKept(int index, int pos) {
+		setBlockValue(pos, keptX[index], keptY[index], keptBorder[index]);
+	}
+
+	/**
+	 * Get the x value of a kept value. The caller must hold the lock of the data
+	 * handler.
+	 * 
+	 * @param index Index in the ring buffer part
+	 */
+	double keptX(int index) {
+		return keptX[index];
+	}
+
+	/**
+	 * Get the position of an entry of the value cache for
+	 * {@link #setBlockValue(int, double, double, boolean)}. The caller must hold
+	 * the lock of the data handler.
+	 * 
+	 * @param entry Entry of the cache (0 to 3)
+	 * @param index Index of the value stored in the entry
+	 * @return Position behind the block
+	 */
+	int cachePos(int entry, int index) {
+		cacheIndex[entry] = index;
+		return BLOCK_SIZE + entry;
+	}
+
+	/**
+	 * Set a value of the block. The caller must hold the lock of the data
+	 * handler.
+	 * 
+	 * @param pos    Position in the block
+	 * @param xv     X value
+	 * @param yv     Stored y value
+	 * @param border Break after the value
+	 */
+	void setBlockValue(int pos, double xv, double yv, boolean border) {
+		int id = (int) yv;
+		if (id == yv && id >= 0 && id < labelRank.length) {
+			yv = labelRank[id];
+		}
+		blockX[pos] = xv;
+		blockY[pos] = yv;
+		blockBorder[pos] = border;
+	}
+
+	/**
+	 * Make sure that a value is in the block.
+	 * 
+	 * @return Position of the value in the block
+	 */
+	private int load(int index) {
+		int pos = index - blockStart;
+		if (pos >= 0 && pos < blockLength) {
+			return pos;
+		}
+		for (int entry = 0; entry < CACHE_SIZE; ++entry) {
+			if (cacheIndex[entry] == index) {
+				return BLOCK_SIZE + entry;
+			}
+		}
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index " + index + ", length " + length);
+		}
+		// The block grows with sequential access, for random access only single
+		// values are read
+		int num = 1;
+		if (index == blockStart + blockLength) {
+			num = Math.max(Math.min(Math.min(2 * blockLength, BLOCK_SIZE), length - index), 1);
+		}
+		data.lock();
+		try {
+			num = data.readView(this, index, num, false);
+		} finally {
+			data.unlock();
+		}
+		if (num == 0) {
+			// The archive segment is read from disk without the lock
+			data.loadArchive(this, index);
+			data.lock();
+			try {
+				num = data.readView(this, index, 1, true);
+			} finally {
+				data.unlock();
+			}
+		}
+		blockStart = index;
+		blockLength = num;
+		return 0;
+	}
+}
@@ -0,0 +1,253 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import java.util.List;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of plot data. The values of a
+ * range are split into buckets and from each bucket the value forming the
+ * largest triangle with the value selected from the previous bucket and the
+ * average of the next bucket is kept. Other than a minimum/maximum envelope,
+ * this keeps the visual shape of the curve with a given number of points, which
+ * makes it suitable for printed and exported charts.
+ * <p>
+ * The selection runs in linear time and does not allocate memory per value.
+ * Breaks in the data (see {@link XYPlotData#setPause()}) are kept: the range is
+ * split into segments at the breaks and each segment gets a share of the
+ * points according to its length.
+ */
+public final class XYPlotLttb {
+
+	private XYPlotLttb() {
+	}
+
+	/**
+	 * Create a reduced copy of a data handler. Color, unit, legend text, switch
+	 * labels and breaks are taken over.
+	 * 
+	 * @param data      Data handler to reduce
+	 * @param threshold Number of points in the result (at least 3 to get more than
+	 *                  the first and the last value of each segment)
+	 * @return New data handler not assigned to a plot
+	 */
+	public static XYPlotData downsample(XYPlotData data, int threshold) {
+		return downsample(data, 0, data.length() - 1, threshold);
+	}
+
+	/**
+	 * Create a reduced copy of a range of a data handler. Color, unit, legend
+	 * text, switch labels and breaks are taken over.
+	 * 
+	 * @param data      Data handler to reduce
+	 * @param minIndex  First index of the range
+	 * @param maxIndex  Last index of the range (inclusive)
+	 * @param threshold Number of points in the result (at least 3 to get more than
+	 *                  the first and the last value of each segment)
+	 * @return New data handler not assigned to a plot
+	 */
+	public static XYPlotData downsample(XYPlotData data, int minIndex, int maxIndex, int threshold) {
+		double[] xs;
+		double[] ys;
+		boolean[] border;
+		int num;
+		XYPlotDataView view = data.getView();
+		try {
+			minIndex = Math.max(minIndex, 0);
+			maxIndex = Math.min(maxIndex, view.length() - 1);
+			int[] indices = new int[Math.max(maxSize(view, minIndex, maxIndex + 1, threshold), 0)];
+			num = select(view, minIndex, maxIndex + 1, threshold, indices);
+			xs = new double[num];
+			ys = new double[num];
+			border = new boolean[num];
+			for (int i = 0; i < num; ++i) {
+				xs[i] = view.x(indices[i]);
+				ys[i] = view.y(indices[i]);
+				border[i] = view.border(indices[i]);
+			}
+		} finally {
+			view.close();
+		}
+		XYPlotData result = XYPlot.createDataHandler(Math.max(num, 1), data.getColor());
+		result.setUnit(data.getUnit());
+		result.setLegendText(data.getLegendText());
+		if (data.getScaleData().isSwitch) {
+			List<String> labels = data.getSwitchLabels();
+			for (int i = 0; i < num; ++i) {
+				result.addValue(xs[i], labels.get((int) Math.round(ys[i])));
+				if (border[i]) {
+					result.setPause();
+				}
+			}
+		} else {
+			int start = 0;
+			for (int i = 0; i < num; ++i) {
+				if (border[i] || i == num - 1) {
+					result.addValues(xs, ys, start, i + 1 - start);
+					if (border[i]) {
+						result.setPause();
+					}
+					start = i + 1;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the size of the array required by
+	 * {@link #select(XYPlotDataView, int, int, int, int[])}.
+	 * 
+	 * @param view      View of the data handler
+	 * @param from      First index of the range
+	 * @param to        Index after the range
+	 * @param threshold Number of points requested
+	 * @return Array size
+	 */
+	static int maxSize(XYPlotDataView view, int from, int to, int threshold) {
+		// Each segment may get two points more than its share
+		int result = Math.max(threshold, 0) + 2;
+		for (int i = from; i < to - 1; ++i) {
+			if (view.border(i)) {
+				result += 2;
+			}
+		}
+		return Math.min(result, to - from);
+	}
+
+	/**
+	 * Select the indices of the values to keep.
+	 * 
+	 * @param view      View of the data handler
+	 * @param from      First index of the range
+	 * @param to        Index after the range
+	 * @param threshold Number of points requested
+	 * @param result    Array receiving the indices in ascending order, see
+	 *                  {@link #maxSize(XYPlotDataView, int, int, int)}
+	 * @return Number of indices
+	 */
+	static int select(XYPlotDataView view, int from, int to, int threshold, int[] result) {
+		int total = to - from;
+		int n = 0;
+		int start = from;
+		for (int i = from; i < to; ++i) {
+			if (i == to - 1 || view.border(i)) {
+				int len = i + 1 - start;
+				int share = (int) Math.max(2, ((long) threshold * len + total - 1) / total);
+				share = Math.min(share, result.length - n);
+				if (share <= 0) {
+					break;
+				}
+				n = select(view, start, len, share, result, n);
+				start = i + 1;
+			}
+		}
+		return n;
+	}
+
+	private static int select(XYPlotDataView view, int from, int len, int threshold, int[] result, int n) {
+		if (threshold >= len) {
+			for (int i = 0; i < len; ++i) {
+				result[n++] = from + i;
+			}
+			return n;
+		}
+		result[n++] = from;
+		if (threshold < 3) {
+			if (threshold == 2) {
+				result[n++] = from + len - 1;
+			}
+			return n;
+		}
+		double every = (double) (len - 2) / (threshold - 2);
+		int a = from;
+		for (int i = 0; i < threshold - 2; ++i) {
+			int avgStart = (int) ((i + 1) * every) + 1;
+			int avgEnd = Math.min((int) ((i + 2) * every) + 1, len);
+			double avgX = 0;
+			double avgY = 0;
+			for (int j = avgStart; j < avgEnd; ++j) {
+				avgX += view.x(from + j);
+				avgY += view.y(from + j);
+			}
+			int avgLen = Math.max(avgEnd - avgStart, 1);
+			avgX /= avgLen;
+			avgY /= avgLen;
+
+			int rangeStart = (int) (i * every) + 1;
+			int rangeEnd = Math.max((int) ((i + 1) * every) + 1, rangeStart + 1);
+			double ax = view.x(a);
+			double ay = view.y(a);
+			double maxArea = -1;
+			int next = from + rangeStart;
+			for (int j = rangeStart; j < rangeEnd; ++j) {
+				double area = Math.abs((ax - avgX) * (view.y(from + j) - ay) - (ax - view.x(from + j))
+						* (avgY - ay));
+				if (area > maxArea) {
+					maxArea = area;
+					next = from + j;
+				}
+			}
+			result[n++] = next;
+			a = next;
+		}
+		result[n++] = from + len - 1;
+		return n;
+	}
+}
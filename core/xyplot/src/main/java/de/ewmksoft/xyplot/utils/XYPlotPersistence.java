@@ -78,8 +78,8 @@ import de.ewmksoft.json.JSONException;
 import de.ewmksoft.json.JSONObject;
 import de.ewmksoft.xyplot.core.XYPlot;
 import de.ewmksoft.xyplot.core.XYPlotData;
+import de.ewmksoft.xyplot.core.XYPlotDataView;
 import de.ewmksoft.xyplot.core.IXYGraphLib.RGB;
-import de.ewmksoft.xyplot.core.XYPlotData.DataValue;
 
 public class XYPlotPersistence {
 
@@ -175,7 +175,6 @@ public class XYPlotPersistence {
 			Date date = new Date();
 			createdate = sdf.format(date);
 			int no = 0;
-			int maxsize = 0;
 			JSONArray dhs = new JSONArray();
 			JSONObject root = new JSONObject();
 			int maxCount = 1;
@@ -193,20 +192,25 @@ public class XYPlotPersistence {
 				JSONArray parray = new JSONArray();
 				JSONArray xarray = new JSONArray();
 				JSONArray yarray = new JSONArray();
-				for (int i = 0; i < data.length(); ++i) {
-					DataValue dataValue = data.getValue(i);
-					xarray.put(dataValue.x());
-					yarray.put(dataValue.y());
-					if (i > maxsize)
-						maxsize = i;
-					if (dataValue.border()) {
-						parray.put(i);
-					}
-					if (progressCallback != null && count % interval == 0) {
-						int progress = Math.min((50 * count) / maxCount, 50);
-						progressCallback.onProgress(progress);
+				// The values are read from a view, so the producers are blocked only
+				// while a small block of values is copied and the progress callback
+				// is not called with the lock of the data handler held
+				XYPlotDataView view = data.getView();
+				try {
+					for (int index = 0; index < view.length(); ++index) {
+						xarray.put(view.x(index));
+						yarray.put(view.y(index));
+						if (view.border(index)) {
+							parray.put(index);
+						}
+						if (progressCallback != null && count % interval == 0) {
+							int progress = Math.min((50 * count) / maxCount, 50);
+							progressCallback.onProgress(progress);
+						}
+						count++;
 					}
-					count++;
+				} finally {
+					view.close();
 				}
 				JSONObject jsonObject = new JSONObject();
 				jsonObject.put(YUNIT, data.getUnit());
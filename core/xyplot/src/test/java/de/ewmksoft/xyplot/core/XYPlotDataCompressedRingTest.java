@@ -0,0 +1,216 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.DoubleBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the Gorilla encoding of {@link XYPlotDataCompressedRing} gives
+ * back the bit patterns of the values stored, compared with a
+ * {@link XYPlotDataHeapRing} fed with the same values.
+ */
+public class XYPlotDataCompressedRingTest {
+	private static final double[] SPECIAL = new double[] { 0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY,
+			Double.NEGATIVE_INFINITY, Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+			Double.MIN_NORMAL, 1e-300, 1e300, Double.longBitsToDouble(0x7ff8000000000001L) };
+
+	@Test
+	public void regularSamplesRoundTrip() {
+		XYPlotDataRing compressed = new XYPlotDataCompressedRing(10 * XYPlotDataCompressedRing.BLOCK_SIZE);
+		XYPlotDataRing heap = new XYPlotDataHeapRing(10 * XYPlotDataCompressedRing.BLOCK_SIZE);
+		Random random = new Random(1);
+		for (int i = 0; i < 25 * XYPlotDataCompressedRing.BLOCK_SIZE; ++i) {
+			add(compressed, heap, 0.001 * i, Math.sin(0.01 * i) + 0.001 * random.nextGaussian());
+		}
+		assertSame(heap, compressed);
+		// Regular x values and smooth y values compress below the raw 16 bytes
+		assertTrue(compressed.bytesPerValue() < 16, "Bytes per value " + compressed.bytesPerValue());
+	}
+
+	@Test
+	public void irregularValuesRoundTrip() {
+		// The capacity is no multiple of the block size, so the last block is
+		// shorter and the blocks are reopened when the buffer wraps
+		XYPlotDataRing compressed = new XYPlotDataCompressedRing(1000);
+		XYPlotDataRing heap = new XYPlotDataHeapRing(1000);
+		Random random = new Random(2);
+		double x = -1e6;
+		for (int i = 0; i < 7000; ++i) {
+			switch (random.nextInt(5)) {
+			case 0:
+				x += random.nextDouble() * 1e6;
+				break;
+			case 1:
+				x = Math.nextUp(x);
+				break;
+			default:
+				x += 0.5;
+				break;
+			}
+			double y;
+			switch (random.nextInt(6)) {
+			case 0:
+				y = SPECIAL[random.nextInt(SPECIAL.length)];
+				break;
+			case 1:
+				y = Double.longBitsToDouble(random.nextLong());
+				break;
+			case 2:
+				y = 42;
+				break;
+			default:
+				y = random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+				break;
+			}
+			add(compressed, heap, x, y);
+			if (i % 331 == 0) {
+				assertSame(heap, compressed);
+			}
+		}
+		assertSame(heap, compressed);
+	}
+
+	@Test
+	public void specialXValuesRoundTrip() {
+		XYPlotDataRing compressed = new XYPlotDataCompressedRing(4 * XYPlotDataCompressedRing.BLOCK_SIZE);
+		XYPlotDataRing heap = new XYPlotDataHeapRing(4 * XYPlotDataCompressedRing.BLOCK_SIZE);
+		for (int i = 0; i < 6 * XYPlotDataCompressedRing.BLOCK_SIZE; ++i) {
+			// Deltas of the bit patterns with the largest magnitudes
+			double x = SPECIAL[i % SPECIAL.length];
+			add(compressed, heap, x, SPECIAL[(i / 3) % SPECIAL.length]);
+		}
+		assertSame(heap, compressed);
+	}
+
+	@Test
+	public void blockAddsRoundTrip() {
+		XYPlotDataRing compressed = new XYPlotDataCompressedRing(3000);
+		XYPlotDataRing heap = new XYPlotDataHeapRing(3000);
+		Random random = new Random(3);
+		long n = 0;
+		for (int step = 0; step < 200; ++step) {
+			int len = random.nextInt(1500);
+			double[] xs = new double[len];
+			double[] ys = new double[len];
+			for (int i = 0; i < len; ++i) {
+				xs[i] = n++;
+				ys[i] = random.nextInt(100);
+			}
+			if (step % 2 == 0) {
+				assertEquals(heap.add(xs, ys, 0, len), compressed.add(xs, ys, 0, len));
+			} else {
+				assertEquals(heap.add(DoubleBuffer.wrap(xs), DoubleBuffer.wrap(ys), len),
+						compressed.add(DoubleBuffer.wrap(xs), DoubleBuffer.wrap(ys), len));
+			}
+			assertSame(heap, compressed);
+		}
+	}
+
+	@Test
+	public void changedValuesAndBordersRoundTrip() {
+		XYPlotDataRing compressed = new XYPlotDataCompressedRing(2000);
+		XYPlotDataRing heap = new XYPlotDataHeapRing(2000);
+		Random random = new Random(4);
+		for (int i = 0; i < 5000; ++i) {
+			add(compressed, heap, i, random.nextDouble());
+			if (random.nextInt(50) == 0) {
+				compressed.setBorder(compressed.size() - 1);
+				heap.setBorder(heap.size() - 1);
+			}
+		}
+		// Changing a value reopens its sealed block
+		for (int i = 0; i < 300; ++i) {
+			int index = random.nextInt(heap.size());
+			double y = random.nextGaussian();
+			compressed.setY(index, y);
+			heap.setY(index, y);
+		}
+		assertSame(heap, compressed);
+		for (int i = 0; i < 1500; ++i) {
+			add(compressed, heap, 5000 + i, random.nextDouble());
+		}
+		assertSame(heap, compressed);
+	}
+
+	private static void add(XYPlotDataRing compressed, XYPlotDataRing heap, double x, double y) {
+		assertEquals(heap.add(x, y), compressed.add(x, y));
+	}
+
+	private static void assertSame(XYPlotDataRing expected, XYPlotDataRing actual) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.first(), actual.first());
+		// Read backwards as well, so the blocks are decoded out of order
+		for (int pass = 0; pass < 2; ++pass) {
+			for (int n = 0; n < expected.size(); ++n) {
+				int i = pass == 0 ? n : expected.size() - 1 - n;
+				assertEquals(Double.doubleToRawLongBits(expected.x(i)), Double.doubleToRawLongBits(actual.x(i)),
+						"X value " + i);
+				assertEquals(Double.doubleToRawLongBits(expected.y(i)), Double.doubleToRawLongBits(actual.y(i)),
+						"Y value " + i);
+				assertEquals(expected.border(i), actual.border(i), "Border " + i);
+			}
+		}
+	}
+}
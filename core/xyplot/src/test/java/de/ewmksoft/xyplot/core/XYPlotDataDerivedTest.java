@@ -0,0 +1,348 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.ewmksoft.xyplot.core.IXYGraphLib.RGB;
+
+/**
+ * Tests the incremental computation of {@link XYPlotDataDerived} against a
+ * brute-force computation over the rows read from the sources, with breaks,
+ * source values dropped before they have been read and replaced source values.
+ */
+public class XYPlotDataDerivedTest {
+	private static final RGB COLOR = new RGB("255/0/0/0");
+
+	@Test
+	public void movingAverageMatchesBruteForce() {
+		final int window = 17;
+		checkOperator(new Reference() {
+			@Override
+			double value(Rows rows, int r) {
+				int from = Math.max(rows.start(r), r - window + 1);
+				double sum = 0;
+				for (int k = from; k <= r; ++k) {
+					sum += rows.y(0, k);
+				}
+				return sum / (r - from + 1);
+			}
+		}, new Factory() {
+			@Override
+			XYPlotDataDerived create(XYPlotData source) {
+				return XYPlotDataDerived.movingAverage(source, 100000, window);
+			}
+		});
+	}
+
+	@Test
+	public void exponentialAverageMatchesBruteForce() {
+		final double alpha = 0.1;
+		checkOperator(new Reference() {
+			@Override
+			double value(Rows rows, int r) {
+				int start = rows.start(r);
+				double average = rows.y(0, start);
+				for (int k = start + 1; k <= r; ++k) {
+					average += alpha * (rows.y(0, k) - average);
+				}
+				return average;
+			}
+		}, new Factory() {
+			@Override
+			XYPlotDataDerived create(XYPlotData source) {
+				return XYPlotDataDerived.exponentialAverage(source, 100000, alpha);
+			}
+		});
+	}
+
+	@Test
+	public void derivativeMatchesBruteForce() {
+		checkOperator(new Reference() {
+			@Override
+			double value(Rows rows, int r) {
+				if (r == rows.start(r)) {
+					return Double.NaN;
+				}
+				return (rows.y(0, r) - rows.y(0, r - 1)) / (rows.x(r) - rows.x(r - 1));
+			}
+		}, new Factory() {
+			@Override
+			XYPlotDataDerived create(XYPlotData source) {
+				return XYPlotDataDerived.derivative(source, 100000);
+			}
+		});
+	}
+
+	@Test
+	public void integralMatchesBruteForce() {
+		checkOperator(new Reference() {
+			@Override
+			double value(Rows rows, int r) {
+				// The sum goes on after a break, the gap is not integrated
+				double sum = 0;
+				for (int k = 1; k <= r; ++k) {
+					if (!rows.border(k - 1)) {
+						sum += (rows.x(k) - rows.x(k - 1)) * (rows.y(0, k) + rows.y(0, k - 1)) / 2;
+					}
+				}
+				return sum;
+			}
+		}, new Factory() {
+			@Override
+			XYPlotDataDerived create(XYPlotData source) {
+				return XYPlotDataDerived.integral(source, 100000);
+			}
+		});
+	}
+
+	@Test
+	public void expressionRestartsWithAllSources() {
+		Reference reference = new Reference() {
+			@Override
+			double value(Rows rows, int r) {
+				return (rows.y(0, r) - rows.y(1, r)) / 2 + rows.x(r);
+			}
+		};
+		XYPlotData[] sources = new XYPlotData[] { XYPlot.createDataHandler(1000, COLOR),
+				XYPlot.createDataHandler(1000, COLOR) };
+		XYPlotDataDerived derived = XYPlotDataDerived.expression("(y0 - y1) / 2 + x", 100000, sources);
+		Random random = new Random(3);
+		Rows rows = new Rows(2);
+		add(sources, random, 0, 600);
+		sources[0].setPause();
+		add(sources, random, 600, 200);
+		derived.update();
+		rows.read(sources);
+		check(reference, rows, derived, "Expression");
+
+		// Only the second source is replaced, the rows are formed again from
+		// the oldest values of both sources
+		double[] y = new double[100];
+		for (int i = 0; i < y.length; ++i) {
+			y[i] = random.nextGaussian();
+		}
+		sources[1].changeValues(y);
+		derived.update();
+		rows = new Rows(2);
+		rows.read(sources);
+		check(reference, rows, derived, "Expression after replacing values");
+
+		// Again after the sources have dropped values
+		add(sources, random, 800, 1500);
+		derived.update();
+		rows.read(sources);
+		check(reference, rows, derived, "Expression after dropping values");
+		sources[0].changeValues(y);
+		derived.update();
+		rows = new Rows(2);
+		rows.read(sources);
+		check(reference, rows, derived, "Expression after dropping and replacing values");
+	}
+
+	/**
+	 * Feed a source in steps with breaks and dropped values and compare the
+	 * derived values after each step.
+	 */
+	private static void checkOperator(Reference reference, Factory factory) {
+		XYPlotData[] sources = new XYPlotData[] { XYPlot.createDataHandler(1000, COLOR) };
+		XYPlotDataDerived derived = factory.create(sources[0]);
+		Random random = new Random(1);
+		Rows rows = new Rows(1);
+		int x = 0;
+		for (int step = 0; step < 20; ++step) {
+			int num = 1 + random.nextInt(step % 10 == 9 ? 2500 : 300);
+			add(sources, random, x, num);
+			x += num;
+			if (random.nextInt(3) == 0) {
+				// A break after values which may have been read already
+				sources[0].setPause();
+			}
+			if (random.nextInt(4) != 0) {
+				derived.update();
+				rows.read(sources);
+				check(reference, rows, derived, "Step " + step);
+			}
+		}
+		derived.update();
+		rows.read(sources);
+		check(reference, rows, derived, "Last step");
+	}
+
+	private static void add(XYPlotData[] sources, Random random, int x, int num) {
+		for (int i = x; i < x + num; ++i) {
+			for (XYPlotData source : sources) {
+				source.addValue(i, random.nextGaussian() * 10);
+			}
+		}
+	}
+
+	private static void check(Reference reference, Rows rows, XYPlotData derived, String message) {
+		List<double[]> expected = new ArrayList<double[]>();
+		for (int r = 0; r < rows.size(); ++r) {
+			double y = reference.value(rows, r);
+			if (!Double.isNaN(y)) {
+				expected.add(new double[] { rows.x(r), y, 0 });
+			}
+			if (rows.border(r) && !expected.isEmpty()) {
+				expected.get(expected.size() - 1)[2] = 1;
+			}
+		}
+		assertEquals(expected.size(), derived.length(), message + ": number of values");
+		for (int i = 0; i < expected.size(); ++i) {
+			XYPlotData.DataValue value = derived.getValue(i);
+			double[] e = expected.get(i);
+			assertEquals(e[0], value.x(), message + ": x of value " + i);
+			assertEquals(e[1], value.y(), 1e-9 * Math.max(1, Math.abs(e[1])), message + ": y of value " + i);
+			assertEquals(e[2] != 0, value.border(), message + ": break after value " + i);
+		}
+	}
+
+	/**
+	 * Computes a derived value from all rows read so far.
+	 */
+	private static abstract class Reference {
+		abstract double value(Rows rows, int r);
+	}
+
+	private static abstract class Factory {
+		abstract XYPlotDataDerived create(XYPlotData source);
+	}
+
+	/**
+	 * The rows read from the sources, like the derived handler reads them:
+	 * values dropped before they have been read are skipped with a break.
+	 */
+	private static class Rows {
+		private final List<Double> xs = new ArrayList<Double>();
+		private final List<double[]> ys = new ArrayList<double[]>();
+		private final List<Boolean> borders = new ArrayList<Boolean>();
+		private final List<Integer> starts = new ArrayList<Integer>();
+		private final int sources;
+		private double next = Double.NEGATIVE_INFINITY;
+
+		Rows(int sources) {
+			this.sources = sources;
+		}
+
+		/**
+		 * Read the new rows. The sources get the same x values at the same time,
+		 * so a row has the same index in each source.
+		 */
+		void read(XYPlotData[] data) {
+			int length = data[0].length();
+			for (int i = 0; i < length; ++i) {
+				double x = data[0].getValue(i).x();
+				boolean border = false;
+				for (int s = 0; s < sources; ++s) {
+					border |= data[s].getValue(i).border();
+				}
+				if (x < next) {
+					if (x == next - 1 && border) {
+						borders.set(borders.size() - 1, true);
+					}
+					continue;
+				}
+				if (x > next && !xs.isEmpty()) {
+					// Dropped before they have been read
+					borders.set(borders.size() - 1, true);
+				}
+				double[] y = new double[sources];
+				for (int s = 0; s < sources; ++s) {
+					y[s] = data[s].getValue(i).y();
+				}
+				int r = xs.size();
+				starts.add(r == 0 || borders.get(r - 1) ? r : starts.get(r - 1));
+				xs.add(x);
+				ys.add(y);
+				borders.add(border);
+				next = x + 1;
+			}
+		}
+
+		int size() {
+			return xs.size();
+		}
+
+		double x(int r) {
+			return xs.get(r);
+		}
+
+		double y(int source, int r) {
+			return ys.get(r)[source];
+		}
+
+		boolean border(int r) {
+			return borders.get(r);
+		}
+
+		/**
+		 * First row after the last break before a row.
+		 */
+		int start(int r) {
+			return starts.get(r);
+		}
+	}
+}
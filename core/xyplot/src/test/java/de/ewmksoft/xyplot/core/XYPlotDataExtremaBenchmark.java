@@ -0,0 +1,163 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+/**
+ * Benchmark for the y range tracking of a full ring buffer. A rising ramp is
+ * the worst case for the former implementation: every appended value drops the
+ * current minimum, which caused a rescan of the whole buffer. The benchmark
+ * runs the former rescan and {@link XYPlotDataExtrema} on the same data.
+ * <p>
+ * Usage: XYPlotDataExtremaBenchmark [capacity] [appends] [rounds]
+ */
+public class XYPlotDataExtremaBenchmark {
+
+	public static void main(String[] args) {
+		int capacity = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int appends = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		System.out.println("Rising ramp, capacity " + capacity + ", " + appends
+				+ " appends on the full buffer");
+		for (int round = 1; round <= rounds; ++round) {
+			long t0 = System.nanoTime();
+			double rescan = runRescan(capacity, appends);
+			long t1 = System.nanoTime();
+			double deque = runDeque(capacity, appends);
+			long t2 = System.nanoTime();
+			if (rescan != deque) {
+				throw new IllegalStateException("Different results " + rescan + " / " + deque);
+			}
+			System.out.println("Round " + round + ": rescan " + (t1 - t0) / 1000000 + " ms, deque "
+					+ (t2 - t1) / 1000000 + " ms");
+		}
+	}
+
+	/**
+	 * Track the range like the former implementation: keep the position of
+	 * the minimum and maximum and search the whole buffer again as soon as one
+	 * of them is dropped.
+	 * 
+	 * @return Sum of minimum and maximum after every append
+	 */
+	static double runRescan(int capacity, int appends) {
+		XYPlotDataRing values = new XYPlotDataHeapRing(capacity);
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		int minIndex = 0;
+		int maxIndex = 0;
+		double result = 0;
+		for (int i = 0; i < capacity + appends; ++i) {
+			double y = i;
+			int usedNum = values.size();
+			if (values.add(i, y)) {
+				usedNum--;
+				minIndex--;
+				maxIndex--;
+				if (minIndex < 0 || maxIndex < 0) {
+					min = Double.MAX_VALUE;
+					max = -Double.MAX_VALUE;
+					for (int j = 0; j < usedNum; ++j) {
+						double vy = values.y(j);
+						if (vy > max) {
+							max = vy;
+							maxIndex = j;
+						}
+						if (vy < min) {
+							min = vy;
+							minIndex = j;
+						}
+					}
+				}
+			}
+			if (y > max) {
+				max = y;
+				maxIndex = usedNum;
+			}
+			if (y < min) {
+				min = y;
+				minIndex = usedNum;
+			}
+			if (i >= capacity) {
+				result += min + max;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Track the range with {@link XYPlotDataExtrema}.
+	 * 
+	 * @return Sum of minimum and maximum after every append
+	 */
+	static double runDeque(int capacity, int appends) {
+		XYPlotDataRing values = new XYPlotDataHeapRing(capacity);
+		XYPlotDataExtrema extrema = new XYPlotDataExtrema(values);
+		double result = 0;
+		for (int i = 0; i < capacity + appends; ++i) {
+			if (values.add(i, i)) {
+				extrema.drop();
+			}
+			extrema.add(values.size() - 1);
+			if (i >= capacity) {
+				result += extrema.min() + extrema.max();
+			}
+		}
+		return result;
+	}
+}
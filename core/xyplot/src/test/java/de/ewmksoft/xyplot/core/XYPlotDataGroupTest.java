@@ -0,0 +1,142 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the x value lookups of the channels of a {@link XYPlotDataGroup} and of
+ * their views, which share a cache in the group, against a brute-force search.
+ */
+public class XYPlotDataGroupTest {
+
+	@Test
+	public void lookupsMatchBruteForce() {
+		XYPlotDataGroup group = new XYPlotDataGroup(3, 1000);
+		addRows(group, 0, 1500);
+		XYPlotDataView before = group.getChannel(0).getView();
+		XYPlotDataView same = group.getChannel(1).getView();
+		addRows(group, 1500, 10);
+		XYPlotDataView later = group.getChannel(1).getView();
+		// After clearing, the same number of rows leads to views with the same
+		// first row and length, but different x values
+		group.clear();
+		addRows(group, 10000, 1500);
+		XYPlotDataView cleared = group.getChannel(2).getView();
+		XYPlotDataView[] views = new XYPlotDataView[] { before, same, later, cleared };
+		try {
+			assertEquals(before.length(), cleared.length());
+			Random random = new Random(1);
+			for (int k = 0; k < 500; ++k) {
+				double x = random.nextInt(2) == 0 ? random.nextDouble() * 1000 : 5000 + random.nextDouble() * 1000;
+				if (k % 3 == 0) {
+					// Exactly on a value
+					x = Math.floor(x * 2) / 2;
+				}
+				for (XYPlotDataView view : views) {
+					assertEquals(floor(view, x), view.findIndexFloor(x), "View floor of " + x);
+					assertEquals(ceiling(view, x), view.findIndexCeiling(x), "View ceiling of " + x);
+				}
+				for (int c = 0; c < group.getChannelNum(); ++c) {
+					XYPlotData channel = group.getChannel(c);
+					assertEquals(floor(cleared, x), channel.findIndexFloor(x), "Channel floor of " + x);
+				}
+			}
+		} finally {
+			for (XYPlotDataView view : views) {
+				view.close();
+			}
+		}
+	}
+
+	private static void addRows(XYPlotDataGroup group, int from, int num) {
+		double[] xs = new double[num];
+		double[][] ys = new double[group.getChannelNum()][num];
+		for (int i = 0; i < num; ++i) {
+			xs[i] = (from + i) * 0.5;
+			for (int c = 0; c < ys.length; ++c) {
+				ys[c][i] = c * (from + i);
+			}
+		}
+		group.addRows(xs, ys, 0, num);
+	}
+
+	private static int floor(XYPlotDataView view, double x) {
+		int result = -1;
+		for (int i = 0; i < view.length(); ++i) {
+			if (view.x(i) <= x) {
+				result = i;
+			}
+		}
+		return result;
+	}
+
+	private static int ceiling(XYPlotDataView view, double x) {
+		for (int i = 0; i < view.length(); ++i) {
+			if (view.x(i) >= x) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
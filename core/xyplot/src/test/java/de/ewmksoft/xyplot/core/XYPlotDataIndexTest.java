@@ -0,0 +1,162 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the range queries of {@link XYPlotDataIndex} against a linear search
+ * of the ring buffer.
+ */
+public class XYPlotDataIndexTest {
+
+	@Test
+	public void rangesMatchLinearSearch() {
+		// The capacity is no multiple of the block size, so the blocks move
+		// relative to the physical positions when the buffer wraps
+		XYPlotDataRing values = new XYPlotDataHeapRing(1000);
+		XYPlotDataIndex index = new XYPlotDataIndex(values);
+		Random random = new Random(7);
+		for (int i = 0; i < 5000; ++i) {
+			values.add(i, random.nextGaussian() + 0.001 * i);
+			index.add(values.size() - 1);
+			if (i % 97 == 0) {
+				checkRanges(values, index, random, 20);
+			}
+		}
+		checkRanges(values, index, random, 1000);
+	}
+
+	@Test
+	public void rangesOfMonotonicValues() {
+		XYPlotDataRing values = new XYPlotDataHeapRing(3 * XYPlotDataIndex.BLOCK_SIZE);
+		XYPlotDataIndex index = new XYPlotDataIndex(values);
+		for (int i = 0; i < 10 * XYPlotDataIndex.BLOCK_SIZE; ++i) {
+			values.add(i, -i);
+			index.add(values.size() - 1);
+		}
+		int size = values.size();
+		double[] result = range(index, 0, size - 1);
+		assertEquals(values.y(size - 1), result[0]);
+		assertEquals(values.y(0), result[1]);
+		for (int from = 0; from < size; from += 17) {
+			for (int to = from; to < size; to += 29) {
+				result = range(index, from, to);
+				assertEquals(values.y(to), result[0]);
+				assertEquals(values.y(from), result[1]);
+			}
+		}
+	}
+
+	@Test
+	public void rebuildAfterChangedValues() {
+		XYPlotDataRing values = new XYPlotDataHeapRing(2000);
+		XYPlotDataIndex index = new XYPlotDataIndex(values);
+		Random random = new Random(11);
+		for (int i = 0; i < 3000; ++i) {
+			values.add(i, random.nextDouble());
+			index.add(values.size() - 1);
+		}
+		for (int i = 0; i < values.size(); ++i) {
+			values.setY(i, 10 * random.nextDouble());
+		}
+		index.rebuild();
+		checkRanges(values, index, random, 1000);
+	}
+
+	@Test
+	public void emptyRangeKeepsResult() {
+		XYPlotDataRing values = new XYPlotDataHeapRing(100);
+		XYPlotDataIndex index = new XYPlotDataIndex(values);
+		for (int i = 0; i < 50; ++i) {
+			values.add(i, i);
+			index.add(values.size() - 1);
+		}
+		double[] result = range(index, 10, 9);
+		assertEquals(Double.POSITIVE_INFINITY, result[0]);
+		assertEquals(Double.NEGATIVE_INFINITY, result[1]);
+	}
+
+	private static void checkRanges(XYPlotDataRing values, XYPlotDataIndex index, Random random, int num) {
+		int size = values.size();
+		for (int n = 0; n < num; ++n) {
+			int from = random.nextInt(size);
+			int to = from + random.nextInt(size - from);
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = from; i <= to; ++i) {
+				min = Math.min(min, values.y(i));
+				max = Math.max(max, values.y(i));
+			}
+			double[] result = range(index, from, to);
+			assertEquals(min, result[0], "Minimum of " + from + ".." + to);
+			assertEquals(max, result[1], "Maximum of " + from + ".." + to);
+		}
+	}
+
+	private static double[] range(XYPlotDataIndex index, int from, int to) {
+		double[] result = new double[] { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		index.range(from, to, result);
+		return result;
+	}
+}
@@ -0,0 +1,173 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the buckets of {@link XYPlotDataLod} against a brute-force search of the
+ * first, minimum, maximum and last value of each bucket, while the ring buffer
+ * wraps and breaks are set in complete buckets and in the bucket being filled.
+ */
+public class XYPlotDataLodTest {
+
+	@Test
+	public void bucketsMatchBruteForce() {
+		XYPlotDataRing values = new XYPlotDataHeapRing(5000);
+		XYPlotDataLod lod = new XYPlotDataLod(values);
+		assertEquals(4, lod.levels());
+		Set<Long> borders = new HashSet<Long>();
+		Random random = new Random(1);
+		for (int i = 0; i < 23456; ++i) {
+			add(values, lod, i, random.nextInt(50));
+			if (random.nextInt(300) == 0) {
+				// A break after the newest value
+				setBorder(values, lod, borders, values.size() - 1);
+			}
+			if (random.nextInt(700) == 0) {
+				// A break after a value of a complete bucket
+				setBorder(values, lod, borders, random.nextInt(values.size()));
+			}
+			if (i % 997 == 0) {
+				check(values, lod, borders);
+			}
+		}
+		check(values, lod, borders);
+		// The breaks are taken from the ring buffer
+		lod.rebuild();
+		check(values, lod, borders);
+		values.clear();
+		lod.clear();
+		borders.clear();
+		for (int i = 0; i < 3000; ++i) {
+			add(values, lod, i, random.nextGaussian());
+		}
+		check(values, lod, borders);
+	}
+
+	private static void add(XYPlotDataRing values, XYPlotDataLod lod, double x, double y) {
+		values.add(x, y);
+		lod.add(values.size() - 1);
+	}
+
+	private static void setBorder(XYPlotDataRing values, XYPlotDataLod lod, Set<Long> borders, int index) {
+		values.setBorder(index);
+		lod.setBorder(index);
+		borders.add(values.first() + index);
+	}
+
+	private static void check(XYPlotDataRing values, XYPlotDataLod lod, Set<Long> borders) {
+		int[] actual = new int[4];
+		for (int level = 0; level < lod.levels(); ++level) {
+			int size = XYPlotDataLod.bucketSize(level);
+			for (int index = 0; index < values.size(); ++index) {
+				int n = lod.vertices(level, index, values.size(), actual);
+				int[] expected = expected(values, borders, size, index);
+				assertArrayEquals(expected, Arrays.copyOf(actual, n), "Level " + level + " index " + index);
+			}
+		}
+	}
+
+	/**
+	 * Find the first, minimum, maximum and last value of the bucket starting at
+	 * an index, the first of several equal extremes.
+	 */
+	private static int[] expected(XYPlotDataRing values, Set<Long> borders, int size, int index) {
+		long seq = values.first() + index;
+		if ((seq & (size - 1)) != 0 || index + size > values.size()) {
+			return new int[0];
+		}
+		int min = index;
+		int max = index;
+		for (int i = index; i < index + size; ++i) {
+			if (borders.contains(values.first() + i)) {
+				return new int[0];
+			}
+			if (values.y(i) < values.y(min)) {
+				min = i;
+			}
+			if (values.y(i) > values.y(max)) {
+				max = i;
+			}
+		}
+		int[] result = new int[4];
+		int n = 0;
+		int a = Math.min(min, max);
+		int b = Math.max(min, max);
+		result[n++] = index;
+		if (a != index) {
+			result[n++] = a;
+		}
+		if (b != a) {
+			result[n++] = b;
+		}
+		if (b != index + size - 1) {
+			result[n++] = index + size - 1;
+		}
+		return Arrays.copyOf(result, n);
+	}
+}
@@ -0,0 +1,220 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import de.ewmksoft.xyplot.core.XYPlotData.OverflowPolicy;
+
+/**
+ * Tests the lock free {@link XYPlotDataQueue}: with several producers each value
+ * arrives exactly once and in the order of its producer, and full queues drop
+ * the values their policy says.
+ */
+public class XYPlotDataQueueTest {
+	private static final int PRODUCERS = 4;
+	private static final int VALUES = 200000;
+
+	@Test
+	public void blockingProducersDeliverEachValueOnce() throws InterruptedException {
+		final XYPlotDataQueue queue = new XYPlotDataQueue(1024, OverflowPolicy.BLOCK, Long.MAX_VALUE / 2);
+		Thread[] producers = start(queue, new CountDownLatch(1));
+		// The producer is the x value, its counter the y value
+		int[] next = new int[PRODUCERS];
+		double[] value = new double[2];
+		int received = 0;
+		while (received < PRODUCERS * VALUES) {
+			if (queue.poll(value)) {
+				int producer = (int) value[0];
+				assertEquals(next[producer], (int) value[1], "Order of producer " + producer);
+				next[producer]++;
+				received++;
+			} else {
+				Thread.yield();
+			}
+		}
+		join(producers);
+		assertFalse(queue.poll(value));
+		assertEquals(0, queue.drops());
+		assertEquals(0, queue.depth());
+	}
+
+	@Test
+	public void concurrentDropOldestKeepsOrder() throws InterruptedException {
+		checkConcurrentDrops(OverflowPolicy.DROP_OLDEST);
+	}
+
+	@Test
+	public void concurrentDropKeepsOrder() throws InterruptedException {
+		checkConcurrentDrops(OverflowPolicy.DROP);
+	}
+
+	@Test
+	public void dropCountsNewValues() {
+		XYPlotDataQueue queue = new XYPlotDataQueue(8, OverflowPolicy.DROP);
+		for (int i = 0; i < 20; ++i) {
+			assertEquals(i == 0, queue.offer(0, i));
+		}
+		assertEquals(12, queue.drops());
+		assertEquals(8, queue.depth());
+		double[] value = new double[2];
+		for (int i = 0; i < 8; ++i) {
+			assertTrue(queue.poll(value));
+			assertEquals(i, value[1]);
+		}
+		assertFalse(queue.poll(value));
+	}
+
+	@Test
+	public void dropOldestCountsOldValues() {
+		XYPlotDataQueue queue = new XYPlotDataQueue(8, OverflowPolicy.DROP_OLDEST);
+		for (int i = 0; i < 20; ++i) {
+			queue.offer(0, i);
+		}
+		assertEquals(12, queue.drops());
+		double[] value = new double[2];
+		for (int i = 12; i < 20; ++i) {
+			assertTrue(queue.poll(value));
+			assertEquals(i, value[1]);
+		}
+		assertFalse(queue.poll(value));
+	}
+
+	@Test
+	public void blockGivesUpWithoutConsumer() {
+		XYPlotDataQueue queue = new XYPlotDataQueue(2, OverflowPolicy.BLOCK, 20000000L);
+		queue.offer(0, 0);
+		queue.offer(0, 1);
+		long start = System.nanoTime();
+		assertFalse(queue.offer(0, 2));
+		assertTrue(System.nanoTime() - start >= 20000000L, "Waited for the timeout");
+		assertEquals(1, queue.drops());
+		double[] value = new double[2];
+		assertTrue(queue.poll(value));
+		assertEquals(0, value[1]);
+		// Room again, the next value is not dropped
+		queue.offer(0, 3);
+		assertTrue(queue.poll(value));
+		assertTrue(queue.poll(value));
+		assertEquals(3, value[1]);
+		assertEquals(1, queue.drops());
+	}
+
+	/**
+	 * Let the producers fill a small queue while it is drained slowly. Each value
+	 * must be either received or counted as dropped, and the values received
+	 * from a producer must keep their order.
+	 */
+	private static void checkConcurrentDrops(OverflowPolicy policy) throws InterruptedException {
+		XYPlotDataQueue queue = new XYPlotDataQueue(64, policy);
+		CountDownLatch done = new CountDownLatch(PRODUCERS);
+		Thread[] producers = start(queue, done);
+		int[] last = new int[PRODUCERS];
+		Arrays.fill(last, -1);
+		double[] value = new double[2];
+		long received = 0;
+		for (;;) {
+			boolean finished = done.getCount() == 0;
+			while (queue.poll(value)) {
+				int producer = (int) value[0];
+				assertTrue(value[1] > last[producer], "Order of producer " + producer);
+				last[producer] = (int) value[1];
+				received++;
+			}
+			if (finished) {
+				break;
+			}
+			Thread.sleep(1);
+		}
+		join(producers);
+		assertEquals((long) PRODUCERS * VALUES, received + queue.drops(), "Received and dropped values");
+		assertTrue(queue.drops() > 0, "Nothing dropped");
+	}
+
+	private static Thread[] start(final XYPlotDataQueue queue, final CountDownLatch done) {
+		Thread[] result = new Thread[PRODUCERS];
+		for (int p = 0; p < PRODUCERS; ++p) {
+			final int producer = p;
+			result[p] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < VALUES; ++i) {
+						queue.offer(producer, i);
+					}
+					done.countDown();
+				}
+			};
+			result[p].start();
+		}
+		return result;
+	}
+
+	private static void join(Thread[] threads) throws InterruptedException {
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+}
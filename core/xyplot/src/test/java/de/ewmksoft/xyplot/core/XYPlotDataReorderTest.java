@@ -0,0 +1,171 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.ewmksoft.xyplot.core.IXYGraphLib.RGB;
+
+/**
+ * Tests the heap of {@link XYPlotDataReorder}: values leave the window in
+ * ascending order of their x values, values with the same x value in their
+ * order of arrival.
+ */
+public class XYPlotDataReorderTest {
+	private static final RGB COLOR = new RGB("255/0/0/0");
+	private static final int CAPACITY = 100000;
+
+	@Test
+	public void equalXValuesKeepArrivalOrder() {
+		XYPlotDataReorder reorder = new XYPlotDataReorder(0, 1000, Double.NEGATIVE_INFINITY);
+		Random random = new Random(1);
+		List<double[]> offered = new ArrayList<double[]>();
+		for (int i = 0; i < 1000; ++i) {
+			// Few distinct x values, the y value is the arrival number
+			double x = random.nextInt(10);
+			assertTrue(reorder.offer(x, i));
+			offered.add(new double[] { x, i });
+		}
+		// A stable sort keeps the arrival order of equal x values
+		Collections.sort(offered, new Comparator<double[]>() {
+			public int compare(double[] a, double[] b) {
+				return Double.compare(a[0], b[0]);
+			}
+		});
+		double[] value = new double[2];
+		for (double[] expected : offered) {
+			assertTrue(reorder.flush(value));
+			assertEquals(expected[0], value[0]);
+			assertEquals(expected[1], value[1]);
+		}
+		assertFalse(reorder.flush(value));
+	}
+
+	@Test
+	public void releasedInOrderAfterDelay() {
+		XYPlotDataReorder reorder = new XYPlotDataReorder(5, 0, Double.NEGATIVE_INFINITY);
+		Random random = new Random(2);
+		double[] value = new double[2];
+		double last = Double.NEGATIVE_INFINITY;
+		int released = 0;
+		for (int i = 0; i < 5000; ++i) {
+			// Jitter of up to 4 x units, so no value arrives late
+			double x = i + 4 * random.nextDouble();
+			assertTrue(reorder.offer(x, i));
+			while (reorder.poll(value, CAPACITY)) {
+				assertTrue(value[0] >= last, "Order at " + i);
+				assertTrue(value[0] < x + 4 - 5, "Released too early at " + i);
+				last = value[0];
+				released++;
+			}
+		}
+		while (reorder.flush(value)) {
+			assertTrue(value[0] >= last);
+			last = value[0];
+			released++;
+		}
+		assertEquals(5000, released);
+	}
+
+	@Test
+	public void lateValuesAreRejected() {
+		XYPlotDataReorder reorder = new XYPlotDataReorder(0, 2, 10);
+		assertFalse(reorder.offer(9, 0));
+		assertTrue(reorder.offer(10, 1));
+		assertTrue(reorder.offer(12, 2));
+		assertTrue(reorder.offer(11, 3));
+		double[] value = new double[2];
+		assertTrue(reorder.poll(value, CAPACITY));
+		assertEquals(10, value[0]);
+		assertFalse(reorder.poll(value, CAPACITY));
+		assertTrue(reorder.flush(value));
+		assertEquals(11, value[0]);
+		assertFalse(reorder.offer(10.5, 4));
+		assertTrue(reorder.offer(11, 5));
+		assertEquals(2, reorder.depth());
+	}
+
+	@Test
+	public void windowWithoutPendingLimitIsCapped() {
+		XYPlotData data = XYPlot.createDataHandler(500, COLOR);
+		data.setReorderWindow(1e9, 0);
+		for (int i = 0; i < 5000; ++i) {
+			// All values lie within the delay, in reverse order per block
+			data.addValue(i + 9 - 2 * (i % 10), i);
+		}
+		assertEquals(500, data.getReorderWindowDepth());
+		assertEquals(500, data.length());
+		assertEquals(500, data.flushReorderWindow());
+		// The ring buffer keeps the newest values in ascending order
+		for (int i = 1; i < data.length(); ++i) {
+			assertTrue(data.getValue(i - 1).x() <= data.getValue(i).x());
+		}
+		assertEquals(4999, data.getXMax());
+	}
+}
@@ -0,0 +1,306 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.ewmksoft.xyplot.core.IXYGraphLib.RGB;
+
+/**
+ * Tests the retention limits of {@link XYPlotData} with bursts of values of
+ * varying x spacing. After each burst the kept values are compared with the
+ * values a brute force application of the limits keeps, and the structures
+ * updated on eviction (extrema, block index, level of detail, statistics)
+ * are compared with a recomputation from the kept values.
+ */
+public class XYPlotDataRetentionTest {
+	private static final RGB COLOR = new RGB("255/0/0/0");
+	private static final int CAPACITY = 200000;
+	private static final int BYTES_PER_VALUE = 16;
+
+	@Test
+	public void ageLimit() {
+		checkBursts(500.0, 0, 0, 1);
+	}
+
+	@Test
+	public void countLimit() {
+		checkBursts(0, 3000, 0, 2);
+	}
+
+	@Test
+	public void bytesLimit() {
+		checkBursts(0, 0, 2500 * BYTES_PER_VALUE + 7, 3);
+	}
+
+	@Test
+	public void combinedLimits() {
+		checkBursts(2000.0, 4000, 3000 * BYTES_PER_VALUE, 4);
+	}
+
+	@Test
+	public void derivedStructuresAfterEviction() {
+		Random random = new Random(5);
+		XYPlotData data = XYPlot.createDataHandler(CAPACITY, COLOR);
+		data.setRetention(300.0, 5000, 0);
+		History history = new History();
+		for (int burst = 0; burst < 120; ++burst) {
+			addBurst(data, history, random);
+			int start = expectedStart(history, 300.0, 5000, 0);
+			assertKept(data, history, start);
+			if (burst % 10 == 0) {
+				checkDerived(data, history, start, random);
+			}
+		}
+		checkDerived(data, history, expectedStart(history, 300.0, 5000, 0), random);
+	}
+
+	private static void checkBursts(double maxAge, int maxCount, long maxBytes, long seed) {
+		Random random = new Random(seed);
+		XYPlotData data = XYPlot.createDataHandler(CAPACITY, COLOR);
+		data.setRetention(maxAge, maxCount, maxBytes);
+		History history = new History();
+		for (int burst = 0; burst < 200; ++burst) {
+			addBurst(data, history, random);
+			int start = expectedStart(history, maxAge, maxCount, maxBytes);
+			assertKept(data, history, start);
+			int length = data.length();
+			assertTrue(length >= 1);
+			if (maxAge > 0) {
+				assertTrue(data.getXMax() - data.getXMin() <= maxAge || length == 1, "Age after burst " + burst);
+			}
+			if (maxCount > 0) {
+				assertTrue(length <= maxCount, "Count after burst " + burst);
+			}
+			if (maxBytes > 0) {
+				assertTrue((long) length * BYTES_PER_VALUE <= maxBytes, "Bytes after burst " + burst);
+			}
+		}
+	}
+
+	/**
+	 * Add a burst of values with a random spacing of the x values, sometimes
+	 * after a gap. Single values and blocks are mixed.
+	 */
+	private static void addBurst(XYPlotData data, History history, Random random) {
+		double[] spacings = new double[] { 0.001, 0.1, 1, 50 };
+		double spacing = spacings[random.nextInt(spacings.length)];
+		double x = history.size > 0 ? history.x[history.size - 1] : 0;
+		if (random.nextInt(8) == 0) {
+			x += 1000 * random.nextDouble();
+		}
+		int num = 1 + random.nextInt(500);
+		double[] xs = new double[num];
+		double[] ys = new double[num];
+		for (int i = 0; i < num; ++i) {
+			x += spacing * (0.5 + random.nextDouble());
+			xs[i] = x;
+			ys[i] = 100 * Math.sin(0.001 * history.size) + random.nextGaussian();
+		}
+		if (random.nextBoolean()) {
+			data.addValues(xs, ys, 0, num);
+		} else {
+			for (int i = 0; i < num; ++i) {
+				data.addValue(xs[i], ys[i]);
+			}
+		}
+		for (int i = 0; i < num; ++i) {
+			history.add(xs[i], ys[i]);
+		}
+	}
+
+	/**
+	 * Get the index of the oldest value in the history the limits keep. Values
+	 * are only dropped from the start, so applying the limits once to all
+	 * values gives the same result as applying them after each value.
+	 */
+	private static int expectedStart(History history, double maxAge, int maxCount, long maxBytes) {
+		long limit = history.size;
+		if (maxCount > 0) {
+			limit = Math.min(limit, maxCount);
+		}
+		if (maxBytes > 0) {
+			limit = Math.min(limit, maxBytes / BYTES_PER_VALUE);
+		}
+		int start = (int) (history.size - Math.max(limit, 1));
+		if (maxAge > 0) {
+			double oldest = history.x[history.size - 1] - maxAge;
+			while (start < history.size - 1 && history.x[start] < oldest) {
+				start++;
+			}
+		}
+		return start;
+	}
+
+	private static void assertKept(XYPlotData data, History history, int start) {
+		assertEquals(history.size - start, data.length());
+		assertEquals(history.x[start], data.getXMin());
+		assertEquals(history.x[history.size - 1], data.getXMax());
+	}
+
+	private static void checkDerived(XYPlotData data, History history, int start, Random random) {
+		int length = data.length();
+		for (int i = 0; i < length; i += 1 + random.nextInt(20)) {
+			assertEquals(history.x[start + i], data.getValue(i).x());
+			assertEquals(history.y[start + i], data.getValue(i).y());
+		}
+		// Extrema
+		assertEquals(min(history, start, history.size - 1), data.getYMin());
+		assertEquals(max(history, start, history.size - 1), data.getYMax());
+		for (int n = 0; n < 50; ++n) {
+			int from = random.nextInt(length);
+			int to = from + random.nextInt(length - from);
+			// Block index
+			XYPlotData.MinMax range = data.getYRange(from, to);
+			assertEquals(min(history, start + from, start + to), range.getMin(), "Minimum of " + from + ".." + to);
+			assertEquals(max(history, start + from, start + to), range.getMax(), "Maximum of " + from + ".." + to);
+			// Statistics
+			XYPlotData.Statistics moments = data.getMoments(from, to);
+			double mean = 0;
+			for (int i = from; i <= to; ++i) {
+				mean += history.y[start + i];
+			}
+			mean /= to - from + 1;
+			double variance = 0;
+			for (int i = from; i <= to; ++i) {
+				double d = history.y[start + i] - mean;
+				variance += d * d;
+			}
+			variance /= to - from + 1;
+			assertEquals(to - from + 1, moments.getCount());
+			assertEquals(mean, moments.getMean(), 1e-9 * (1 + Math.abs(mean)));
+			assertEquals(variance, moments.getVariance(), 1e-9 * (1 + variance));
+		}
+		XYPlotData.Statistics total = data.getStatistics();
+		assertEquals(length, total.getCount());
+		XYPlotData.Statistics range = data.getMoments(0, length - 1);
+		assertEquals(range.getMean(), total.getMean(), 1e-9 * (1 + Math.abs(range.getMean())));
+		assertEquals(range.getVariance(), total.getVariance(), 1e-6 * (1 + range.getVariance()));
+		// Level of detail
+		int[] vertices = new int[4];
+		int buckets = 0;
+		data.lock();
+		try {
+			for (int level = 0; XYPlotDataLod.bucketSize(level) <= length; ++level) {
+				int size = XYPlotDataLod.bucketSize(level);
+				for (int i = 0; i + size <= length; ++i) {
+					int n = data.getLodVertices(level, i, length, vertices);
+					if (n == 0) {
+						continue;
+					}
+					buckets++;
+					assertEquals(i, vertices[0]);
+					assertEquals(i + size - 1, vertices[n - 1]);
+					double lo = Double.POSITIVE_INFINITY;
+					double hi = Double.NEGATIVE_INFINITY;
+					for (int k = 0; k < n; ++k) {
+						lo = Math.min(lo, history.y[start + vertices[k]]);
+						hi = Math.max(hi, history.y[start + vertices[k]]);
+					}
+					assertEquals(min(history, start + i, start + i + size - 1), lo, "Bucket minimum " + level + " " + i);
+					assertEquals(max(history, start + i, start + i + size - 1), hi, "Bucket maximum " + level + " " + i);
+				}
+			}
+		} finally {
+			data.unlock();
+		}
+		assertTrue(buckets > 0 || length < 2 * XYPlotDataLod.bucketSize(0));
+	}
+
+	private static double min(History history, int from, int to) {
+		double result = Double.POSITIVE_INFINITY;
+		for (int i = from; i <= to; ++i) {
+			result = Math.min(result, history.y[i]);
+		}
+		return result;
+	}
+
+	private static double max(History history, int from, int to) {
+		double result = Double.NEGATIVE_INFINITY;
+		for (int i = from; i <= to; ++i) {
+			result = Math.max(result, history.y[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * All values added so far.
+	 */
+	private static class History {
+		double[] x = new double[1024];
+		double[] y = new double[1024];
+		int size;
+
+		void add(double xv, double yv) {
+			if (size == x.length) {
+				x = Arrays.copyOf(x, 2 * size);
+				y = Arrays.copyOf(y, 2 * size);
+			}
+			x[size] = xv;
+			y[size] = yv;
+			size++;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.ewmksoft.xyplot.core.IXYGraphLib.RGB;
+import de.ewmksoft.xyplot.core.XYPlotDataSpectrum.Window;
+
+/**
+ * Tests that {@link XYPlotDataSpectrum} gives the magnitudes of a brute-force
+ * discrete Fourier transform of the weighted frame, and when new spectra are
+ * computed, at most one per paint.
+ */
+public class XYPlotDataSpectrumTest {
+	private static final RGB COLOR = new RGB("255/0/0/0");
+
+	@Test
+	public void rectangularMatchesBruteForceDft() {
+		XYPlotData data = XYPlot.createDataHandler(10000, COLOR);
+		Random random = new Random(1);
+		int n = 64;
+		double[] values = new double[n];
+		for (int i = 0; i < n; ++i) {
+			values[i] = random.nextGaussian();
+			data.addValue(i * 0.5, values[i]);
+		}
+		XYPlotDataSpectrum spectrum = new XYPlotDataSpectrum(data, n, Window.RECTANGULAR, 0);
+		assertTrue(spectrum.update());
+		assertSpectrum(values, Window.RECTANGULAR, 0.5, spectrum);
+		assertFalse(spectrum.update(), "No new values");
+	}
+
+	@Test
+	public void windowedMatchesBruteForceDft() {
+		int n = 256;
+		for (Window window : Window.values()) {
+			XYPlotData data = XYPlot.createDataHandler(10000, COLOR);
+			Random random = new Random(2);
+			XYPlotDataSpectrum spectrum = new XYPlotDataSpectrum(data, n, window, 0);
+			// More values than a frame, so the frame wraps in the frame buffer
+			int num = 3 * n + 37;
+			double[] values = new double[n];
+			for (int i = 0; i < num; ++i) {
+				double y = Math.sin(0.3 * i) + random.nextGaussian();
+				data.addValue(i * 0.01, y);
+				if (i >= num - n) {
+					values[i - (num - n)] = y;
+				}
+				if (i == n / 2) {
+					assertFalse(spectrum.update(), "Frame not full with " + window);
+				}
+			}
+			assertTrue(spectrum.update());
+			assertSpectrum(values, window, 0.01, spectrum);
+		}
+	}
+
+	@Test
+	public void sineAmplitude() {
+		XYPlotData data = XYPlot.createDataHandler(10000, COLOR);
+		XYPlotDataSpectrum spectrum = new XYPlotDataSpectrum(data, 1024, Window.FLAT_TOP, 0);
+		double rate = 1000;
+		double frequency = 123.4;
+		for (int i = 0; i < 1024; ++i) {
+			data.addValue(i / rate, 3 * Math.sin(2 * Math.PI * frequency * i / rate));
+		}
+		assertTrue(spectrum.update());
+		int peak = 0;
+		for (int k = 1; k < spectrum.length(); ++k) {
+			if (spectrum.getValue(k).y() > spectrum.getValue(peak).y()) {
+				peak = k;
+			}
+		}
+		assertEquals(3, spectrum.getValue(peak).y(), 0.01);
+		assertEquals(frequency, spectrum.getValue(peak).x(), rate / 1024);
+	}
+
+	@Test
+	public void newSpectrumAfterHopAndBreak() {
+		XYPlotData data = XYPlot.createDataHandler(100000, COLOR);
+		XYPlotDataSpectrum spectrum = new XYPlotDataSpectrum(data, 1024, Window.HANN, 0.75);
+		int i = 0;
+		for (; i < 1024; ++i) {
+			data.addValue(i, Math.sin(0.1 * i));
+		}
+		// Painting only draws the spectrum, it does not compute one
+		spectrum.refresh();
+		assertEquals(0, spectrum.length(), "Computed while painting");
+		assertTrue(spectrum.update());
+		spectrum.refresh();
+		long version = spectrum.getDataVersion();
+		for (; i < 1024 + 255; ++i) {
+			data.addValue(i, Math.sin(0.1 * i));
+		}
+		assertFalse(spectrum.update(), "Less than a hop");
+		data.addValue(i++, 0);
+		assertTrue(spectrum.update(), "A hop of new values");
+		assertTrue(spectrum.getDataVersion() != version);
+		spectrum.refresh();
+		// The values before a break are not used
+		data.setPause();
+		for (int k = 0; k < 1000; ++k) {
+			data.addValue(i++, 1);
+		}
+		assertFalse(spectrum.update(), "Frame after the break not full");
+		for (int k = 0; k < 24; ++k) {
+			data.addValue(i++, 1);
+		}
+		assertTrue(spectrum.update());
+		assertEquals(1, spectrum.getValue(0).y(), 1e-9);
+		assertEquals(513, spectrum.length());
+	}
+
+	@Test
+	public void oneSpectrumPerPaint() {
+		XYPlotData data = XYPlot.createDataHandler(100000, COLOR);
+		XYPlotDataSpectrum spectrum = new XYPlotDataSpectrum(data, 256, Window.RECTANGULAR, 0);
+		int i = 0;
+		for (; i < 256; ++i) {
+			data.addValue(i, 0);
+		}
+		// Not shown in a plot yet, each frame is transformed
+		assertTrue(spectrum.update());
+		for (; i < 512; ++i) {
+			data.addValue(i, 1);
+		}
+		assertTrue(spectrum.update(), "Not painted by a plot");
+		spectrum.refresh();
+		for (; i < 768; ++i) {
+			data.addValue(i, 2);
+		}
+		assertTrue(spectrum.update(), "Last spectrum painted");
+		for (; i < 1024; ++i) {
+			data.addValue(i, 3);
+		}
+		assertFalse(spectrum.update(), "Last spectrum not painted yet");
+		assertEquals(2, spectrum.getValue(0).y(), 1e-9);
+		for (; i < 1280; ++i) {
+			data.addValue(i, 4);
+		}
+		spectrum.refresh();
+		// Only the newest frame is transformed after painting
+		assertTrue(spectrum.update(), "Last spectrum painted");
+		assertEquals(4, spectrum.getValue(0).y(), 1e-9);
+		assertFalse(spectrum.update(), "No new values");
+	}
+
+	private static void assertSpectrum(double[] values, Window window, double interval,
+			XYPlotDataSpectrum spectrum) {
+		int n = values.length;
+		double[] weight = new double[n];
+		double weightSum = 0;
+		for (int i = 0; i < n; ++i) {
+			weight[i] = weight(window, 2 * Math.PI * i / n);
+			weightSum += weight[i];
+		}
+		assertEquals(n / 2 + 1, spectrum.length());
+		for (int k = 0; k <= n / 2; ++k) {
+			double re = 0;
+			double im = 0;
+			for (int i = 0; i < n; ++i) {
+				re += values[i] * weight[i] * Math.cos(2 * Math.PI * k * i / n);
+				im -= values[i] * weight[i] * Math.sin(2 * Math.PI * k * i / n);
+			}
+			double magnitude = (k == 0 || k == n / 2 ? 1 : 2) * Math.hypot(re, im) / weightSum;
+			assertEquals(magnitude, spectrum.getValue(k).y(), 1e-9, window + " magnitude " + k);
+			assertEquals(k / (n * interval), spectrum.getValue(k).x(), 1e-9, window + " frequency " + k);
+		}
+	}
+
+	private static double weight(Window window, double phase) {
+		switch (window) {
+		case HANN:
+			return 0.5 - 0.5 * Math.cos(phase);
+		case HAMMING:
+			return 0.54 - 0.46 * Math.cos(phase);
+		case FLAT_TOP:
+			return 0.21557895 - 0.41663158 * Math.cos(phase) + 0.277263158 * Math.cos(2 * phase) - 0.083578947
+					* Math.cos(3 * phase) + 0.006947368 * Math.cos(4 * phase);
+		default:
+			return 1;
+		}
+	}
+}
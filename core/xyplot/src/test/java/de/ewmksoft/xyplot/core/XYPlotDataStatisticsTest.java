@@ -0,0 +1,127 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.ewmksoft.xyplot.core.IXYGraphLib.RGB;
+
+/**
+ * Tests that the statistics of {@link XYPlotData}, which are created by the
+ * first query, match a brute-force computation before and after values have
+ * been dropped from the ring buffer.
+ */
+public class XYPlotDataStatisticsTest {
+	private static final RGB COLOR = new RGB("255/0/0/0");
+
+	@Test
+	public void createdByFirstQuery() {
+		XYPlotData data = XYPlot.createDataHandler(5000, COLOR);
+		Random random = new Random(1);
+		// The ring buffer has wrapped before the first query
+		for (int i = 0; i < 12345; ++i) {
+			data.addValue(i, random.nextGaussian() * 3 + 1);
+		}
+		check(data);
+		// Maintained from now on while values are added and dropped
+		for (int i = 12345; i < 20000; ++i) {
+			data.addValue(i, random.nextGaussian() + 5);
+			if (i % 1111 == 0) {
+				check(data);
+			}
+		}
+		check(data);
+		data.setMaxNumber(3000);
+		check(data);
+		data.clear();
+		assertEquals(0, data.getStatistics().getCount());
+		data.addValue(0, 2);
+		check(data);
+	}
+
+	private static void check(XYPlotData data) {
+		int num = data.length();
+		assertEquals(num, data.getStatistics().getCount());
+		assertMoments(data, 0, num - 1, data.getStatistics());
+		int from = num / 7;
+		int to = num - 1 - num / 5;
+		assertMoments(data, from, to, data.getMoments(from, to));
+		assertMoments(data, from, to, data.getStatistics(from, to));
+	}
+
+	private static void assertMoments(XYPlotData data, int from, int to, XYPlotData.Statistics statistics) {
+		double sum = 0;
+		for (int i = from; i <= to; ++i) {
+			sum += data.getValue(i).y();
+		}
+		double mean = sum / (to - from + 1);
+		double m2 = 0;
+		for (int i = from; i <= to; ++i) {
+			double d = data.getValue(i).y() - mean;
+			m2 += d * d;
+		}
+		assertEquals(to - from + 1, statistics.getCount(), "Count " + from + "-" + to);
+		assertEquals(mean, statistics.getMean(), 1e-9, "Mean " + from + "-" + to);
+		assertEquals(m2 / (to - from + 1), statistics.getVariance(), 1e-6, "Variance " + from + "-" + to);
+	}
+}
@@ -0,0 +1,267 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.ewmksoft.xyplot.core.XYPlotDataTrigger.Mode;
+import de.ewmksoft.xyplot.core.XYPlotDataTrigger.Trigger;
+
+/**
+ * Tests the trigger conditions and the holdoff of {@link XYPlotDataTrigger}
+ * against a brute-force search of the triggers, and the frames and modes.
+ */
+public class XYPlotDataTriggerTest {
+
+	@Test
+	public void conditionsMatchBruteForce() {
+		Random random = new Random(1);
+		int num = 5000;
+		double[] xs = new double[num];
+		double[] ys = new double[num];
+		for (int i = 0; i < num; ++i) {
+			xs[i] = i;
+			// Few distinct values, so the levels are hit exactly
+			ys[i] = random.nextInt(7) - 3;
+		}
+		for (Trigger trigger : Trigger.values()) {
+			for (int post = 1; post <= 4; post += 3) {
+				for (double holdoff = 0; holdoff <= 10; holdoff += 10) {
+					XYPlotDataTrigger data = new XYPlotDataTrigger(2, post);
+					data.setTrigger(trigger, 0, 1);
+					data.setHoldoff(holdoff);
+					List<Double> expected = triggers(xs, ys, trigger, 0, 1, post, holdoff);
+					assertEquals(expected, feed(data, xs, ys), trigger + " post " + post + " holdoff " + holdoff);
+					assertTrue(expected.size() > 10, "Too few triggers for " + trigger);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void holdoffIgnoresTriggers() {
+		XYPlotDataTrigger data = new XYPlotDataTrigger(0, 2);
+		data.setTrigger(Trigger.RISING_EDGE, 0.5);
+		data.setHoldoff(25);
+		int num = 100;
+		double[] xs = new double[num];
+		double[] ys = new double[num];
+		for (int i = 0; i < num; ++i) {
+			// Pulses every 10 x units
+			xs[i] = i;
+			ys[i] = i % 10 == 0 ? 1 : 0;
+		}
+		List<Double> actual = feed(data, xs, ys);
+		// The first value has no previous value, so there is no edge
+		List<Double> expected = new ArrayList<Double>();
+		expected.add(10.0);
+		expected.add(40.0);
+		expected.add(70.0);
+		assertEquals(expected, actual);
+		// A trigger exactly at the end of the holdoff is taken, clearing
+		// starts without holdoff
+		data.setHoldoff(30);
+		data.clear();
+		actual = feed(data, xs, ys);
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void frameHoldsValuesAroundTrigger() {
+		XYPlotDataTrigger data = new XYPlotDataTrigger(3, 4);
+		data.setTrigger(Trigger.FALLING_EDGE, 0);
+		for (int i = 0; i < 20; ++i) {
+			data.addValue(100 + 0.5 * i, i < 10 ? 1 : -1);
+		}
+		assertEquals(1, data.getFrameCount());
+		assertEquals(105, data.getTriggerX());
+		assertEquals(7, data.length());
+		for (int i = 0; i < 7; ++i) {
+			// The x values are relative to the trigger value
+			assertEquals(0.5 * (i - 3), data.getValue(i).x(), 1e-12);
+			assertEquals(i < 3 ? 1 : -1, data.getValue(i).y());
+		}
+		// The trigger of the frame shown stays while the next one is captured
+		data.addValue(110, 1);
+		data.addValue(110.5, -1);
+		data.addValue(111, -1);
+		assertEquals(1, data.getFrameCount());
+		assertEquals(105, data.getTriggerX());
+		data.addValue(111.5, -1);
+		data.addValue(112, -1);
+		assertEquals(2, data.getFrameCount());
+		assertEquals(110.5, data.getTriggerX());
+	}
+
+	@Test
+	public void modes() {
+		XYPlotDataTrigger data = new XYPlotDataTrigger(2, 3);
+		data.setTrigger(Trigger.ABOVE, 10);
+		for (int i = 0; i < 20; ++i) {
+			data.addValue(i, 0);
+		}
+		assertEquals(0, data.getFrameCount(), "Normal mode waits for a trigger");
+
+		data.setMode(Mode.AUTO);
+		for (int i = 20; i < 25; ++i) {
+			data.addValue(i, 0);
+		}
+		assertEquals(1, data.getFrameCount(), "Auto mode shows a frame after a frame length");
+		assertTrue(Double.isNaN(data.getTriggerX()));
+		assertEquals(0, data.getValue(2).x());
+
+		data.setMode(Mode.SINGLE);
+		for (int i = 25; i < 40; ++i) {
+			data.addValue(i, 20);
+		}
+		assertEquals(2, data.getFrameCount(), "Single mode shows one frame");
+		assertEquals(25, data.getTriggerX());
+		assertFalse(data.isArmed());
+		data.arm();
+		data.addValue(40, 20);
+		data.addValue(41, 20);
+		data.addValue(42, 20);
+		assertEquals(3, data.getFrameCount());
+		assertEquals(40, data.getTriggerX());
+
+		// A break drops the frame being captured
+		data.setMode(Mode.NORMAL);
+		data.addValue(43, 20);
+		data.setPause();
+		data.addValue(44, 0);
+		data.addValue(45, 0);
+		assertEquals(3, data.getFrameCount());
+	}
+
+	/**
+	 * Feed the values one by one and collect the trigger x values of the
+	 * frames shown.
+	 */
+	private static List<Double> feed(XYPlotDataTrigger data, double[] xs, double[] ys) {
+		List<Double> result = new ArrayList<Double>();
+		long frames = data.getFrameCount();
+		for (int i = 0; i < xs.length; ++i) {
+			data.addValue(xs[i], ys[i]);
+			if (data.getFrameCount() != frames) {
+				frames = data.getFrameCount();
+				result.add(data.getTriggerX());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the triggers of the frames completed: a value meeting the condition
+	 * with respect to the previous value, outside of the holdoff of the last
+	 * trigger, while no frame is being captured.
+	 */
+	private static List<Double> triggers(double[] xs, double[] ys, Trigger trigger, double low, double high,
+			int post, double holdoff) {
+		List<Double> result = new ArrayList<Double>();
+		double lastTrigger = Double.NEGATIVE_INFINITY;
+		int i = 0;
+		while (i < xs.length) {
+			// The first value has no previous value, only levels are checked
+			double a = i > 0 ? ys[i - 1] : Double.NaN;
+			double b = ys[i];
+			boolean found;
+			switch (trigger) {
+			case RISING_EDGE:
+				found = a < low && b >= low;
+				break;
+			case FALLING_EDGE:
+				found = a > low && b <= low;
+				break;
+			case ANY_EDGE:
+				found = (a < low && b >= low) || (a > low && b <= low);
+				break;
+			case ABOVE:
+				found = b >= low;
+				break;
+			case BELOW:
+				found = b <= low;
+				break;
+			case LEAVE_WINDOW:
+				found = a >= low && a <= high && (b < low || b > high);
+				break;
+			default:
+				found = (a < low || a > high) && b >= low && b <= high;
+				break;
+			}
+			if (found && xs[i] - lastTrigger >= holdoff) {
+				lastTrigger = xs[i];
+				if (i + post - 1 < xs.length) {
+					result.add(xs[i]);
+				}
+				i += post;
+			} else {
+				++i;
+			}
+		}
+		return result;
+	}
+}
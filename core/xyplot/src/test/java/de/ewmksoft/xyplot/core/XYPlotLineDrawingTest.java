@@ -0,0 +1,258 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import de.ewmksoft.xyplot.core.IXYGraphLib.RGB;
+import de.ewmksoft.xyplot.core.IXYGraphLib.Rect;
+import de.ewmksoft.xyplot.core.IXYPlot.LineDrawing;
+
+/**
+ * Tests that the {@link LineDrawing#M4} mode draws the same pixels as
+ * {@link LineDrawing#FULL}. The plot paints into a graphics library stub which
+ * rasterizes the data polylines, and the covered pixels are compared per pixel
+ * column.
+ */
+public class XYPlotLineDrawingTest {
+	private static final Rect BOUNDS = new Rect(0, 0, 800, 600);
+
+	@Test
+	public void manyValuesPerColumn() {
+		XYPlotData data = randomWalk(200000, 0.5, 0, 0, 1);
+		assertSamePixels(data, LineDrawing.M4, 0, 100000);
+	}
+
+	@Test
+	public void fewValuesPerColumn() {
+		XYPlotData data = randomWalk(1000, 0.5, 0, 0, 2);
+		assertSamePixels(data, LineDrawing.M4, 0, 500);
+	}
+
+	@Test
+	public void pauseBorders() {
+		XYPlotData data = randomWalk(100000, 0.5, 500, 0, 3);
+		assertSamePixels(data, LineDrawing.M4, 0, 50000);
+		// Zoomed in, so the pauses are a few pixels apart
+		assertSamePixels(data, LineDrawing.M4, 10000, 12000);
+	}
+
+	@Test
+	public void gaps() {
+		XYPlotData data = randomWalk(100000, 0.5, 0, 2000, 4);
+		assertSamePixels(data, LineDrawing.M4, 0, data.getXMax());
+	}
+
+	@Test
+	public void partlyVisibleColumns() {
+		XYPlotData data = randomWalk(100000, 0.5, 3000, 0, 5);
+		// The x range starts and ends inside pixel columns and the data
+		// continues on both sides
+		assertSamePixels(data, LineDrawing.M4, 1234.567, 43210.987);
+		assertSamePixels(data, LineDrawing.M4, 20000.003, 20099.991);
+	}
+
+	/**
+	 * Create a random walk.
+	 * 
+	 * @param num    Number of values
+	 * @param dx     Distance of the x values
+	 * @param pauses Mean number of values between two pauses or 0 for none
+	 * @param gaps   Mean number of values between two gaps in x or 0 for none
+	 * @param seed   Seed of the random numbers
+	 */
+	private static XYPlotData randomWalk(int num, double dx, int pauses, int gaps, long seed) {
+		XYPlotData data = XYPlot.createDataHandler(num, new RGB("255/0/0/0"));
+		Random random = new Random(seed);
+		double x = 0;
+		double y = 0;
+		for (int i = 0; i < num; ++i) {
+			y += random.nextGaussian();
+			data.addValue(x, y);
+			x += dx;
+			if (pauses > 0 && random.nextInt(pauses) == 0) {
+				data.setPause();
+			}
+			if (gaps > 0 && random.nextInt(gaps) == 0) {
+				x += 500 * dx;
+			}
+		}
+		return data;
+	}
+
+	private static void assertSamePixels(XYPlotData data, LineDrawing mode, double xmin, double xmax) {
+		Map<Integer, BitSet> expected = paint(data, LineDrawing.FULL, xmin, xmax);
+		Map<Integer, BitSet> actual = paint(data, mode, xmin, xmax);
+		assertTrue(expected.size() > 100, "Too few columns drawn");
+		assertEquals(expected.keySet(), actual.keySet(), mode + ": drawn columns");
+		for (Map.Entry<Integer, BitSet> column : expected.entrySet()) {
+			assertEquals(column.getValue(), actual.get(column.getKey()), mode + ": pixels of column " + column.getKey());
+		}
+	}
+
+	private static Map<Integer, BitSet> paint(XYPlotData data, LineDrawing mode, double xmin, double xmax) {
+		Recorder recorder = new Recorder();
+		XYPlot plot = (XYPlot) XYPlot.createXYPlot(recorder.graphLib());
+		plot.setBounds(BOUNDS);
+		plot.setDataHandlers(new XYPlotData[] { data });
+		plot.setLineDrawing(mode);
+		plot.setXRange(xmin, xmax);
+		plot.paintGraph();
+		return recorder.columns;
+	}
+
+	/**
+	 * Graphics library stub. Only the polylines drawn with the color of the
+	 * first data handler are recorded.
+	 */
+	private static class Recorder implements InvocationHandler {
+		final Map<Integer, BitSet> columns = new TreeMap<Integer, BitSet>();
+		private final Object graphLibInt;
+		private boolean plotColor;
+
+		Recorder() {
+			graphLibInt = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { IXYGraphLibInt.class },
+					this);
+		}
+
+		IXYGraphLib graphLib() {
+			return (IXYGraphLib) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { IXYGraphLib.class }, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("getInt")) {
+				return graphLibInt;
+			} else if (name.equals("getBounds")) {
+				return BOUNDS;
+			} else if (name.equals("getAverageCharacterSize") || name.equals("getStringExtends")) {
+				return new IXYGraphLibInt.Pt(7, 12);
+			} else if (name.equals("setFgPlotColor")) {
+				plotColor = ((Integer) args[0]).intValue() == 0;
+			} else if (name.equals("setFgColor")) {
+				plotColor = false;
+			} else if (name.equals("drawPolyline") && plotColor) {
+				int[] points = (int[]) args[0];
+				int num = ((Integer) args[1]).intValue();
+				for (int i = 0; i + 3 < num; i += 2) {
+					line(points[i], points[i + 1], points[i + 2], points[i + 3]);
+				}
+				if (num == 2) {
+					line(points[0], points[1], points[0], points[1]);
+				}
+			}
+			Class<?> type = method.getReturnType();
+			if (type == boolean.class) {
+				return Boolean.FALSE;
+			} else if (type == int.class) {
+				return Integer.valueOf(0);
+			} else if (type == long.class) {
+				return Long.valueOf(0);
+			} else if (type == float.class) {
+				return Float.valueOf(1);
+			} else if (type == double.class) {
+				return Double.valueOf(0);
+			}
+			return null;
+		}
+
+		/**
+		 * Rasterize a line with the Bresenham algorithm.
+		 */
+		private void line(int x0, int y0, int x1, int y1) {
+			int dx = Math.abs(x1 - x0);
+			int dy = -Math.abs(y1 - y0);
+			int sx = x0 < x1 ? 1 : -1;
+			int sy = y0 < y1 ? 1 : -1;
+			int err = dx + dy;
+			while (true) {
+				BitSet column = columns.get(x0);
+				if (column == null) {
+					column = new BitSet();
+					columns.put(x0, column);
+				}
+				column.set(y0 - BOUNDS.y);
+				if (x0 == x1 && y0 == y1) {
+					break;
+				}
+				int e2 = 2 * err;
+				if (e2 >= dy) {
+					err += dy;
+					x0 += sx;
+				}
+				if (e2 <= dx) {
+					err += dx;
+					y0 += sy;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,206 @@
+/*****************************************************************************
+ * 
+ *  This file is part of the XYPlot library. The library allows to draw
+ *  data in a x/y diagram using several output media.
+ * 
+ *  Copyright (C) 1994-2015 EWMK-Soft Eberhard Kuemmel
+ *
+ *  LICENSE AGREEMENT
+ * 
+ *  WHEREAS, Eberhard Kuemmel is the owner of valuable intellectual 
+ *  property rights relating to the XYPlot and wish to license XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  and 
+ *
+ *  WHEREAS, you ("Licensee") acknowledge that Eberhard Kuemmel has the
+ *  right to grant licenses to the intellectual property rights relating
+ *  to XYPlot, and that you desire to obtain a license to use XYPlot
+ *  subject to the terms and conditions set forth below;
+ *  
+ *  Eberhard Kuemmel grants Licensee a non-exclusive, non-transferable,
+ *  royalty-free license to use XYPlot and related materials without
+ *  charge provided the Licensee adheres to all of the terms and conditions
+ *  of this Agreement.
+ * 
+ *  By downloading, using, or copying XYPlot or any portion thereof,
+ *  Licensee agrees to abide by the intellectual property laws and all
+ *  other applicable laws of Germany, and to all of the terms and
+ *  conditions of this Agreement, and agrees to take all necessary steps
+ *  to ensure that the terms and conditions of this Agreement are not
+ *  violated by any person or entity under the Licensee's control or in
+ *  the Licensee's service.
+ * 
+ *  Licensee shall maintain the copyright and trademark notices on the
+ *  materials within or otherwise related to XYPlot, and not alter,
+ *  erase, deface or overprint any such notice.
+ *  
+ *  Licensee hereby grants a royalty-free license to any and all 
+ *  derivatives based upon this software code base.
+ *  
+ *  Licensee may modify the sources of XYPlot for the Licensee's own
+ *  purposes. Thus, Licensee may not distribute modified sources of
+ *  XYPlot without prior written consent from the authors.
+ *  
+ *  THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ *  WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ *  INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ *  SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ *  HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ *  STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ *  IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ *  POSSIBILITY OF SUCH DAMAGE. 
+ *
+ *****************************************************************************/
+
+package de.ewmksoft.xyplot.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.ewmksoft.xyplot.core.IXYGraphLib.RGB;
+
+/**
+ * Tests the value selection of {@link XYPlotLttb} against a straightforward
+ * implementation of the algorithm.
+ */
+public class XYPlotLttbTest {
+	private static final RGB COLOR = new RGB("255/0/0/0");
+
+	@Test
+	public void selectionMatchesReference() {
+		Random random = new Random(10);
+		for (int n = 0; n < 200; ++n) {
+			int num = 3 + random.nextInt(5000);
+			int threshold = 3 + random.nextInt(300);
+			double[] xs = new double[num];
+			double[] ys = new double[num];
+			double y = 0;
+			for (int i = 0; i < num; ++i) {
+				xs[i] = i + 0.5 * random.nextDouble();
+				y += random.nextGaussian();
+				ys[i] = y;
+			}
+			XYPlotData data = XYPlot.createDataHandler(num, COLOR);
+			data.addValues(xs, ys, 0, num);
+			XYPlotData reduced = XYPlotLttb.downsample(data, threshold);
+			int[] expected = reference(xs, ys, threshold);
+			assertEquals(expected.length, reduced.length(), "Length for " + num + " values, threshold " + threshold);
+			for (int i = 0; i < expected.length; ++i) {
+				assertEquals(xs[expected[i]], reduced.getValue(i).x(), "Value " + i);
+				assertEquals(ys[expected[i]], reduced.getValue(i).y(), "Value " + i);
+			}
+		}
+	}
+
+	@Test
+	public void smallDataIsCopied() {
+		XYPlotData data = XYPlot.createDataHandler(100, COLOR);
+		for (int i = 0; i < 40; ++i) {
+			data.addValue(i, i * i);
+		}
+		XYPlotData reduced = XYPlotLttb.downsample(data, 50);
+		assertEquals(40, reduced.length());
+		for (int i = 0; i < 40; ++i) {
+			assertEquals(i, reduced.getValue(i).x());
+			assertEquals(i * i, reduced.getValue(i).y());
+		}
+	}
+
+	@Test
+	public void breaksAreKept() {
+		XYPlotData data = XYPlot.createDataHandler(1000, COLOR);
+		for (int i = 0; i < 1000; ++i) {
+			data.addValue(i, Math.sin(i / 10.0));
+			if (i % 300 == 299) {
+				data.setPause();
+			}
+		}
+		XYPlotData reduced = XYPlotLttb.downsample(data, 50);
+		assertTrue(reduced.length() <= 50 + 2 * 4);
+		int breaks = 0;
+		boolean segmentStart = true;
+		for (int i = 0; i < reduced.length(); ++i) {
+			XYPlotData.DataValue value = reduced.getValue(i);
+			if (segmentStart) {
+				// Each segment starts with its first value
+				assertEquals(0, (int) value.x() % 300, "Start of segment at " + value.x());
+			}
+			segmentStart = value.border();
+			if (value.border()) {
+				assertEquals(299, (int) value.x() % 300, "Break at " + value.x());
+				breaks++;
+			}
+		}
+		assertEquals(3, breaks);
+		assertEquals(999, reduced.getValue(reduced.length() - 1).x());
+	}
+
+	@Test
+	public void switchLabelsAreKept() {
+		XYPlotData data = XYPlot.createDataHandler(1000, COLOR);
+		String[] labels = new String[] { "on", "off", "idle" };
+		for (int i = 0; i < 1000; ++i) {
+			data.addValue(i, labels[(i / 37) % 3]);
+		}
+		XYPlotData reduced = XYPlotLttb.downsample(data, 100);
+		assertEquals(data.getSwitchLabels(), reduced.getSwitchLabels());
+		assertEquals(100, reduced.length());
+		for (int i = 0; i < reduced.length(); ++i) {
+			int x = (int) reduced.getValue(i).x();
+			assertEquals(data.getValue(x).y(), reduced.getValue(i).y(), "Label at " + x);
+		}
+	}
+
+	/**
+	 * Select the values with LTTB on arrays.
+	 */
+	private static int[] reference(double[] xs, double[] ys, int threshold) {
+		int num = xs.length;
+		if (threshold >= num) {
+			int[] result = new int[num];
+			for (int i = 0; i < num; ++i) {
+				result[i] = i;
+			}
+			return result;
+		}
+		int[] result = new int[threshold];
+		double every = (double) (num - 2) / (threshold - 2);
+		int a = 0;
+		result[0] = 0;
+		for (int i = 0; i < threshold - 2; ++i) {
+			int avgStart = (int) Math.floor((i + 1) * every) + 1;
+			int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, num);
+			double avgX = 0;
+			double avgY = 0;
+			for (int j = avgStart; j < avgEnd; ++j) {
+				avgX += xs[j];
+				avgY += ys[j];
+			}
+			avgX /= avgEnd - avgStart;
+			avgY /= avgEnd - avgStart;
+			int rangeStart = (int) Math.floor(i * every) + 1;
+			int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+			double maxArea = -1;
+			int next = rangeStart;
+			for (int j = rangeStart; j < rangeEnd; ++j) {
+				double area = 0.5 * Math.abs((xs[a] - avgX) * (ys[j] - ys[a]) - (xs[a] - xs[j]) * (avgY - ys[a]));
+				if (area > maxArea) {
+					maxArea = area;
+					next = j;
+				}
+			}
+			result[i + 1] = next;
+			a = next;
+		}
+		result[threshold - 1] = num - 1;
+		return result;
+	}
+}
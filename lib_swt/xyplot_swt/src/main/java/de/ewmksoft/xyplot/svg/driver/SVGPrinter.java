@@ -83,6 +83,7 @@ public class SVGPrinter {
 			XYGraphLibSVG svgLib = new XYGraphLibSVG(os, rect);
 			IXYPlot xyPlot = XYPlot.createXYPlot(svgLib);
 			xyPlot.setFontSize(12, 12);
+			xyPlot.setLineDrawing(IXYPlot.LineDrawing.LTTB);
 			xyPlot.setBounds(new Rect(0, 0, pageWidth, graphHeight));
 			xyPlot.setXRange(xyPlotParam.getXMin(), xyPlotParam.getXMax());
 			xyPlot.setXUnitText(xyPlotParam.getXUnitText());